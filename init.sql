@@ -6,23 +6,71 @@ CREATE TABLE IF NOT EXISTS users (
     last_name VARCHAR(100) NOT NULL,
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
-    is_active BOOLEAN DEFAULT TRUE
+    is_active BOOLEAN DEFAULT TRUE,
+    tier VARCHAR(20) NOT NULL DEFAULT 'FREE'
+);
+
+CREATE TABLE IF NOT EXISTS scan_results (
+    content_hash VARCHAR(64) PRIMARY KEY,
+    content TEXT,
+    data BYTEA,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
 );
 
 CREATE TABLE IF NOT EXISTS url_scans (
     id BIGSERIAL PRIMARY KEY,
     url VARCHAR(2048) NOT NULL,
+    url_hash VARCHAR(64),
     scan_status VARCHAR(20) NOT NULL DEFAULT 'SUBMITTED',
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     result TEXT,
+    result_hash VARCHAR(64) REFERENCES scan_results(content_hash),
+    verdict_malicious BOOLEAN,
+    verdict_score INTEGER,
+    verdict_categories TEXT[],
+    page_domain VARCHAR(255),
+    page_ip VARCHAR(64),
+    page_country VARCHAR(8),
+    page_title VARCHAR(512),
+    priority VARCHAR(20) NOT NULL DEFAULT 'INTERACTIVE',
     user_id BIGINT NOT NULL,
     external_scan_id VARCHAR(255),
+    failure_reason VARCHAR(1024),
+    next_check_at TIMESTAMP,
+    check_attempts INTEGER,
+    submit_attempts INTEGER,
+    lease_owner VARCHAR(128),
+    lease_expires_at TIMESTAMP,
+    leader_scan_id BIGINT,
     FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
 );
 
+CREATE TABLE IF NOT EXISTS rate_limit_buckets (
+    name VARCHAR(64) PRIMARY KEY,
+    tokens DOUBLE PRECISION NOT NULL,
+    updated_at TIMESTAMP NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS worker_partitions (
+    partition_index INTEGER PRIMARY KEY,
+    owner VARCHAR(128),
+    lease_expires_at TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS worker_nodes (
+    node_id VARCHAR(128) PRIMARY KEY,
+    heartbeat_at TIMESTAMP NOT NULL
+);
+
 CREATE INDEX idx_users_email ON users(email);
-CREATE INDEX idx_url_scans_user_id ON url_scans(user_id);
+CREATE INDEX idx_url_scans_user_id_created_at_id ON url_scans(user_id, created_at DESC, id DESC);
 CREATE INDEX idx_url_scans_status ON url_scans(scan_status);
 CREATE INDEX idx_url_scans_created_at ON url_scans(created_at);
-CREATE INDEX idx_url_scans_external_scan_id ON url_scans(external_scan_id);
\ No newline at end of file
+CREATE INDEX idx_url_scans_external_scan_id ON url_scans(external_scan_id);
+CREATE INDEX idx_url_scans_status_next_check_at ON url_scans(scan_status, next_check_at);
+CREATE INDEX idx_url_scans_status_priority_user_created_at ON url_scans(scan_status, priority, user_id, created_at, id);
+CREATE INDEX idx_url_scans_url_hash_status ON url_scans(url_hash, scan_status);
+CREATE INDEX idx_url_scans_leader_scan_id ON url_scans(leader_scan_id) WHERE leader_scan_id IS NOT NULL;
+CREATE INDEX idx_url_scans_result_hash ON url_scans(result_hash) WHERE result_hash IS NOT NULL;
+CREATE INDEX idx_scan_results_created_at ON scan_results(created_at);
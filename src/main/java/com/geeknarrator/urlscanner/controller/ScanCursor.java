@@ -0,0 +1,32 @@
+package com.geeknarrator.urlscanner.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Where a page of a user's scan list ended: the {@code created_at} and {@code id} of its last scan,
+ * the key the list is sorted by. Handed to clients as an opaque token, so the encoding can change
+ * without breaking them.
+ */
+record ScanCursor(LocalDateTime createdAt, Long id) {
+
+    String encode() {
+        String key = createdAt + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code token} was not made by {@link #encode()}.
+     */
+    static ScanCursor decode(String token) {
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = key.lastIndexOf(',');
+            return new ScanCursor(LocalDateTime.parse(key.substring(0, separator)), Long.parseLong(key.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
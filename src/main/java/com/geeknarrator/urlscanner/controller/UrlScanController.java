@@ -1,11 +1,25 @@
 package com.geeknarrator.urlscanner.controller;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.geeknarrator.urlscanner.entity.ScanResult;
 import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.entity.User;
+import com.geeknarrator.urlscanner.repository.ScanListItem;
+import com.geeknarrator.urlscanner.repository.StoredResult;
 import com.geeknarrator.urlscanner.repository.UrlScanRepository;
 import com.geeknarrator.urlscanner.security.SecurityUtils;
+import com.geeknarrator.urlscanner.service.SubmissionSingleFlight;
+import com.geeknarrator.urlscanner.service.admission.ScanAdmissionService;
+import com.geeknarrator.urlscanner.service.cache.CachedScanResult;
+import com.geeknarrator.urlscanner.service.cache.RecentUrlFilter;
+import com.geeknarrator.urlscanner.service.cache.ScanResultCache;
+import com.geeknarrator.urlscanner.service.storage.ResultBody;
+import com.geeknarrator.urlscanner.service.storage.ScanResultStorage;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -14,12 +28,19 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Page;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -28,89 +49,227 @@ import java.util.Optional;
 @SecurityRequirement(name = "bearerAuth")
 public class UrlScanController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final UrlScanRepository urlScanRepository;
     private final MeterRegistry meterRegistry;
+    private final ScanAdmissionService scanAdmissionService;
+    private final SubmissionSingleFlight submissionSingleFlight;
+    private final ScanResultCache scanResultCache;
+    private final RecentUrlFilter recentUrlFilter;
+    private final ScanResultStorage scanResultStorage;
 
     @Value("${urlscan.cache.ttl.hours:24}")
     private int cacheTtlHours;
 
-    public UrlScanController(UrlScanRepository urlScanRepository, MeterRegistry meterRegistry) {
+    public UrlScanController(UrlScanRepository urlScanRepository, MeterRegistry meterRegistry, ScanAdmissionService scanAdmissionService,
+                             SubmissionSingleFlight submissionSingleFlight, ScanResultCache scanResultCache,
+                             RecentUrlFilter recentUrlFilter, ScanResultStorage scanResultStorage) {
         this.urlScanRepository = urlScanRepository;
         this.meterRegistry = meterRegistry;
+        this.scanAdmissionService = scanAdmissionService;
+        this.submissionSingleFlight = submissionSingleFlight;
+        this.scanResultCache = scanResultCache;
+        this.recentUrlFilter = recentUrlFilter;
+        this.scanResultStorage = scanResultStorage;
     }
 
     @Operation(summary = "Submit a URL for scanning", description = "Submits a new URL for scanning. If a recent scan for the same URL exists, it may return a cached result.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Scan submitted, or cached result returned"),
             @ApiResponse(responseCode = "400", description = "Invalid URL format"),
-            @ApiResponse(responseCode = "401", description = "Unauthorized")
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "429", description = "Too many of the user's scans are still queued; retry after the Retry-After header"),
+            @ApiResponse(responseCode = "503", description = "The scan queue is full; retry after the Retry-After header")
     })
     @PostMapping
     public ResponseEntity<UrlScan> createScan(@Valid @RequestBody CreateScanRequest request) {
-        Long userId = SecurityUtils.getCurrentUserId();
+        User user = SecurityUtils.getCurrentUser();
+        // Concurrent identical submissions by this user share whatever the first one returns.
+        UrlScan scan = submissionSingleFlight.execute(user.getId(), request.getUrl(), () -> submitScan(user, request));
+        return ResponseEntity.ok(scan);
+    }
+
+    private UrlScan submitScan(User user, CreateScanRequest request) {
+        UrlScan newScan = new UrlScan(request.getUrl(), user.getId());
+        newScan.setPriority(request.getPriorityOrDefault());
+
+        Optional<UrlScan> recent = findRecentScan(user.getId(), newScan);
+        if (recent.isPresent()) {
+            return recent.get();
+        }
+
+        // Step 3: New Submission (Cache Miss), if the queue can take it
+        scanAdmissionService.admit(user, request.getPriorityOrDefault());
+        afterCommit(() -> meterRegistry.counter("scans.submitted", "type", "new").increment());
+        return saveAndRecord(newScan);
+    }
+
+    private Optional<UrlScan> findRecentScan(Long userId, UrlScan newScan) {
         LocalDateTime since = LocalDateTime.now().minusHours(cacheTtlHours);
 
-        // Step 1: User-level Deduplication
-        Optional<UrlScan> userExistingScan = urlScanRepository.findFirstByUserIdAndUrlAndCreatedAtAfterOrderByCreatedAtDesc(
+        // Step 1: User-level Deduplication, by URL hash like the global lookup. Always run, even when
+        // the filter below has not seen the URL: a scan by this user on another node may not have
+        // reached it yet, and only this lookup, under the submission lock, is certain to find it.
+        Optional<UrlScan> userExistingScan = urlScanRepository.findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(
                 userId,
-                request.getUrl(),
+                newScan.getUrlHash(),
                 since
         );
         if (userExistingScan.isPresent()) {
-            meterRegistry.counter("scans.cache.hit", "type", "user").increment();
-            return ResponseEntity.ok(userExistingScan.get());
+            afterCommit(() -> meterRegistry.counter("scans.cache.hit", "type", "user").increment());
+            return userExistingScan;
         }
 
-        // Step 2: Global Cache Check
-        Optional<UrlScan> globalCachedScan = urlScanRepository.findFirstByUrlAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(
-                request.getUrl(),
-                UrlScan.ScanStatus.DONE,
-                since
-        );
-        if (globalCachedScan.isPresent()) {
-            meterRegistry.counter("scans.cache.hit", "type", "global").increment();
-            UrlScan scanFromCache = globalCachedScan.get();
-            UrlScan newScan = new UrlScan(request.getUrl(), userId);
-            newScan.setStatus(UrlScan.ScanStatus.DONE);
-            newScan.setResult(scanFromCache.getResult());
-            newScan.setExternalScanId(scanFromCache.getExternalScanId());
-            UrlScan savedScan = urlScanRepository.save(newScan);
-            return ResponseEntity.ok(savedScan);
-        }
-
-        // Step 3: New Submission (Cache Miss)
-        meterRegistry.counter("scans.submitted", "type", "new").increment();
-        UrlScan newScan = new UrlScan(request.getUrl(), userId);
-        UrlScan savedScan = urlScanRepository.save(newScan);
-        return ResponseEntity.ok(savedScan);
+        // Most URLs have not been scanned within the TTL; for those, the global check finds nothing.
+        if (!recentUrlFilter.mightHaveBeenScanned(newScan.getUrlHash())) {
+            return Optional.empty();
+        }
+
+        // Step 2: Global Cache Check, in memory first; a hit needs no database lookup
+        Optional<CachedScanResult> cachedScan = scanResultCache.get(newScan.getUrlHash());
+        if (cachedScan.isPresent()) {
+            Optional<ScanResult> document = scanResultStorage.lockReference(cachedScan.get().resultHash());
+            if (document.isPresent()) {
+                return Optional.of(reuseResult(newScan, cachedScan.get(), document.get()));
+            }
+            // Its document was collected since it was cached; the database lookup below knows better.
+            scanResultCache.invalidate(newScan.getUrlHash());
+        }
+
+        // ... and then by URL hash in the database
+        Optional<UrlScan> globalScan = urlScanRepository.findFirstByUrlHashAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(
+                        newScan.getUrlHash(),
+                        UrlScan.ScanStatus.DONE,
+                        since
+                )
+                .map(this::withStoredResult)
+                .filter(scan -> scan.getResultDocument() != null);
+        if (globalScan.isPresent()) {
+            UrlScan scan = globalScan.get();
+            afterCommit(() -> scanResultCache.put(scan));
+            return Optional.of(reuseResult(newScan, CachedScanResult.from(scan), scan.getResultDocument()));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Completes {@code newScan} with the result of an earlier scan of the same URL.
+     */
+    private UrlScan reuseResult(UrlScan newScan, CachedScanResult earlier, ScanResult document) {
+        afterCommit(() -> meterRegistry.counter("scans.cache.hit", "type", "global").increment());
+        newScan.setStatus(UrlScan.ScanStatus.DONE);
+        // Point at the stored document instead of copying it; the response only needs the summary.
+        newScan.setResultDocument(document);
+        newScan.setSummary(earlier.summary());
+        newScan.setExternalScanId(earlier.externalScanId());
+        return saveAndRecord(newScan);
+    }
+
+    /**
+     * Moves a result still stored inline on {@code scan} to result storage, so it can be shared.
+     */
+    private UrlScan withStoredResult(UrlScan scan) {
+        if (scan.getResultDocument() == null && scan.getResult() != null) {
+            scan.setResultDocument(scanResultStorage.store(scan.getResult()));
+        }
+        return scan;
+    }
+
+    private UrlScan saveAndRecord(UrlScan newScan) {
+        UrlScan saved = urlScanRepository.save(newScan);
+        afterCommit(() -> recentUrlFilter.record(newScan.getUrlHash(), newScan.getCreatedAt()));
+        return saved;
     }
 
-    @Operation(summary = "List all user scans", description = "Returns a paginated list of all scans submitted by the authenticated user.")
+    /**
+     * Runs {@code action} once the submission's transaction has committed, so that the caches, the
+     * filter and the metrics never count a scan whose insert was rolled back.
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    @Operation(summary = "List all user scans", description = "Returns the scans submitted by the authenticated user, newest first, "
+            + "with result summaries. Pass the nextCursor of a page as cursor to get the next one; it is absent on the last page. "
+            + "Use GET /api/scans/{id}/result for a scan's full result document.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved list of scans"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor"),
             @ApiResponse(responseCode = "401", description = "Unauthorized")
     })
     @GetMapping
-    public ResponseEntity<Page<UrlScan>> getAllScans(Pageable pageable) {
+    public ResponseEntity<ScanPage> getAllScans(@Parameter(description = "nextCursor of the previous page; omit for the first page")
+                                                @RequestParam(required = false) String cursor,
+                                                @Parameter(description = "Number of scans per page, at most " + MAX_PAGE_SIZE)
+                                                @RequestParam(defaultValue = "20") int size) {
         Long userId = SecurityUtils.getCurrentUserId();
-        Page<UrlScan> scans = urlScanRepository.findByUserId(userId, pageable);
-        return ResponseEntity.ok(scans);
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // One row more than the page tells whether there is a next page, without counting.
+        Pageable limit = PageRequest.ofSize(pageSize + 1);
+        List<ScanListItem> scans;
+        if (cursor == null || cursor.isEmpty()) {
+            scans = urlScanRepository.findListItemsByUserIdOrderByCreatedAtDescIdDesc(userId, limit);
+        } else {
+            ScanCursor after = ScanCursor.decode(cursor);
+            scans = urlScanRepository.findListItemsBefore(userId, after.createdAt(), after.id(), limit);
+        }
+        if (scans.size() <= pageSize) {
+            return ResponseEntity.ok(new ScanPage(scans, null));
+        }
+        List<ScanListItem> page = scans.subList(0, pageSize);
+        ScanListItem last = page.get(pageSize - 1);
+        return ResponseEntity.ok(new ScanPage(page, new ScanCursor(last.getCreatedAt(), last.getId()).encode()));
     }
 
-    @Operation(summary = "Get a specific scan by ID", description = "Returns the details of a single scan, including its status and results if available.")
+    @Operation(summary = "Get a specific scan by ID", description = "Returns the details of a single scan, including its status and result summary if available. "
+            + "The full urlscan.io result document is only included with include=result.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved scan details"),
             @ApiResponse(responseCode = "401", description = "Unauthorized"),
             @ApiResponse(responseCode = "404", description = "Scan not found or does not belong to the user")
     })
     @GetMapping("/{id}")
-    public ResponseEntity<UrlScan> getScanById(@Parameter(description = "ID of the scan to retrieve") @PathVariable Long id) {
+    public ResponseEntity<ScanDetails> getScanById(@Parameter(description = "ID of the scan to retrieve") @PathVariable Long id,
+                                                   @Parameter(description = "Set to 'result' to include the full result document")
+                                                   @RequestParam(required = false) String include) {
         Long userId = SecurityUtils.getCurrentUserId();
         Optional<UrlScan> scan = urlScanRepository.findByIdAndUserId(id, userId);
-        return scan.map(ResponseEntity::ok)
+        boolean includeResult = "result".equals(include);
+        return scan.map(found -> ResponseEntity.ok(new ScanDetails(found, includeResult ? found.getResultBody() : null)))
                    .orElse(ResponseEntity.notFound().build());
     }
 
+    @Operation(summary = "Get the result document of a scan", description = "Returns the full urlscan.io result document of a scan, "
+            + "streamed from storage as it was received.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved the result document"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "404", description = "Scan not found, does not belong to the user, or has no result yet")
+    })
+    @GetMapping(value = "/{id}/result", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Resource> getScanResult(@Parameter(description = "ID of the scan whose result to retrieve") @PathVariable Long id) {
+        Long userId = SecurityUtils.getCurrentUserId();
+        InputStream document = urlScanRepository.findStoredResult(id, userId)
+                .map(StoredResult::open)
+                .orElse(null);
+        if (document == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new InputStreamResource(document));
+    }
+
     @Operation(summary = "Delete a scan by ID", description = "Deletes a specific scan and its associated results.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Scan deleted successfully"),
@@ -124,17 +283,40 @@ public class UrlScanController {
 
         if (scan.isPresent()) {
             urlScanRepository.delete(scan.get());
+            // The cached entry may have come from this scan; the next lookup refills it from what is left.
+            scanResultCache.invalidate(scan.get().getUrlHash());
             return ResponseEntity.noContent().build();
         } else {
             return ResponseEntity.notFound().build();
         }
     }
 
+    /**
+     * A page of a user's scans as returned by {@code GET /api/scans}.
+     *
+     * @param nextCursor the token for the next page, or {@code null} on the last page.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record ScanPage(List<ScanListItem> content, String nextCursor) {
+    }
+
+    /**
+     * A scan as returned by {@code GET /api/scans/{id}}: its fields, plus the result document when it
+     * was asked for.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record ScanDetails(@JsonUnwrapped UrlScan scan,
+                              @Schema(type = "object", description = "The urlscan.io result document") ResultBody result) {
+    }
+
     public static class CreateScanRequest {
         @NotBlank(message = "URL is required")
         @Pattern(regexp = "^https?://.*", message = "URL must start with http:// or https://")
         private String url;
 
+        @Schema(description = "INTERACTIVE (default) for scans a user is waiting on, BULK for imports and batch jobs")
+        private UrlScan.Priority priority;
+
         public String getUrl() {
             return url;
         }
@@ -142,5 +324,17 @@ public class UrlScanController {
         public void setUrl(String url) {
             this.url = url;
         }
+
+        public UrlScan.Priority getPriority() {
+            return priority;
+        }
+
+        public void setPriority(UrlScan.Priority priority) {
+            this.priority = priority;
+        }
+
+        UrlScan.Priority getPriorityOrDefault() {
+            return priority == null ? UrlScan.Priority.INTERACTIVE : priority;
+        }
     }
 }
@@ -0,0 +1,51 @@
+package com.geeknarrator.urlscanner.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Shared token-bucket state for an upstream rate limit. Rows are read and refilled atomically by
+ * {@link com.geeknarrator.urlscanner.repository.RateLimitBucketRepository}; {@code updated_at} is
+ * always written with the database clock so that nodes with skewed clocks agree on refills.
+ */
+@Entity
+@Table(name = "rate_limit_buckets")
+public class RateLimitBucket {
+
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(nullable = false)
+    private double tokens;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public RateLimitBucket() {}
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public double getTokens() {
+        return tokens;
+    }
+
+    public void setTokens(double tokens) {
+        this.tokens = tokens;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,89 @@
+package com.geeknarrator.urlscanner.entity;
+
+import com.geeknarrator.urlscanner.service.storage.ResultBody;
+import com.geeknarrator.urlscanner.service.storage.ResultCodec;
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * A urlscan.io result document, stored once however many scans share it. Rows are keyed by the
+ * SHA-256 of their content, written by
+ * {@link com.geeknarrator.urlscanner.service.storage.ScanResultStorage} and never updated; rows no
+ * scan refers to any more are garbage-collected.
+ * <p>
+ * The document is kept in {@code data}, encoded by {@link ResultCodec} (usually compressed), and is
+ * only decoded when {@link #getContent()} is first called. Rows written before compression keep
+ * their text in {@code content} until they are recompressed.
+ * <p>
+ * A document fetched from urlscan.io arrives already encoded and is carried to
+ * {@link com.geeknarrator.urlscanner.service.storage.ScanResultStorage} as an unsaved instance
+ * created with {@link #ScanResult(String, byte[])}.
+ */
+@Entity
+@Immutable
+@Table(name = "scan_results")
+public class ScanResult {
+
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(columnDefinition = "TEXT")
+    private String content;
+
+    @Column(columnDefinition = "bytea")
+    private byte[] data;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Transient
+    private String decoded;
+
+    public ScanResult() {}
+
+    /**
+     * An encoded document that has not been stored yet.
+     */
+    public ScanResult(String contentHash, byte[] data) {
+        this.contentHash = contentHash;
+        this.data = data;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getContent() {
+        if (content != null) {
+            return content;
+        }
+        if (decoded == null && data != null) {
+            decoded = ResultCodec.decode(data);
+        }
+        return decoded;
+    }
+
+    /**
+     * @return the document encoded by {@link ResultCodec}.
+     */
+    public byte[] getData() {
+        if (data == null && content != null) {
+            data = ResultCodec.encode(content);
+        }
+        return data;
+    }
+
+    /**
+     * @return the document for an API response, streamed from the encoded form when there is one.
+     */
+    public ResultBody getBody() {
+        return data != null ? ResultBody.stored(data) : ResultBody.text(content);
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
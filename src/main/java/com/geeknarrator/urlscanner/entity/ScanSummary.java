@@ -0,0 +1,99 @@
+package com.geeknarrator.urlscanner.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.util.List;
+
+/**
+ * The few fields of a urlscan.io result most callers need, kept in their own columns on
+ * {@code url_scans} so that lists and detail views never load the full document. Read from the
+ * document once, while it is fetched.
+ */
+@Embeddable
+public class ScanSummary {
+
+    public static final int MAX_TITLE_LENGTH = 512;
+
+    @Column(name = "verdict_malicious")
+    private Boolean malicious;
+
+    @Column(name = "verdict_score")
+    private Integer score;
+
+    @JdbcTypeCode(SqlTypes.ARRAY)
+    @Column(name = "verdict_categories", columnDefinition = "TEXT[]")
+    private List<String> categories;
+
+    @Column(name = "page_domain")
+    private String domain;
+
+    @Column(name = "page_ip", length = 64)
+    private String ip;
+
+    @Column(name = "page_country", length = 8)
+    private String country;
+
+    @Column(name = "page_title", length = MAX_TITLE_LENGTH)
+    private String title;
+
+    public ScanSummary() {}
+
+    public Boolean getMalicious() {
+        return malicious;
+    }
+
+    public void setMalicious(Boolean malicious) {
+        this.malicious = malicious;
+    }
+
+    public Integer getScore() {
+        return score;
+    }
+
+    public void setScore(Integer score) {
+        this.score = score;
+    }
+
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    public void setCategories(List<String> categories) {
+        this.categories = categories;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    public void setIp(String ip) {
+        this.ip = ip;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public void setCountry(String country) {
+        this.country = country;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+}
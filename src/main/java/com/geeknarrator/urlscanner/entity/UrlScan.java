@@ -1,6 +1,8 @@
 package com.geeknarrator.urlscanner.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.geeknarrator.urlscanner.service.UrlNormalizer;
+import com.geeknarrator.urlscanner.service.storage.ResultBody;
 import jakarta.persistence.*;
 
 import java.time.LocalDateTime;
@@ -16,6 +18,11 @@ public class UrlScan {
     @Column(nullable = false, length = 2048)
     private String url;
 
+    // SHA-256 of the normalized URL, so scans of the same page can be found through an index.
+    @Column(name = "url_hash", length = 64)
+    @JsonIgnore
+    private String urlHash;
+
     @Column(name = "scan_status")
     @Enumerated(EnumType.STRING)
     private ScanStatus status;
@@ -26,9 +33,30 @@ public class UrlScan {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
-    @Column(columnDefinition = "TEXT")
+    // Results stored inline before they moved to scan_results. Still read, no longer written.
+    @Column(name = "result", columnDefinition = "TEXT", insertable = false, updatable = false)
+    @JsonIgnore
+    private String inlineResult;
+
+    // The result document, shared with every other scan that got the same result.
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "result_hash")
+    @JsonIgnore
+    private ScanResult resultDocument;
+
+    // The result text when it is already in memory, so that it need not be loaded from the document.
+    @Transient
     private String result;
 
+    // What most callers need from the result, so that they need not load the document.
+    @Embedded
+    private ScanSummary summary;
+
+    // The default lets the column be added to a table that already has rows.
+    @Column(nullable = false, columnDefinition = "VARCHAR(20) NOT NULL DEFAULT 'INTERACTIVE'")
+    @Enumerated(EnumType.STRING)
+    private Priority priority = Priority.INTERACTIVE;
+
     @Column(name = "user_id", nullable = false)
     private Long userId;
 
@@ -38,6 +66,34 @@ public class UrlScan {
     @Column(name = "failure_reason", length = 1024)
     private String failureReason;
 
+    // Earliest time the worker may claim this scan again: the next result check while PROCESSING,
+    // the next submission retry while SUBMITTED.
+    @Column(name = "next_check_at")
+    @JsonIgnore
+    private LocalDateTime nextCheckAt;
+
+    @Column(name = "check_attempts")
+    @JsonIgnore
+    private Integer checkAttempts;
+
+    @Column(name = "submit_attempts")
+    @JsonIgnore
+    private Integer submitAttempts;
+
+    @Column(name = "lease_owner", length = 128)
+    @JsonIgnore
+    private String leaseOwner;
+
+    @Column(name = "lease_expires_at")
+    @JsonIgnore
+    private LocalDateTime leaseExpiresAt;
+
+    // The scan whose urlscan.io submission this one shares. Followers are not polled themselves;
+    // the leader's outcome is copied to them when it arrives.
+    @Column(name = "leader_scan_id")
+    @JsonIgnore
+    private Long leaderScanId;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", insertable = false, updatable = false)
     @JsonIgnore
@@ -46,7 +102,7 @@ public class UrlScan {
     public UrlScan() {}
 
     public UrlScan(String url, Long userId) {
-        this.url = url;
+        setUrl(url);
         this.userId = userId;
         this.status = ScanStatus.SUBMITTED;
         this.createdAt = LocalDateTime.now();
@@ -69,6 +125,23 @@ public class UrlScan {
 
     public void setUrl(String url) {
         this.url = url;
+        this.urlHash = url == null ? null : UrlNormalizer.hash(url);
+    }
+
+    // Rows from before URL hashes were recorded get theirs on load, until the backfill has reached them.
+    @PostLoad
+    void hashUrlIfMissing() {
+        if (urlHash == null && url != null) {
+            urlHash = UrlNormalizer.hash(url);
+        }
+    }
+
+    public String getUrlHash() {
+        return urlHash;
+    }
+
+    public void setUrlHash(String urlHash) {
+        this.urlHash = urlHash;
     }
 
     public ScanStatus getStatus() {
@@ -95,14 +168,60 @@ public class UrlScan {
         this.updatedAt = updatedAt;
     }
 
+    @JsonIgnore
     public String getResult() {
-        return result;
+        if (result != null) {
+            return result;
+        }
+        return resultDocument != null ? resultDocument.getContent() : inlineResult;
     }
 
+    /**
+     * The result as it appears in API responses that ask for it: the document embedded as JSON,
+     * written straight from storage. Responses carry only the {@link #getSummary() summary} otherwise.
+     */
+    @JsonIgnore
+    public ResultBody getResultBody() {
+        if (result != null) {
+            return ResultBody.text(result);
+        }
+        if (resultDocument != null) {
+            return resultDocument.getBody();
+        }
+        return inlineResult != null ? ResultBody.text(inlineResult) : null;
+    }
+
+    /**
+     * Sets the result text in memory only; it is persisted through {@link #setResultDocument}.
+     */
     public void setResult(String result) {
         this.result = result;
     }
 
+    public ScanResult getResultDocument() {
+        return resultDocument;
+    }
+
+    public void setResultDocument(ScanResult resultDocument) {
+        this.resultDocument = resultDocument;
+    }
+
+    public ScanSummary getSummary() {
+        return summary;
+    }
+
+    public void setSummary(ScanSummary summary) {
+        this.summary = summary;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+
     public Long getUserId() {
         return userId;
     }
@@ -127,6 +246,54 @@ public class UrlScan {
         this.failureReason = failureReason;
     }
 
+    public LocalDateTime getNextCheckAt() {
+        return nextCheckAt;
+    }
+
+    public void setNextCheckAt(LocalDateTime nextCheckAt) {
+        this.nextCheckAt = nextCheckAt;
+    }
+
+    public int getCheckAttempts() {
+        return checkAttempts == null ? 0 : checkAttempts;
+    }
+
+    public void setCheckAttempts(int checkAttempts) {
+        this.checkAttempts = checkAttempts;
+    }
+
+    public int getSubmitAttempts() {
+        return submitAttempts == null ? 0 : submitAttempts;
+    }
+
+    public void setSubmitAttempts(int submitAttempts) {
+        this.submitAttempts = submitAttempts;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public Long getLeaderScanId() {
+        return leaderScanId;
+    }
+
+    public void setLeaderScanId(Long leaderScanId) {
+        this.leaderScanId = leaderScanId;
+    }
+
     public User getUser() {
         return user;
     }
@@ -146,4 +313,13 @@ public class UrlScan {
         DONE,
         FAILED
     }
+
+    /**
+     * Which worker lane the scan waits in. Interactive scans are always claimed before bulk ones,
+     * and bulk claims leave part of the urlscan.io budget free for them.
+     */
+    public enum Priority {
+        INTERACTIVE,
+        BULK
+    }
 }
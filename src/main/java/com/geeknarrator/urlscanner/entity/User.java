@@ -46,6 +46,10 @@ public class User implements UserDetails {
     @Column(name = "is_active")
     private Boolean isActive = true;
     
+    @Column(name = "tier", length = 20)
+    @Enumerated(EnumType.STRING)
+    private Tier tier = Tier.FREE;
+    
     public User() {}
     
     public User(String email, String password, String firstName, String lastName) {
@@ -157,4 +161,18 @@ public class User implements UserDetails {
     public void setIsActive(Boolean isActive) {
         this.isActive = isActive;
     }
+    
+    public Tier getTier() {
+        return tier == null ? Tier.FREE : tier;
+    }
+    
+    public void setTier(Tier tier) {
+        this.tier = tier;
+    }
+    
+    public enum Tier {
+        FREE,
+        PRO,
+        ENTERPRISE
+    }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.geeknarrator.urlscanner.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A live worker node. Nodes refresh {@code heartbeat_at} (database clock) periodically; the number
+ * of nodes with a recent heartbeat decides each node's fair share of the worker partitions.
+ */
+@Entity
+@Table(name = "worker_nodes")
+public class WorkerNode {
+
+    @Id
+    @Column(name = "node_id", length = 128)
+    private String nodeId;
+
+    @Column(name = "heartbeat_at", nullable = false)
+    private LocalDateTime heartbeatAt;
+
+    public WorkerNode() {}
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public LocalDateTime getHeartbeatAt() {
+        return heartbeatAt;
+    }
+
+    public void setHeartbeatAt(LocalDateTime heartbeatAt) {
+        this.heartbeatAt = heartbeatAt;
+    }
+}
@@ -0,0 +1,52 @@
+package com.geeknarrator.urlscanner.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One of the fixed number of partitions the scan queue is split into (scans belong to partition
+ * {@code user_id % count}). A partition is owned by at most one worker node at a time, under a lease
+ * that the owner renews on every heartbeat; a partition whose lease has expired may be taken over.
+ * Leases are always written with the database clock.
+ */
+@Entity
+@Table(name = "worker_partitions")
+public class WorkerPartition {
+
+    @Id
+    @Column(name = "partition_index")
+    private Integer partitionIndex;
+
+    @Column(length = 128)
+    private String owner;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    public WorkerPartition() {}
+
+    public Integer getPartitionIndex() {
+        return partitionIndex;
+    }
+
+    public void setPartitionIndex(Integer partitionIndex) {
+        this.partitionIndex = partitionIndex;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+}
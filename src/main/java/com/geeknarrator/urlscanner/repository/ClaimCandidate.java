@@ -0,0 +1,18 @@
+package com.geeknarrator.urlscanner.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * A claimable scan as seen by the worker's scheduler: just enough to decide whose turn it is,
+ * without loading (or locking) the scan itself.
+ */
+public interface ClaimCandidate {
+
+    Long getId();
+
+    Long getUserId();
+
+    LocalDateTime getCreatedAt();
+
+    String getTier();
+}
@@ -0,0 +1,11 @@
+package com.geeknarrator.urlscanner.repository;
+
+/**
+ * A result still stored inline in {@code url_scans.result}, as read by the recompression job.
+ */
+public interface InlineResult {
+
+    Long getId();
+
+    String getResult();
+}
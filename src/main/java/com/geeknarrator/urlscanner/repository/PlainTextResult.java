@@ -0,0 +1,12 @@
+package com.geeknarrator.urlscanner.repository;
+
+/**
+ * A result document in {@code scan_results} still stored as plain text, as read by the
+ * recompression job.
+ */
+public interface PlainTextResult {
+
+    String getContentHash();
+
+    String getContent();
+}
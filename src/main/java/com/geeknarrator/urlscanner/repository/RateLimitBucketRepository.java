@@ -0,0 +1,61 @@
+package com.geeknarrator.urlscanner.repository;
+
+import com.geeknarrator.urlscanner.entity.RateLimitBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RateLimitBucketRepository extends JpaRepository<RateLimitBucket, String> {
+
+    /**
+     * Creates the bucket full if it does not exist yet.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO rate_limit_buckets (name, tokens, updated_at)
+            VALUES (:name, :capacity, CAST(clock_timestamp() AS timestamp))
+            ON CONFLICT (name) DO NOTHING
+            """, nativeQuery = true)
+    int createIfMissing(String name, double capacity);
+
+    /**
+     * Refills the bucket for the time elapsed since its last update and takes up to
+     * {@code requested} whole tokens, in one statement under the row lock.
+     *
+     * @return the number of tokens taken, or {@code null} if the bucket does not exist.
+     */
+    @Query(value = """
+            WITH refilled AS (
+                SELECT name,
+                       LEAST(:capacity, tokens + :refillPerSecond * GREATEST(0,
+                           CAST(EXTRACT(EPOCH FROM (clock_timestamp() - updated_at)) AS double precision))) AS available,
+                       CAST(clock_timestamp() AS timestamp) AS refilled_at
+                FROM rate_limit_buckets
+                WHERE name = :name
+                FOR UPDATE
+            )
+            UPDATE rate_limit_buckets b
+            SET tokens = r.available - LEAST(FLOOR(r.available), :requested),
+                updated_at = r.refilled_at
+            FROM refilled r
+            WHERE b.name = r.name
+            RETURNING CAST(LEAST(FLOOR(r.available), :requested) AS bigint)
+            """, nativeQuery = true)
+    Long acquire(String name, long requested, double capacity, double refillPerSecond);
+
+    /**
+     * Returns unused tokens to the bucket, without going over its capacity.
+     */
+    @Modifying
+    @Query(value = "UPDATE rate_limit_buckets SET tokens = LEAST(:capacity, tokens + :permits) WHERE name = :name", nativeQuery = true)
+    int release(String name, long permits, double capacity);
+
+    /**
+     * Empties the bucket, so that every node waits for a fresh refill.
+     */
+    @Modifying
+    @Query(value = "UPDATE rate_limit_buckets SET tokens = 0, updated_at = CAST(clock_timestamp() AS timestamp) WHERE name = :name", nativeQuery = true)
+    int drain(String name);
+}
@@ -0,0 +1,33 @@
+package com.geeknarrator.urlscanner.repository;
+
+import com.geeknarrator.urlscanner.entity.ScanSummary;
+import com.geeknarrator.urlscanner.entity.UrlScan;
+
+import java.time.LocalDateTime;
+
+/**
+ * A scan as shown in a user's scan list: its state and result summary, read without the result
+ * columns, so a page costs the same however large the results behind it are.
+ */
+public interface ScanListItem {
+
+    Long getId();
+
+    String getUrl();
+
+    UrlScan.ScanStatus getStatus();
+
+    UrlScan.Priority getPriority();
+
+    Long getUserId();
+
+    String getExternalScanId();
+
+    String getFailureReason();
+
+    ScanSummary getSummary();
+
+    LocalDateTime getCreatedAt();
+
+    LocalDateTime getUpdatedAt();
+}
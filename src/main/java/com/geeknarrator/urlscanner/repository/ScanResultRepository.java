@@ -0,0 +1,74 @@
+package com.geeknarrator.urlscanner.repository;
+
+import com.geeknarrator.urlscanner.entity.ScanResult;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ScanResultRepository extends JpaRepository<ScanResult, String> {
+
+    /**
+     * Stores an encoded result document unless one with the same content is already stored.
+     *
+     * @return 1 if the document was inserted, 0 if it was already there.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO scan_results (content_hash, data, created_at)
+            VALUES (:contentHash, :data, :now)
+            ON CONFLICT (content_hash) DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(String contentHash, byte[] data, LocalDateTime now);
+
+    /**
+     * Locks up to {@code limit} documents still stored as plain text. Documents another node is
+     * recompressing are skipped.
+     */
+    @Query(value = """
+            SELECT content_hash AS "contentHash", content AS "content" FROM scan_results
+            WHERE content IS NOT NULL
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<PlainTextResult> findAndLockPlainText(int limit);
+
+    /**
+     * Locks the document with {@code contentHash} against deletion until the transaction ends, if it
+     * is still stored.
+     *
+     * @return the hash if the document is stored, empty if it has been deleted.
+     */
+    @Query(value = "SELECT content_hash FROM scan_results WHERE content_hash = :contentHash FOR KEY SHARE", nativeQuery = true)
+    Optional<String> lockIfStored(String contentHash);
+
+    @Modifying
+    @Query(value = "UPDATE scan_results SET data = :data, content = NULL WHERE content_hash = :contentHash", nativeQuery = true)
+    int replaceContent(String contentHash, byte[] data);
+
+    /**
+     * Deletes up to {@code limit} documents created before {@code createdBefore} that no scan refers
+     * to. The age limit keeps documents that were just stored for a scan that has not been written
+     * back yet; documents locked by {@link #lockIfStored} are skipped, since a scan is about to
+     * refer to them.
+     *
+     * @return the number of documents deleted.
+     */
+    @Modifying
+    @Query(value = """
+            DELETE FROM scan_results
+            WHERE content_hash IN (
+                SELECT r.content_hash FROM scan_results r
+                WHERE r.created_at < :createdBefore
+                  AND NOT EXISTS (SELECT 1 FROM url_scans s WHERE s.result_hash = r.content_hash)
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            """, nativeQuery = true)
+    int deleteUnreferenced(LocalDateTime createdBefore, int limit);
+}
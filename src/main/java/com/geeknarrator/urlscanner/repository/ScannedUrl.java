@@ -0,0 +1,15 @@
+package com.geeknarrator.urlscanner.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * A scan reduced to the URL it was for and when, for rebuilding the filter of recently scanned URLs.
+ */
+public interface ScannedUrl {
+
+    Long getId();
+
+    String getUrlHash();
+
+    LocalDateTime getCreatedAt();
+}
@@ -0,0 +1,32 @@
+package com.geeknarrator.urlscanner.repository;
+
+import com.geeknarrator.urlscanner.service.storage.ResultCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Where a scan's result document is, read without loading the scan: encoded in {@code scan_results},
+ * as text there from before compression, or inline on the scan from before result storage. All
+ * empty while the scan has no result.
+ */
+public interface StoredResult {
+
+    byte[] getData();
+
+    String getContent();
+
+    String getInlineResult();
+
+    /**
+     * @return the document's UTF-8 text, decompressed as it is read, or {@code null} if there is none.
+     */
+    default InputStream open() {
+        if (getData() != null) {
+            return ResultCodec.open(getData());
+        }
+        String text = getContent() != null ? getContent() : getInlineResult();
+        return text == null ? null : new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,15 @@
+package com.geeknarrator.urlscanner.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * A scan from before URL hashes were recorded, as read by the URL hash backfill.
+ */
+public interface UnhashedScan {
+
+    Long getId();
+
+    String getUrl();
+
+    LocalDateTime getCreatedAt();
+}
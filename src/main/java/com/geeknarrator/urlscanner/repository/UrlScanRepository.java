@@ -1,51 +1,246 @@
 package com.geeknarrator.urlscanner.repository;
 
 import com.geeknarrator.urlscanner.entity.UrlScan;
-import jakarta.persistence.LockModeType;
-import jakarta.persistence.QueryHint;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UrlScanRepository extends JpaRepository<UrlScan, Long> {
 
-    Page<UrlScan> findByUserId(Long userId, Pageable pageable);
+    /**
+     * The newest of a user's scans, as {@link ScanListItem}s, which select none of the result columns.
+     * Further pages are read with {@link #findListItemsBefore}. Only as many rows as
+     * {@code pageable} asks for are read and nothing is counted.
+     */
+    List<ScanListItem> findListItemsByUserIdOrderByCreatedAtDescIdDesc(Long userId, Pageable pageable);
+
+    /**
+     * The user's scans that come after the scan with {@code createdAt} and {@code id} in the list
+     * order, newest first. Rows are found by seeking in the {@code (user_id, created_at, id)} index
+     * rather than by skipping an offset, so a page deep in a long history costs as much as the first.
+     * The redundant {@code created_at <=} bound lets that seek use the index.
+     */
+    @Query("""
+            SELECT s.id AS id, s.url AS url, s.status AS status, s.priority AS priority, s.userId AS userId,
+                   s.externalScanId AS externalScanId, s.failureReason AS failureReason, s.summary AS summary,
+                   s.createdAt AS createdAt, s.updatedAt AS updatedAt
+            FROM UrlScan s
+            WHERE s.userId = :userId AND s.createdAt <= :createdAt
+              AND (s.createdAt < :createdAt OR s.id < :id)
+            ORDER BY s.createdAt DESC, s.id DESC
+            """)
+    List<ScanListItem> findListItemsBefore(Long userId, LocalDateTime createdAt, Long id, Pageable pageable);
 
     Optional<UrlScan> findByIdAndUserId(Long id, Long userId);
 
-    Optional<UrlScan> findFirstByUserIdAndUrlAndCreatedAtAfterOrderByCreatedAtDesc(Long userId, String url, LocalDateTime createdAt);
+    /**
+     * Reads the result document of one of a user's scans without loading the scan.
+     *
+     * @return empty if the scan does not exist or belongs to someone else.
+     */
+    @Query(value = """
+            SELECT r.data AS "data", r.content AS "content", s.result AS "inlineResult"
+            FROM url_scans s LEFT JOIN scan_results r ON r.content_hash = s.result_hash
+            WHERE s.id = :id AND s.user_id = :userId
+            """, nativeQuery = true)
+    Optional<StoredResult> findStoredResult(Long id, Long userId);
+
+    Optional<UrlScan> findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(Long userId, String urlHash, LocalDateTime createdAt);
 
-    Optional<UrlScan> findFirstByUrlAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(String url, UrlScan.ScanStatus status, LocalDateTime createdAt);
+    Optional<UrlScan> findFirstByUrlHashAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(String urlHash, UrlScan.ScanStatus status, LocalDateTime createdAt);
 
     long countByStatus(UrlScan.ScanStatus status);
 
     Optional<UrlScan> findByExternalScanId(String externalScanId);
 
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @QueryHints({
-        @QueryHint(name = "jakarta.persistence.lock.timeout", value = "0"),
-        @QueryHint(name = "jakarta.persistence.lock.scope", value = "SKIP_LOCKED")
-    })
-    Page<UrlScan> findAndLockByStatus(UrlScan.ScanStatus status, Pageable pageable);
+    /**
+     * Counts scans in {@code status}, but stops at {@code cap} so that the cost stays bounded however
+     * many there are.
+     */
+    @Query(value = """
+            SELECT COUNT(*) FROM (
+                SELECT 1 FROM url_scans WHERE scan_status = :#{#status.name()} LIMIT :cap
+            ) capped
+            """, nativeQuery = true)
+    long countByStatusCapped(UrlScan.ScanStatus status, long cap);
 
-    @Query("SELECT DISTINCT u.userId FROM UrlScan u WHERE u.status = :status")
-    List<Long> findDistinctUserIdsWithStatus(UrlScan.ScanStatus status);
-
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @QueryHints({
-        @QueryHint(name = "jakarta.persistence.lock.timeout", value = "0"),
-        @QueryHint(name = "jakarta.persistence.lock.scope", value = "SKIP_LOCKED")
-    })
-    Page<UrlScan> findAndLockByUserIdAndStatus(Long userId, UrlScan.ScanStatus status, Pageable pageable);
+    /**
+     * Counts a user's scans in {@code status}, stopping at {@code cap}.
+     */
+    @Query(value = """
+            SELECT COUNT(*) FROM (
+                SELECT 1 FROM url_scans WHERE user_id = :userId AND scan_status = :#{#status.name()} LIMIT :cap
+            ) capped
+            """, nativeQuery = true)
+    long countByUserIdAndStatusCapped(Long userId, UrlScan.ScanStatus status, long cap);
 
     List<UrlScan> findByStatus(UrlScan.ScanStatus status);
+
+    /**
+     * Reads the URL hashes of scans created at or after {@code since}, {@code limit} at a time in id
+     * order, without loading the scans themselves. Rows the URL hash backfill has not reached yet are
+     * left out; the backfill adds them to the filter itself.
+     */
+    @Query(value = """
+            SELECT id AS "id", url_hash AS "urlHash", created_at AS "createdAt"
+            FROM url_scans
+            WHERE created_at >= :since AND id > :afterId AND url_hash IS NOT NULL
+            ORDER BY id
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<ScannedUrl> findScannedUrlsSince(LocalDateTime since, long afterId, int limit);
+
+    /**
+     * Waits for, and holds until the end of the transaction, the advisory lock on one user's
+     * submissions of one URL.
+     */
+    @Query(value = "SELECT COUNT(*) FROM (SELECT pg_advisory_xact_lock(:userKey, :urlKey)) locked", nativeQuery = true)
+    long lockSubmission(int userKey, int urlKey);
+
+    /**
+     * Reads the scans the worker may claim next, without locking them. Each user's claimable scans
+     * are ranked by age and at most {@code perUserLimit} are returned per user. Rows come back
+     * rank by rank (every user's oldest scan, then every user's second oldest, ...), oldest first
+     * within a rank, so the users that have waited longest make it into the candidate window first.
+     * Rows under an unexpired lease, not yet due for a check, or following a leader that is still
+     * waiting for its result, are not claimable. Only scans in the
+     * {@code priority} lane, of users whose {@code user_id % partitionCount} is in {@code partitions},
+     * are considered.
+     */
+    @Query(value = """
+            SELECT ranked.id AS "id", ranked.user_id AS "userId", ranked.created_at AS "createdAt", u.tier AS "tier"
+            FROM (
+                SELECT id, user_id, created_at,
+                       ROW_NUMBER() OVER (PARTITION BY user_id ORDER BY created_at, id) AS user_rank
+                FROM url_scans
+                WHERE scan_status = :#{#status.name()}
+                  AND priority = :#{#priority.name()}
+                  AND (lease_expires_at IS NULL OR lease_expires_at < :now)
+                  AND (next_check_at IS NULL OR next_check_at <= :now)
+                  AND (leader_scan_id IS NULL OR NOT EXISTS (
+                        SELECT 1 FROM url_scans leader
+                        WHERE leader.id = url_scans.leader_scan_id AND leader.scan_status = 'PROCESSING'))
+                  AND MOD(user_id, :partitionCount) IN (:partitions)
+            ) ranked
+            JOIN users u ON u.id = ranked.user_id
+            WHERE ranked.user_rank <= :perUserLimit
+            ORDER BY ranked.user_rank, ranked.created_at, ranked.id
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<ClaimCandidate> findClaimCandidates(UrlScan.ScanStatus status, UrlScan.Priority priority, LocalDateTime now, int perUserLimit, int limit,
+                                             int partitionCount, Collection<Integer> partitions);
+
+    /**
+     * Locks the selected scans for claiming. Rows locked by another worker are skipped, and the
+     * claimability predicates are re-checked so rows claimed since the candidates were read drop out.
+     */
+    @Query(value = """
+            SELECT * FROM url_scans
+            WHERE id IN (:ids)
+              AND scan_status = :#{#status.name()}
+              AND (lease_expires_at IS NULL OR lease_expires_at < :now)
+              AND (next_check_at IS NULL OR next_check_at <= :now)
+              AND (leader_scan_id IS NULL OR NOT EXISTS (
+                    SELECT 1 FROM url_scans leader
+                    WHERE leader.id = url_scans.leader_scan_id AND leader.scan_status = 'PROCESSING'))
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<UrlScan> findAndLockClaimableByIds(Collection<Long> ids, UrlScan.ScanStatus status, LocalDateTime now);
+
+    /**
+     * Finds, for each of the given URL hashes, a scan that has been sent to urlscan.io and is still
+     * waiting for its result, so that new scans of the same URL can follow it instead of being
+     * submitted again.
+     */
+    @Query(value = """
+            SELECT DISTINCT ON (url_hash) * FROM url_scans
+            WHERE url_hash IN (:urlHashes)
+              AND scan_status = 'PROCESSING'
+              AND leader_scan_id IS NULL
+              AND external_scan_id IS NOT NULL
+            ORDER BY url_hash, id DESC
+            """, nativeQuery = true)
+    List<UrlScan> findInFlightLeaders(Collection<String> urlHashes);
+
+    /**
+     * Makes every unleased SUBMITTED scan of the leader's URL follow the leader's submission, so that
+     * none of them is sent to urlscan.io on its own.
+     *
+     * @return the number of scans that now follow the leader.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE url_scans
+            SET scan_status = 'PROCESSING', external_scan_id = :externalScanId, leader_scan_id = :leaderId,
+                next_check_at = :nextCheckAt, check_attempts = 0, updated_at = :now
+            WHERE url_hash = :urlHash
+              AND scan_status = 'SUBMITTED'
+              AND id <> :leaderId
+              AND (lease_expires_at IS NULL OR lease_expires_at < :now)
+            """, nativeQuery = true)
+    int attachFollowers(Long leaderId, String urlHash, String externalScanId, LocalDateTime nextCheckAt, LocalDateTime now);
+
+    /**
+     * Locks up to {@code limit} scans whose result is still stored inline. Scans another node is
+     * migrating are skipped.
+     */
+    @Query(value = """
+            SELECT id AS "id", result AS "result" FROM url_scans
+            WHERE result IS NOT NULL
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<InlineResult> findAndLockInlineResults(int limit);
+
+    /**
+     * Locks up to {@code limit} scans with an id above {@code afterId} that have no URL hash yet, in
+     * id order. Scans another node is backfilling are skipped.
+     */
+    @Query(value = """
+            SELECT id AS "id", url AS "url", created_at AS "createdAt" FROM url_scans
+            WHERE url_hash IS NULL AND id > :afterId
+            ORDER BY id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<UnhashedScan> findAndLockUnhashed(long afterId, int limit);
+
+    @Modifying
+    @Query(value = "UPDATE url_scans SET url_hash = :urlHash WHERE id = :id", nativeQuery = true)
+    int setUrlHash(Long id, String urlHash);
+
+    /**
+     * Points a scan at its stored result document and drops the inline copy.
+     */
+    @Modifying
+    @Query(value = "UPDATE url_scans SET result_hash = :resultHash, result = NULL WHERE id = :id", nativeQuery = true)
+    int moveInlineResult(Long id, String resultHash);
+
+    /**
+     * Copies a leader's final outcome to all scans still following it, in one statement. Followers
+     * point at the leader's result document rather than getting a copy of it, and take the leader's
+     * summary as written, so the leader's row is flushed first.
+     *
+     * @return the number of followers completed.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            UPDATE url_scans f
+            SET scan_status = :#{#status.name()}, result_hash = :resultHash, failure_reason = :failureReason,
+                verdict_malicious = l.verdict_malicious, verdict_score = l.verdict_score,
+                verdict_categories = l.verdict_categories, page_domain = l.page_domain, page_ip = l.page_ip,
+                page_country = l.page_country, page_title = l.page_title,
+                next_check_at = NULL, updated_at = :now
+            FROM url_scans l
+            WHERE l.id = :leaderId AND f.leader_scan_id = :leaderId AND f.scan_status = 'PROCESSING'
+            """, nativeQuery = true)
+    int completeFollowers(Long leaderId, UrlScan.ScanStatus status, String resultHash, String failureReason, LocalDateTime now);
 }
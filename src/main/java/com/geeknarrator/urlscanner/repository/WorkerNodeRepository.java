@@ -0,0 +1,32 @@
+package com.geeknarrator.urlscanner.repository;
+
+import com.geeknarrator.urlscanner.entity.WorkerNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface WorkerNodeRepository extends JpaRepository<WorkerNode, String> {
+
+    /**
+     * Registers the node, or refreshes its heartbeat if it is already registered.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO worker_nodes (node_id, heartbeat_at)
+            VALUES (:nodeId, CAST(clock_timestamp() AS timestamp))
+            ON CONFLICT (node_id) DO UPDATE SET heartbeat_at = EXCLUDED.heartbeat_at
+            """, nativeQuery = true)
+    int heartbeat(String nodeId);
+
+    /**
+     * Forgets nodes whose last heartbeat is older than {@code ttlMs}.
+     */
+    @Modifying
+    @Query(value = """
+            DELETE FROM worker_nodes
+            WHERE heartbeat_at < CAST(clock_timestamp() AS timestamp) - make_interval(secs => :ttlMs / 1000.0)
+            """, nativeQuery = true)
+    int deleteStale(long ttlMs);
+}
@@ -0,0 +1,79 @@
+package com.geeknarrator.urlscanner.repository;
+
+import com.geeknarrator.urlscanner.entity.WorkerPartition;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface WorkerPartitionRepository extends JpaRepository<WorkerPartition, Integer> {
+
+    /**
+     * Creates the rows for partitions {@code 0..count-1} that do not exist yet, unowned.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO worker_partitions (partition_index)
+            SELECT generate_series(0, :count - 1)
+            ON CONFLICT (partition_index) DO NOTHING
+            """, nativeQuery = true)
+    int createMissing(int count);
+
+    /**
+     * Extends the lease on every partition below {@code count} still owned by {@code owner}.
+     *
+     * @return the partitions {@code owner} still owns.
+     */
+    @Query(value = """
+            UPDATE worker_partitions
+            SET lease_expires_at = CAST(clock_timestamp() AS timestamp) + make_interval(secs => :leaseMs / 1000.0)
+            WHERE owner = :owner AND partition_index < :count
+            RETURNING partition_index
+            """, nativeQuery = true)
+    List<Integer> renew(String owner, int count, long leaseMs);
+
+    /**
+     * Takes up to {@code limit} partitions below {@code count} that are unowned or whose lease has
+     * expired, lowest index first. Partitions another node is taking at the same time are skipped.
+     *
+     * @return the partitions taken.
+     */
+    @Query(value = """
+            WITH free AS (
+                SELECT partition_index FROM worker_partitions
+                WHERE partition_index < :count
+                  AND (owner IS NULL OR lease_expires_at < CAST(clock_timestamp() AS timestamp))
+                ORDER BY partition_index
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            UPDATE worker_partitions p
+            SET owner = :owner,
+                lease_expires_at = CAST(clock_timestamp() AS timestamp) + make_interval(secs => :leaseMs / 1000.0)
+            FROM free
+            WHERE p.partition_index = free.partition_index
+            RETURNING p.partition_index
+            """, nativeQuery = true)
+    List<Integer> claimFree(String owner, int count, int limit, long leaseMs);
+
+    /**
+     * Gives up the given partitions, if {@code owner} still owns them.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE worker_partitions SET owner = NULL, lease_expires_at = NULL
+            WHERE owner = :owner AND partition_index IN (:partitions)
+            """, nativeQuery = true)
+    int release(String owner, Collection<Integer> partitions);
+
+    /**
+     * Gives up every partition {@code owner} owns.
+     */
+    @Modifying
+    @Query(value = "UPDATE worker_partitions SET owner = NULL, lease_expires_at = NULL WHERE owner = :owner", nativeQuery = true)
+    int releaseAll(String owner);
+}
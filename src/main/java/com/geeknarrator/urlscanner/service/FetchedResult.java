@@ -0,0 +1,13 @@
+package com.geeknarrator.urlscanner.service;
+
+import com.geeknarrator.urlscanner.entity.ScanResult;
+import com.geeknarrator.urlscanner.entity.ScanSummary;
+
+/**
+ * A result fetched from urlscan.io: the document, encoded and ready to be stored, and the summary
+ * read from it on the way.
+ *
+ * @param document an unsaved document, see {@link ScanResult#ScanResult(String, byte[])}.
+ */
+public record FetchedResult(ScanResult document, ScanSummary summary) {
+}
@@ -0,0 +1,109 @@
+package com.geeknarrator.urlscanner.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.geeknarrator.urlscanner.entity.ScanSummary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the {@link ScanSummary} fields out of a urlscan.io result document with a streaming parser,
+ * skipping everything else without materializing it:
+ * <ul>
+ *     <li>{@code verdicts.overall.malicious}, {@code .score} and {@code .categories},</li>
+ *     <li>{@code page.domain}, {@code .ip}, {@code .country} and {@code .title}.</li>
+ * </ul>
+ * Fields that are missing or of an unexpected type are left empty.
+ */
+final class ScanSummaryReader {
+
+    private ScanSummaryReader() {
+    }
+
+    /**
+     * Reads the document's root object through to its end.
+     *
+     * @param parser positioned on the root {@link JsonToken#START_OBJECT}.
+     */
+    static ScanSummary read(JsonParser parser) throws IOException {
+        ScanSummary summary = new ScanSummary();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("verdicts".equals(field) && value == JsonToken.START_OBJECT) {
+                readVerdicts(parser, summary);
+            } else if ("page".equals(field) && value == JsonToken.START_OBJECT) {
+                readPage(parser, summary);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return summary;
+    }
+
+    private static void readVerdicts(JsonParser parser, ScanSummary summary) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("overall".equals(field) && value == JsonToken.START_OBJECT) {
+                readOverallVerdict(parser, summary);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void readOverallVerdict(JsonParser parser, ScanSummary summary) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("categories".equals(field) && value == JsonToken.START_ARRAY) {
+                summary.setCategories(readStrings(parser));
+                continue;
+            }
+            parser.skipChildren();
+            switch (field) {
+                case "malicious" -> summary.setMalicious(value.isBoolean() ? parser.getBooleanValue() : null);
+                case "score" -> summary.setScore(value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : null);
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static void readPage(JsonParser parser, ScanSummary summary) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            String text = value == JsonToken.VALUE_STRING ? parser.getText() : null;
+            parser.skipChildren();
+            switch (field) {
+                case "domain" -> summary.setDomain(truncate(text, 255));
+                case "ip" -> summary.setIp(truncate(text, 64));
+                case "country" -> summary.setCountry(truncate(text, 8));
+                case "title" -> summary.setTitle(truncate(text, ScanSummary.MAX_TITLE_LENGTH));
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static List<String> readStrings(JsonParser parser) throws IOException {
+        List<String> values = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_STRING) {
+                values.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return values;
+    }
+
+    private static String truncate(String text, int maxLength) {
+        return text == null || text.length() <= maxLength ? text : text.substring(0, maxLength);
+    }
+}
@@ -0,0 +1,41 @@
+package com.geeknarrator.urlscanner.service;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a single attempt to submit a scan to urlscan.io.
+ *
+ * @param externalScanId the urlscan.io scan UUID, if the scan was accepted.
+ * @param retryAfter     how long urlscan.io asked us to wait before retrying, if it said so, or how long
+ *                       the circuit breaker stays open.
+ * @param error          why the attempt did not succeed.
+ */
+public record SubmissionResult(Outcome outcome, String externalScanId, Duration retryAfter, String error) {
+
+    public enum Outcome {
+        /** urlscan.io accepted the scan. */
+        SUBMITTED,
+        /** The attempt failed for a transient reason (rate limit, upstream error, timeout) and may be retried. */
+        RETRYABLE,
+        /** urlscan.io refused the scan; retrying will not help. */
+        REJECTED,
+        /** The attempt was not made because the submit circuit breaker is open; it does not count as one. */
+        DEFERRED
+    }
+
+    public static SubmissionResult submitted(String externalScanId) {
+        return new SubmissionResult(Outcome.SUBMITTED, externalScanId, null, null);
+    }
+
+    public static SubmissionResult retryable(String error, Duration retryAfter) {
+        return new SubmissionResult(Outcome.RETRYABLE, null, retryAfter, error);
+    }
+
+    public static SubmissionResult rejected(String error) {
+        return new SubmissionResult(Outcome.REJECTED, null, null, error);
+    }
+
+    public static SubmissionResult deferred(String error, Duration retryAfter) {
+        return new SubmissionResult(Outcome.DEFERRED, null, retryAfter, error);
+    }
+}
@@ -0,0 +1,88 @@
+package com.geeknarrator.urlscanner.service;
+
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Runs one user's concurrent submissions of the same URL one at a time, so that they end up sharing
+ * a single scan instead of all missing the dedup lookup and inserting a row each. URLs are compared
+ * by {@link UrlNormalizer#hash}, so different spellings of the same page count as the same URL.
+ * <p>
+ * On this node, the first caller runs the submission and callers arriving while it is in flight wait
+ * for it and get its result (or its exception) without touching the database. Across nodes, the
+ * submission runs in a transaction holding a Postgres advisory lock for the user and URL, so a
+ * submission on another node waits until this one has committed and then finds its row. The lock can
+ * be turned off with {@code urlscan.single-flight.cluster-lock}.
+ */
+@Component
+public class SubmissionSingleFlight {
+
+    private final UrlScanRepository urlScanRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final boolean clusterLock;
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public SubmissionSingleFlight(UrlScanRepository urlScanRepository, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                                  @Value("${urlscan.single-flight.cluster-lock:true}") boolean clusterLock) {
+        this.urlScanRepository = urlScanRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.clusterLock = clusterLock;
+    }
+
+    /**
+     * Runs {@code submission} for {@code userId} and {@code url}, or waits for the run already in
+     * flight for them and returns its result.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Long userId, String url, Supplier<T> submission) {
+        String urlHash = UrlNormalizer.hash(url);
+        Key key = new Key(userId, urlHash);
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            meterRegistry.counter("scans.singleflight.shared").increment();
+            try {
+                return (T) running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            T result = transactionTemplate.execute(status -> {
+                if (clusterLock) {
+                    urlScanRepository.lockSubmission(Long.hashCode(userId), lockKey(urlHash));
+                }
+                return submission.get();
+            });
+            own.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * @return the first four bytes of the URL's SHA-256, as the second half of the advisory lock key.
+     */
+    static int lockKey(String urlHash) {
+        return HexFormat.fromHexDigits(urlHash, 0, 8);
+    }
+
+    private record Key(Long userId, String urlHash) {
+    }
+}
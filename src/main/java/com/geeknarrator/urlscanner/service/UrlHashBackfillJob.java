@@ -0,0 +1,111 @@
+package com.geeknarrator.urlscanner.service;
+
+import com.geeknarrator.urlscanner.repository.UnhashedScan;
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import com.geeknarrator.urlscanner.service.cache.RecentUrlFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One-off migration of scans created before {@code url_scans.url_hash} was recorded: their hash is
+ * computed with {@link UrlNormalizer} and written back, so that dedup, follower coalescing and the
+ * {@link RecentUrlFilter} find them like any other scan. Each backfilled scan is also added to this
+ * node's filter, which may have been built before the backfill reached it.
+ * <p>
+ * It runs once in the background after startup, {@code urlscan.url-hash-backfill.batch-size} rows
+ * per transaction in id order with a pause of {@code urlscan.url-hash-backfill.pause-ms} in
+ * between. Rows are locked with {@code SKIP LOCKED}, so several nodes can run it at once, and a run
+ * that is interrupted resumes the next time. Once every row has a hash a run is a single query that
+ * finds nothing; {@code urlscan.url-hash-backfill.enabled=false} saves even that.
+ */
+@Component
+@ConditionalOnProperty(name = "urlscan.url-hash-backfill.enabled", havingValue = "true", matchIfMissing = true)
+public class UrlHashBackfillJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(UrlHashBackfillJob.class);
+
+    private final UrlScanRepository urlScanRepository;
+    private final RecentUrlFilter recentUrlFilter;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "url-hash-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${urlscan.url-hash-backfill.batch-size:500}")
+    private int batchSize;
+
+    @Value("${urlscan.url-hash-backfill.pause-ms:100}")
+    private long pauseMs;
+
+    public UrlHashBackfillJob(UrlScanRepository urlScanRepository, RecentUrlFilter recentUrlFilter,
+                              TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.urlScanRepository = urlScanRepository;
+        this.recentUrlFilter = recentUrlFilter;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    void run() {
+        try {
+            long total = 0;
+            long afterId = 0;
+            List<UnhashedScan> batch;
+            do {
+                long from = afterId;
+                batch = transactionTemplate.execute(status -> backfill(from));
+                if (batch == null || batch.isEmpty()) {
+                    break;
+                }
+                // Only once committed, so the filter never holds a hash the table does not.
+                batch.forEach(scan -> recentUrlFilter.record(UrlNormalizer.hash(scan.getUrl()), scan.getCreatedAt()));
+                total += batch.size();
+                afterId = batch.get(batch.size() - 1).getId();
+                if (pauseMs > 0) {
+                    Thread.sleep(pauseMs);
+                }
+            } while (batch.size() == batchSize && !Thread.currentThread().isInterrupted());
+            if (total > 0) {
+                logger.info("URL hash backfill finished: {} scans hashed.", total);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info("URL hash backfill interrupted; it resumes on the next start.");
+        } catch (RuntimeException e) {
+            logger.error("URL hash backfill failed; it resumes on the next start.", e);
+        }
+    }
+
+    private List<UnhashedScan> backfill(long afterId) {
+        List<UnhashedScan> batch = urlScanRepository.findAndLockUnhashed(afterId, batchSize);
+        for (UnhashedScan scan : batch) {
+            urlScanRepository.setUrlHash(scan.getId(), UrlNormalizer.hash(scan.getUrl()));
+        }
+        meterRegistry.counter("scans.url_hash.backfilled").increment(batch.size());
+        return batch;
+    }
+}
@@ -0,0 +1,74 @@
+package com.geeknarrator.urlscanner.service;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Reduces URLs that point at the same page to one form, so duplicate scans can be recognised.
+ * <p>
+ * Scheme and host are lower-cased, a default port is dropped, an empty path becomes {@code /} and
+ * the fragment (which never reaches the server) is removed. Path and query are left alone, since
+ * they are case-sensitive and may be order-sensitive. A URL that does not parse is only trimmed.
+ */
+public final class UrlNormalizer {
+
+    private UrlNormalizer() {
+    }
+
+    public static String normalize(String url) {
+        String trimmed = url.trim();
+        URI uri;
+        try {
+            uri = new URI(trimmed);
+        } catch (URISyntaxException e) {
+            return trimmed;
+        }
+        if (uri.getScheme() == null || uri.getRawAuthority() == null) {
+            return trimmed;
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        StringBuilder normalized = new StringBuilder(trimmed.length()).append(scheme).append("://");
+        if (uri.getRawUserInfo() != null) {
+            normalized.append(uri.getRawUserInfo()).append('@');
+        }
+        if (uri.getHost() != null) {
+            normalized.append(uri.getHost().toLowerCase(Locale.ROOT));
+            if (uri.getPort() != -1 && uri.getPort() != defaultPort(scheme)) {
+                normalized.append(':').append(uri.getPort());
+            }
+        } else {
+            normalized.append(uri.getRawAuthority().toLowerCase(Locale.ROOT));
+        }
+        String path = uri.getRawPath();
+        normalized.append(path == null || path.isEmpty() ? "/" : path);
+        if (uri.getRawQuery() != null) {
+            normalized.append('?').append(uri.getRawQuery());
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @return the hex SHA-256 of the normalized URL, short enough to index.
+     */
+    public static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalize(url).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static int defaultPort(String scheme) {
+        return switch (scheme) {
+            case "http" -> 80;
+            case "https" -> 443;
+            default -> -1;
+        };
+    }
+}
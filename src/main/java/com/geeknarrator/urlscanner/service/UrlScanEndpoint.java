@@ -0,0 +1,9 @@
+package com.geeknarrator.urlscanner.service;
+
+/**
+ * The urlscan.io endpoints the worker calls. Rate limits and circuit breakers are tracked per endpoint.
+ */
+public enum UrlScanEndpoint {
+    SUBMIT,
+    RESULT
+}
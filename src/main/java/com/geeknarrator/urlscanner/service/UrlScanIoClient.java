@@ -1,16 +1,27 @@
 package com.geeknarrator.urlscanner.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.geeknarrator.urlscanner.entity.ScanResult;
+import com.geeknarrator.urlscanner.entity.ScanSummary;
+import com.geeknarrator.urlscanner.service.circuitbreaker.UrlScanCircuitBreakers;
+import com.geeknarrator.urlscanner.service.ratelimit.UrlScanRateLimiter;
+import com.geeknarrator.urlscanner.service.storage.ResultEncodingStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.*;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
 import java.time.Duration;
 import java.util.Collections;
 import java.util.Map;
@@ -22,6 +33,8 @@ public class UrlScanIoClient {
     private static final Logger logger = LoggerFactory.getLogger(UrlScanIoClient.class);
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final UrlScanRateLimiter rateLimiter;
+    private final UrlScanCircuitBreakers circuitBreakers;
 
     @Value("${urlscan.api.key}")
     private String urlscanApiKey;
@@ -29,100 +42,171 @@ public class UrlScanIoClient {
     @Value("${urlscan.api.url:https://urlscan.io/api/v1}")
     private String urlscanApiBaseUrl;
 
-    @Value("${urlscan.client.max-retries:3}")
-    private int maxRetries;
-
-    @Value("${urlscan.client.retry-initial-delay-ms:5000}")
-    private long retryInitialDelayMs;
-
-    public UrlScanIoClient(RestTemplateBuilder restTemplateBuilder, ObjectMapper objectMapper) {
+    public UrlScanIoClient(RestTemplateBuilder restTemplateBuilder, ObjectMapper objectMapper, UrlScanRateLimiter rateLimiter,
+                           UrlScanCircuitBreakers circuitBreakers) {
         this.restTemplate = restTemplateBuilder
                 .setConnectTimeout(Duration.ofSeconds(5))
                 .setReadTimeout(Duration.ofSeconds(10))
                 .build();
         this.objectMapper = objectMapper;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreakers = circuitBreakers;
     }
 
-    public Optional<String> submitScan(String url) {
+    /**
+     * Makes a single attempt to submit {@code url}. Transient failures are reported as
+     * {@link SubmissionResult.Outcome#RETRYABLE} rather than retried here, so the calling thread never
+     * waits on upstream backpressure; the worker decides when to try again.
+     * <p>
+     * Server errors, timeouts and slow responses count against the submit circuit breaker; while it
+     * is open the call is not made at all and the result is {@link SubmissionResult.Outcome#DEFERRED}.
+     * A rate-limited call says nothing about urlscan.io's health either way, so its permit is handed
+     * back to the breaker.
+     */
+    public SubmissionResult submitScan(String url) {
+        if (circuitBreakers.isOpen(UrlScanEndpoint.SUBMIT)) {
+            return SubmissionResult.deferred("Circuit breaker for urlscan.io submissions is open",
+                    circuitBreakers.remainingOpenTime(UrlScanEndpoint.SUBMIT));
+        }
         String submitUrl = urlscanApiBaseUrl + "/scan/";
         HttpHeaders headers = createApiHeaders();
 
         Map<String, String> requestBody = Collections.singletonMap("url", url);
         HttpEntity<Map<String, String>> requestEntity = new HttpEntity<>(requestBody, headers);
 
-        long currentDelay = retryInitialDelayMs;
-        for (int attempt = 1; attempt <= maxRetries; attempt++) {
-            try {
-                logger.info("Attempt {} to submit scan for URL: {}", attempt, url);
-                ResponseEntity<Map> response = restTemplate.exchange(
-                        submitUrl,
-                        HttpMethod.POST,
-                        requestEntity,
-                        Map.class
-                );
-
-                if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                    String uuid = (String) response.getBody().get("uuid");
-                    logger.info("Scan submitted successfully for URL: {}, UUID: {}", url, uuid);
-                    return Optional.ofNullable(uuid);
-                }
-            } catch (HttpClientErrorException e) {
-                if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
-                    if (attempt < maxRetries) {
-                        logger.warn("Rate limit hit for URL: {}. Retrying in {}ms (Attempt {}/{})", url, currentDelay, attempt, maxRetries);
-                        try {
-                            Thread.sleep(currentDelay);
-                            currentDelay *= 2; // Exponential backoff
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            logger.error("Thread interrupted during retry delay.", ie);
-                            return Optional.empty();
-                        }
-                    } else {
-                        logger.error("Max retries reached for URL: {} due to rate limiting.", url);
-                    }
-                } else {
-                    logger.error("HTTP client error submitting scan for URL: {}. Status: {}. Body: {}", url, e.getStatusCode(), e.getResponseBodyAsString(), e);
-                    return Optional.empty(); // Don't retry on other client errors
-                }
-            } catch (Exception e) {
-                logger.error("An unexpected error occurred while submitting scan for URL: {}", url, e);
-                return Optional.empty(); // Don't retry on other exceptions
+        long start = System.nanoTime();
+        try {
+            logger.info("Submitting scan for URL: {}", url);
+            ResponseEntity<Map> response = restTemplate.exchange(
+                    submitUrl,
+                    HttpMethod.POST,
+                    requestEntity,
+                    Map.class
+            );
+
+            circuitBreakers.onSuccess(UrlScanEndpoint.SUBMIT, since(start));
+            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null && response.getBody().get("uuid") != null) {
+                String uuid = (String) response.getBody().get("uuid");
+                logger.info("Scan submitted successfully for URL: {}, UUID: {}", url, uuid);
+                return SubmissionResult.submitted(uuid);
             }
+            return SubmissionResult.rejected("urlscan.io returned no scan ID (status " + response.getStatusCode().value() + ")");
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                rateLimiter.onRateLimited(UrlScanEndpoint.SUBMIT);
+                // Not an outcome; a half-open breaker would otherwise lose this probe for good.
+                circuitBreakers.release(UrlScanEndpoint.SUBMIT, 1);
+                logger.warn("Rate limit hit for URL: {}.", url);
+                return SubmissionResult.retryable("Rate limited by urlscan.io", retryAfter(e.getResponseHeaders()));
+            }
+            // urlscan.io answered and refused this URL; that says nothing about its health.
+            circuitBreakers.onSuccess(UrlScanEndpoint.SUBMIT, since(start));
+            logger.error("HTTP client error submitting scan for URL: {}. Status: {}. Body: {}", url, e.getStatusCode(), e.getResponseBodyAsString(), e);
+            return SubmissionResult.rejected("urlscan.io rejected the scan (status " + e.getStatusCode().value() + ")");
+        } catch (HttpServerErrorException e) {
+            circuitBreakers.onFailure(UrlScanEndpoint.SUBMIT, since(start));
+            logger.warn("urlscan.io returned {} submitting scan for URL: {}.", e.getStatusCode(), url);
+            return SubmissionResult.retryable("urlscan.io returned " + e.getStatusCode().value(), retryAfter(e.getResponseHeaders()));
+        } catch (ResourceAccessException e) {
+            circuitBreakers.onFailure(UrlScanEndpoint.SUBMIT, since(start));
+            logger.warn("Could not reach urlscan.io submitting scan for URL: {}: {}", url, e.getMessage());
+            return SubmissionResult.retryable("Could not reach urlscan.io: " + e.getMessage(), null);
+        } catch (Exception e) {
+            circuitBreakers.onFailure(UrlScanEndpoint.SUBMIT, since(start));
+            logger.error("An unexpected error occurred while submitting scan for URL: {}", url, e);
+            return SubmissionResult.rejected("An unexpected error occurred while submitting scan: " + e.getMessage());
         }
-        return Optional.empty();
     }
 
-    public Optional<String> getScanResult(String externalScanId) {
+    /**
+     * Fetches the result of {@code externalScanId} and encodes it for storage as it is read. The
+     * document is parsed as a stream, only to check that it is a JSON object and to pick out its
+     * {@link ScanSummary}; it is never built into a tree or held as text, so a result of several
+     * megabytes costs little more memory than its compressed form.
+     *
+     * @return the result as a document ready to be stored, with its summary, or empty if it is not
+     *         available (yet), the lookup failed, or the result circuit breaker is open.
+     */
+    public Optional<FetchedResult> fetchScanResult(String externalScanId) {
+        if (circuitBreakers.isOpen(UrlScanEndpoint.RESULT)) {
+            logger.info("Circuit breaker for urlscan.io results is open. Not fetching result for {}.", externalScanId);
+            return Optional.empty();
+        }
         String resultUrl = urlscanApiBaseUrl + "/result/" + externalScanId + "/";
-        HttpEntity<Void> requestEntity = new HttpEntity<>(createApiHeaders());
+        HttpHeaders headers = createApiHeaders();
 
+        long start = System.nanoTime();
         try {
-            ResponseEntity<Map> response = restTemplate.exchange(
+            FetchedResult fetched = restTemplate.execute(
                     resultUrl,
                     HttpMethod.GET,
-                    requestEntity,
-                    Map.class
+                    request -> request.getHeaders().putAll(headers),
+                    this::readResult
             );
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                return Optional.of(objectMapper.writeValueAsString(response.getBody()));
-            }
+            circuitBreakers.onSuccess(UrlScanEndpoint.RESULT, since(start));
+            return Optional.ofNullable(fetched);
         } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS) {
+                circuitBreakers.onSuccess(UrlScanEndpoint.RESULT, since(start));
+            }
             if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
                 logger.info("Scan result for {} not yet available (404).", externalScanId);
                 return Optional.empty();
             }
+            if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                rateLimiter.onRateLimited(UrlScanEndpoint.RESULT);
+                circuitBreakers.release(UrlScanEndpoint.RESULT, 1);
+            }
             logger.error("HTTP client error fetching result for scan ID: {}. Status: {}. Body: {}", externalScanId, e.getStatusCode(), e.getResponseBodyAsString(), e);
-        } catch (JsonProcessingException e) {
-            logger.error("Error serializing scan result for ID: {}", externalScanId, e);
         } catch (Exception e) {
+            circuitBreakers.onFailure(UrlScanEndpoint.RESULT, since(start));
             logger.error("An unexpected error occurred while fetching result for scan ID: {}", externalScanId, e);
         }
 
         return Optional.empty();
     }
 
+    /**
+     * Reads a result body through a {@link ResultEncodingStream}, so that checking the document,
+     * summarizing it and encoding it take a single pass over the response.
+     */
+    private FetchedResult readResult(ClientHttpResponse response) throws IOException {
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            return null;
+        }
+        try (ResultEncodingStream body = new ResultEncodingStream(response.getBody());
+             JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Scan result is not a JSON object");
+            }
+            ScanSummary summary = ScanSummaryReader.read(parser);
+            if (parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Unexpected content after the scan result");
+            }
+            ResultEncodingStream.Encoded encoded = body.finish();
+            return new FetchedResult(new ScanResult(encoded.contentHash(), encoded.data()), summary);
+        }
+    }
+
+    private static Duration since(long startNanos) {
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Reads a {@code Retry-After} header given in seconds. The HTTP-date form is not used by urlscan.io.
+     */
+    private static Duration retryAfter(HttpHeaders headers) {
+        String value = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     private HttpHeaders createApiHeaders() {
         HttpHeaders headers = new HttpHeaders();
         headers.set("API-Key", urlscanApiKey);
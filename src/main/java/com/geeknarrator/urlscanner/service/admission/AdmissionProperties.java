@@ -0,0 +1,85 @@
+package com.geeknarrator.urlscanner.service.admission;
+
+import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.entity.User;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Backlog watermarks above which new scans are turned away. Bound from {@code urlscan.admission.*}.
+ */
+@Component
+@ConfigurationProperties(prefix = "urlscan.admission")
+public class AdmissionProperties {
+
+    /** Whether new scans are checked against the watermarks at all. */
+    private boolean enabled = true;
+
+    /** How long a backlog estimate is reused before it is read from the database again. */
+    private long refreshIntervalMs = 5000;
+
+    /** Queued (SUBMITTED) scans across all users above which new scans of a priority get a 503. */
+    private Map<UrlScan.Priority, Long> globalWatermarks = new EnumMap<>(Map.of(
+            UrlScan.Priority.INTERACTIVE, 50000L,
+            UrlScan.Priority.BULK, 20000L));
+
+    /** Queued scans of a single user above which that user's new scans get a 429, per tier. */
+    private Map<User.Tier, Long> userWatermarks = new EnumMap<>(Map.of(
+            User.Tier.FREE, 500L,
+            User.Tier.PRO, 2000L,
+            User.Tier.ENTERPRISE, 10000L));
+
+    /** Upper bound on the Retry-After sent with a rejection. */
+    private long maxRetryAfterSeconds = 600;
+
+    public long globalWatermark(UrlScan.Priority priority) {
+        return globalWatermarks.getOrDefault(priority, Long.MAX_VALUE);
+    }
+
+    public long userWatermark(User.Tier tier) {
+        return userWatermarks.getOrDefault(tier, Long.MAX_VALUE);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getRefreshIntervalMs() {
+        return refreshIntervalMs;
+    }
+
+    public void setRefreshIntervalMs(long refreshIntervalMs) {
+        this.refreshIntervalMs = refreshIntervalMs;
+    }
+
+    public Map<UrlScan.Priority, Long> getGlobalWatermarks() {
+        return globalWatermarks;
+    }
+
+    public void setGlobalWatermarks(Map<UrlScan.Priority, Long> globalWatermarks) {
+        this.globalWatermarks = globalWatermarks;
+    }
+
+    public Map<User.Tier, Long> getUserWatermarks() {
+        return userWatermarks;
+    }
+
+    public void setUserWatermarks(Map<User.Tier, Long> userWatermarks) {
+        this.userWatermarks = userWatermarks;
+    }
+
+    public long getMaxRetryAfterSeconds() {
+        return maxRetryAfterSeconds;
+    }
+
+    public void setMaxRetryAfterSeconds(long maxRetryAfterSeconds) {
+        this.maxRetryAfterSeconds = maxRetryAfterSeconds;
+    }
+}
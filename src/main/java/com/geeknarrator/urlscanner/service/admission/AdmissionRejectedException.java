@@ -0,0 +1,34 @@
+package com.geeknarrator.urlscanner.service.admission;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a new scan is turned away because the queue is too deep. {@link #getRetryAfter()} is
+ * the estimated time until the backlog has drained below the watermark that was crossed.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    public enum Reason {
+        /** The caller's own backlog is over the limit for their tier. */
+        USER_BACKLOG,
+        /** The backlog across all users is over the limit for the scan's priority. */
+        SYSTEM_BACKLOG
+    }
+
+    private final Reason reason;
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(Reason reason, Duration retryAfter, String message) {
+        super(message);
+        this.reason = reason;
+        this.retryAfter = retryAfter;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,155 @@
+package com.geeknarrator.urlscanner.service.admission;
+
+import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.entity.User;
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import com.geeknarrator.urlscanner.service.ratelimit.RateLimitProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a new scan may be queued, based on how deep the SUBMITTED backlog already is.
+ * <p>
+ * Backlog sizes are estimates: each is read with a count capped just above the largest watermark
+ * it is compared with, so the query stays cheap however deep the queue gets, and is then reused for
+ * {@code urlscan.admission.refresh-interval-ms}. Scans admitted in between are added to the cached
+ * counts, so a burst cannot slip through while an estimate is stale, and taken off again if their
+ * insert rolls back.
+ * <p>
+ * The global backlog is checked against a watermark per priority (set bulk lower than interactive
+ * so that bulk work is shed first) and answered with 503; a user's own backlog is checked against a
+ * watermark per tier and answered with 429. Retry-After is the time the workers need to drain the
+ * excess at the submit rate limit, and never less than the refresh interval.
+ */
+@Service
+public class ScanAdmissionService {
+
+    // Per-user estimates kept before expired ones are dropped.
+    private static final int MAX_CACHED_USERS = 10000;
+
+    private final UrlScanRepository urlScanRepository;
+    private final AdmissionProperties properties;
+    private final RateLimitProperties rateLimitProperties;
+    private final MeterRegistry meterRegistry;
+    private final Map<Long, Estimate> userBacklogs = new ConcurrentHashMap<>();
+    private volatile Estimate globalBacklog;
+
+    public ScanAdmissionService(UrlScanRepository urlScanRepository, AdmissionProperties properties,
+                                RateLimitProperties rateLimitProperties, MeterRegistry meterRegistry) {
+        this.urlScanRepository = urlScanRepository;
+        this.properties = properties;
+        this.rateLimitProperties = rateLimitProperties;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("scans.backlog.estimate", this, service -> service.globalBacklog == null ? 0 : service.globalBacklog.count.get())
+                .description("Estimated number of queued (SUBMITTED) scans, capped at the largest global watermark")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Admits one new scan for {@code user}, or throws if a watermark has been passed.
+     *
+     * @throws AdmissionRejectedException if the scan must not be queued now.
+     */
+    public void admit(User user, UrlScan.Priority priority) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long globalLimit = properties.globalWatermark(priority);
+        Estimate global = globalEstimate();
+        if (global.count.get() >= globalLimit) {
+            reject(AdmissionRejectedException.Reason.SYSTEM_BACKLOG, priority, global.count.get() - globalLimit,
+                    "The scan queue is full. Please retry later.");
+        }
+        long userLimit = properties.userWatermark(user.getTier());
+        Estimate own = userEstimate(user.getId(), userLimit);
+        if (own.count.get() >= userLimit) {
+            reject(AdmissionRejectedException.Reason.USER_BACKLOG, priority, own.count.get() - userLimit,
+                    "You have " + userLimit + " or more scans waiting. Please retry once some have been processed.");
+        }
+        global.count.incrementAndGet();
+        own.count.incrementAndGet();
+        undoOnRollback(() -> {
+            global.count.decrementAndGet();
+            own.count.decrementAndGet();
+        });
+    }
+
+    /**
+     * Takes an admitted scan off the estimates again if the transaction that was to insert it rolls
+     * back. Counting at admission rather than on commit keeps concurrent submissions from all being
+     * admitted against the same count.
+     */
+    private static void undoOnRollback(Runnable undo) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    undo.run();
+                }
+            }
+        });
+    }
+
+    private Estimate globalEstimate() {
+        Estimate current = globalBacklog;
+        if (current == null || current.isExpired(properties.getRefreshIntervalMs())) {
+            long cap = Collections.max(properties.getGlobalWatermarks().values()) + 1;
+            current = new Estimate(urlScanRepository.countByStatusCapped(UrlScan.ScanStatus.SUBMITTED, cap));
+            globalBacklog = current;
+        }
+        return current;
+    }
+
+    private Estimate userEstimate(Long userId, long watermark) {
+        Estimate current = userBacklogs.get(userId);
+        if (current == null || current.isExpired(properties.getRefreshIntervalMs())) {
+            if (userBacklogs.size() >= MAX_CACHED_USERS) {
+                userBacklogs.values().removeIf(estimate -> estimate.isExpired(properties.getRefreshIntervalMs()));
+            }
+            current = new Estimate(urlScanRepository.countByUserIdAndStatusCapped(userId, UrlScan.ScanStatus.SUBMITTED, watermark + 1));
+            userBacklogs.put(userId, current);
+        }
+        return current;
+    }
+
+    private void reject(AdmissionRejectedException.Reason reason, UrlScan.Priority priority, long excess, String message) {
+        meterRegistry.counter("scans.admission.rejected", "reason", reason.name(), "priority", priority.name()).increment();
+        throw new AdmissionRejectedException(reason, retryAfter(excess + 1), message);
+    }
+
+    private Duration retryAfter(long excess) {
+        // Retrying before the estimate is refreshed would only get the same answer.
+        long seconds = Math.max(1, (long) Math.ceil(properties.getRefreshIntervalMs() / 1000.0));
+        double drainPerSecond = rateLimitProperties.isEnabled() ? rateLimitProperties.getSubmit().getRefillPerSecond() : 0;
+        if (drainPerSecond > 0) {
+            seconds = Math.max(seconds, (long) Math.ceil(excess / drainPerSecond));
+        }
+        return Duration.ofSeconds(Math.min(seconds, properties.getMaxRetryAfterSeconds()));
+    }
+
+    private static final class Estimate {
+
+        private final AtomicLong count;
+        private final long loadedAtNanos = System.nanoTime();
+
+        private Estimate(long count) {
+            this.count = new AtomicLong(count);
+        }
+
+        private boolean isExpired(long ttlMs) {
+            return System.nanoTime() - loadedAtNanos >= ttlMs * 1_000_000;
+        }
+    }
+}
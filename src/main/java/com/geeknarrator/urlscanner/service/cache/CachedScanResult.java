@@ -0,0 +1,25 @@
+package com.geeknarrator.urlscanner.service.cache;
+
+import com.geeknarrator.urlscanner.entity.ScanSummary;
+import com.geeknarrator.urlscanner.entity.UrlScan;
+
+import java.time.LocalDateTime;
+
+/**
+ * What the global cache check needs from a finished scan to answer a new submission of its URL.
+ *
+ * @param scanId     the DONE scan the result was taken from.
+ * @param resultHash the stored result document, so that a new scan can point at it instead of storing a copy.
+ * @param summary    the summary of that result, which is all a response carries; the document stays in storage.
+ * @param scannedAt  when that scan was created; the entry is fresh until {@code scannedAt} plus the cache TTL.
+ */
+public record CachedScanResult(Long scanId, String externalScanId, String resultHash, ScanSummary summary, LocalDateTime scannedAt) {
+
+    /**
+     * @param scan a scan with a stored result document.
+     */
+    public static CachedScanResult from(UrlScan scan) {
+        return new CachedScanResult(scan.getId(), scan.getExternalScanId(), scan.getResultDocument().getContentHash(),
+                scan.getSummary(), scan.getCreatedAt());
+    }
+}
@@ -0,0 +1,81 @@
+package com.geeknarrator.urlscanner.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Keeps entries in this JVM. Only suitable for a single node and for tests.
+ * <p>
+ * Entries expire with the TTL they were put with, and at most
+ * {@code urlscan.cache.shared.memory.max-entries} are kept; beyond that the least useful are
+ * dropped, as any cache tier may.
+ */
+@Component
+@ConditionalOnProperty(name = "urlscan.cache.shared.store", havingValue = "memory", matchIfMissing = true)
+public class InMemorySharedResultStore implements SharedResultStore {
+
+    private final Cache<String, Entry> entries;
+    private final List<Consumer<String>> evictionListeners = new CopyOnWriteArrayList<>();
+
+    public InMemorySharedResultStore(@Value("${urlscan.cache.shared.memory.max-entries:100000}") long maxEntries) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new UntilExpired())
+                .build();
+    }
+
+    @Override
+    public Optional<CachedScanResult> get(String urlHash) {
+        Entry entry = entries.getIfPresent(urlHash);
+        return entry == null ? Optional.empty() : Optional.of(entry.result);
+    }
+
+    @Override
+    public void put(String urlHash, CachedScanResult result, Duration ttl) {
+        Entry fresh = new Entry(result, System.nanoTime() + ttl.toNanos());
+        entries.asMap().merge(urlHash, fresh, (cached, update) -> update.result.scannedAt().isAfter(cached.result.scannedAt()) ? update : cached);
+    }
+
+    @Override
+    public void evict(String urlHash) {
+        entries.invalidate(urlHash);
+        evictionListeners.forEach(listener -> listener.accept(urlHash));
+    }
+
+    @Override
+    public void onEviction(Consumer<String> listener) {
+        evictionListeners.add(listener);
+    }
+
+    private record Entry(CachedScanResult result, long expiresAtNanos) {
+    }
+
+    // Each entry keeps its own deadline, so a merge that keeps the cached entry keeps its deadline too.
+    private static class UntilExpired implements Expiry<String, Entry> {
+
+        @Override
+        public long expireAfterCreate(String urlHash, Entry entry, long currentTime) {
+            return Math.max(0, entry.expiresAtNanos - currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(String urlHash, Entry entry, long currentTime, long currentDuration) {
+            return Math.max(0, entry.expiresAtNanos - currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String urlHash, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.geeknarrator.urlscanner.service.cache;
+
+import com.geeknarrator.urlscanner.repository.ScannedUrl;
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Negative cache for {@code createScan()}: a {@link RollingBloomFilter} of the URLs scanned within
+ * {@code urlscan.cache.ttl.hours}. When it says a URL has not been scanned in that window, the
+ * global lookup cannot find anything and is skipped. The user-level lookup always runs: it is what
+ * deduplicates a user's concurrent submissions across nodes, and the filter may not have seen a
+ * scan inserted elsewhere yet.
+ * <p>
+ * The filter is built from {@code url_scans} when the application starts; until that has finished
+ * every URL is reported as possibly scanned. Scans inserted on this node are added as they are
+ * saved, and every {@code urlscan.cache.bloom.sync-interval-ms} the scans created since the last
+ * sync (on any node) are read back, with an overlap for transactions that committed late. A scan
+ * created on another node can therefore go unseen for up to one sync interval, in which case its
+ * URL is scanned again instead of deduplicated. Buckets rotate on the same schedule.
+ */
+@Component
+public class RecentUrlFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecentUrlFilter.class);
+
+    private static final int BATCH_SIZE = 5000;
+    // Scans committed this long after they were created are still picked up by the next sync.
+    private static final Duration SYNC_OVERLAP = Duration.ofMinutes(1);
+
+    private final UrlScanRepository urlScanRepository;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Duration window;
+    private final RollingBloomFilter filter;
+    private volatile boolean ready;
+    private LocalDateTime syncedUntil;
+
+    public RecentUrlFilter(UrlScanRepository urlScanRepository,
+                           MeterRegistry meterRegistry,
+                           @Value("${urlscan.cache.ttl.hours:24}") int ttlHours,
+                           @Value("${urlscan.cache.bloom.enabled:true}") boolean enabled,
+                           @Value("${urlscan.cache.bloom.bucket-count:24}") int bucketCount,
+                           @Value("${urlscan.cache.bloom.expected-insertions-per-bucket:100000}") long expectedInsertionsPerBucket,
+                           @Value("${urlscan.cache.bloom.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.urlScanRepository = urlScanRepository;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.window = Duration.ofHours(ttlHours);
+        this.filter = new RollingBloomFilter(window, bucketCount, expectedInsertionsPerBucket, falsePositiveRate, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @return {@code false} only if no scan of {@code urlHash} was created within the cache TTL.
+     */
+    public boolean mightHaveBeenScanned(String urlHash) {
+        if (!enabled || !ready || urlHash == null) {
+            return true;
+        }
+        boolean maybe = filter.mightContain(urlHash);
+        meterRegistry.counter("scans.bloom", "result", maybe ? "maybe" : "absent").increment();
+        return maybe;
+    }
+
+    /**
+     * Adds a scan of {@code urlHash} created at {@code createdAt}. Scans from before the window are
+     * ignored.
+     */
+    public void record(String urlHash, LocalDateTime createdAt) {
+        if (enabled && urlHash != null && createdAt != null && createdAt.isAfter(LocalDateTime.now().minus(window))) {
+            filter.put(urlHash, createdAt);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${urlscan.cache.bloom.sync-interval-ms:5000}")
+    public synchronized void sync() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime started = LocalDateTime.now();
+        try {
+            if (!ready) {
+                int loaded = load(started.minus(window));
+                syncedUntil = started;
+                ready = true;
+                logger.info("Built filter of recently scanned URLs from {} scans.", loaded);
+                return;
+            }
+            int dropped = filter.rotate();
+            if (dropped > 0) {
+                logger.debug("Rotated {} buckets out of the recently scanned URL filter.", dropped);
+            }
+            load(syncedUntil.minus(SYNC_OVERLAP));
+            syncedUntil = started;
+        } catch (RuntimeException e) {
+            logger.warn("Could not sync filter of recently scanned URLs: {}", e.getMessage());
+        }
+    }
+
+    private int load(LocalDateTime since) {
+        int loaded = 0;
+        long afterId = 0;
+        List<ScannedUrl> batch;
+        do {
+            batch = urlScanRepository.findScannedUrlsSince(since, afterId, BATCH_SIZE);
+            for (ScannedUrl scanned : batch) {
+                filter.put(scanned.getUrlHash(), scanned.getCreatedAt());
+                afterId = scanned.getId();
+            }
+            loaded += batch.size();
+        } while (batch.size() == BATCH_SIZE);
+        return loaded;
+    }
+}
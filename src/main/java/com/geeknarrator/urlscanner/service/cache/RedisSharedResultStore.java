@@ -0,0 +1,119 @@
+package com.geeknarrator.urlscanner.service.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Keeps entries in Redis (or anything speaking its protocol), so that a result cached by one node
+ * answers submissions on every other node.
+ * <p>
+ * Each entry is a JSON value under {@code urlscan:result:<url hash>} with the remaining TTL as its
+ * expiry. Evictions are published on {@code urlscan:result-evictions}; every node subscribes and
+ * drops its in-process copy, so a deleted scan does not live on in another node's local tier.
+ */
+@Component
+@ConditionalOnProperty(name = "urlscan.cache.shared.store", havingValue = "redis")
+public class RedisSharedResultStore implements SharedResultStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisSharedResultStore.class);
+
+    static final String KEY_PREFIX = "urlscan:result:";
+    static final String EVICTION_CHANNEL = "urlscan:result-evictions";
+
+    // Only overwrite an entry with a more recent scan: the score is the scan time in epoch seconds.
+    private static final RedisScript<Long> PUT_IF_NEWER = RedisScript.of("""
+            local current = redis.call('GET', KEYS[1] .. ':at')
+            if current and tonumber(current) > tonumber(ARGV[2]) then
+                return 0
+            end
+            redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[3])
+            redis.call('SET', KEYS[1] .. ':at', ARGV[2], 'PX', ARGV[3])
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final RedisMessageListenerContainer listenerContainer = new RedisMessageListenerContainer();
+    private final List<Consumer<String>> evictionListeners = new CopyOnWriteArrayList<>();
+
+    public RedisSharedResultStore(RedisConnectionFactory connectionFactory, StringRedisTemplate redisTemplate, ObjectMapper objectMapper) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String urlHash = new String(message.getBody(), StandardCharsets.UTF_8);
+            evictionListeners.forEach(listener -> listener.accept(urlHash));
+        }, new ChannelTopic(EVICTION_CHANNEL));
+    }
+
+    @PostConstruct
+    void subscribe() {
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @PreDestroy
+    void unsubscribe() throws Exception {
+        listenerContainer.destroy();
+    }
+
+    @Override
+    public Optional<CachedScanResult> get(String urlHash) {
+        String json = redisTemplate.opsForValue().get(KEY_PREFIX + urlHash);
+        if (json == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(json, CachedScanResult.class));
+        } catch (JsonProcessingException e) {
+            logger.warn("Discarding unreadable shared cache entry for URL hash {}: {}", urlHash, e.getMessage());
+            redisTemplate.delete(KEY_PREFIX + urlHash);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void put(String urlHash, CachedScanResult entry, Duration ttl) {
+        if (ttl.toMillis() <= 0) {
+            return;
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize cached result of scan " + entry.scanId(), e);
+        }
+        redisTemplate.execute(PUT_IF_NEWER, List.of(KEY_PREFIX + urlHash), json,
+                String.valueOf(entry.scannedAt().toEpochSecond(ZoneOffset.UTC)), String.valueOf(ttl.toMillis()));
+    }
+
+    @Override
+    public void evict(String urlHash) {
+        redisTemplate.delete(List.of(KEY_PREFIX + urlHash, KEY_PREFIX + urlHash + ":at"));
+        redisTemplate.convertAndSend(EVICTION_CHANNEL, urlHash);
+    }
+
+    @Override
+    public void onEviction(Consumer<String> listener) {
+        evictionListeners.add(listener);
+    }
+}
@@ -0,0 +1,143 @@
+package com.geeknarrator.urlscanner.service.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over a sliding time window, built from one filter per time bucket.
+ * <p>
+ * The window is split into {@code bucketCount} buckets of equal width, plus one more for the bucket
+ * that is partly outside the window, so that a key stays visible for at least the whole window after
+ * it was added. {@link #rotate()} opens a new bucket once the newest is a bucket width old and drops
+ * the oldest. A key is added to the bucket covering the time it was seen and is reported as
+ * possibly present if any bucket holds it.
+ * <p>
+ * Keys are hex SHA-256 digests, so their first 32 hex digits already are two independent 64-bit
+ * hashes. Lookups and additions are lock-free; only rotation swaps the bucket list.
+ */
+public class RollingBloomFilter {
+
+    private final Clock clock;
+    private final Duration bucketWidth;
+    private final int bucketCount;
+    private final long expectedInsertionsPerBucket;
+    private final double falsePositiveRate;
+    // Newest first.
+    private volatile List<Bucket> buckets;
+
+    public RollingBloomFilter(Duration window, int bucketCount, long expectedInsertionsPerBucket, double falsePositiveRate, Clock clock) {
+        this.clock = clock;
+        this.bucketCount = Math.max(1, bucketCount);
+        this.bucketWidth = window.dividedBy(this.bucketCount);
+        this.expectedInsertionsPerBucket = Math.max(1, expectedInsertionsPerBucket);
+        this.falsePositiveRate = falsePositiveRate;
+        LocalDateTime now = LocalDateTime.now(clock);
+        List<Bucket> initial = new ArrayList<>(this.bucketCount + 1);
+        for (int i = 0; i <= this.bucketCount; i++) {
+            initial.add(newBucket(now.minus(bucketWidth.multipliedBy(i))));
+        }
+        this.buckets = List.copyOf(initial);
+    }
+
+    public boolean mightContain(String key) {
+        long h1 = HexFormat.fromHexDigitsToLong(key, 0, 16);
+        long h2 = HexFormat.fromHexDigitsToLong(key, 16, 32);
+        for (Bucket bucket : buckets) {
+            if (bucket.filter().mightContain(h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds {@code key} to the bucket covering {@code seenAt}, or to the oldest bucket if
+     * {@code seenAt} is older than all of them.
+     */
+    public void put(String key, LocalDateTime seenAt) {
+        long h1 = HexFormat.fromHexDigitsToLong(key, 0, 16);
+        long h2 = HexFormat.fromHexDigitsToLong(key, 16, 32);
+        List<Bucket> current = buckets;
+        Bucket target = current.get(current.size() - 1);
+        for (Bucket bucket : current) {
+            if (!seenAt.isBefore(bucket.start())) {
+                target = bucket;
+                break;
+            }
+        }
+        target.filter().put(h1, h2);
+    }
+
+    /**
+     * Opens as many new buckets as have become due and drops the ones that left the window.
+     *
+     * @return the number of buckets dropped.
+     */
+    public synchronized int rotate() {
+        LocalDateTime now = LocalDateTime.now(clock);
+        List<Bucket> rotated = new ArrayList<>(buckets);
+        int dropped = 0;
+        while (!now.isBefore(rotated.get(0).start().plus(bucketWidth))) {
+            rotated.add(0, newBucket(rotated.get(0).start().plus(bucketWidth)));
+            rotated.remove(rotated.size() - 1);
+            dropped++;
+        }
+        if (dropped > 0) {
+            buckets = List.copyOf(rotated);
+        }
+        return dropped;
+    }
+
+    private Bucket newBucket(LocalDateTime start) {
+        return new Bucket(start, new BitFilter(expectedInsertionsPerBucket, falsePositiveRate));
+    }
+
+    private record Bucket(LocalDateTime start, BitFilter filter) {
+    }
+
+    /**
+     * A plain Bloom filter sized for {@code expectedInsertions} at {@code falsePositiveRate}, probed
+     * with double hashing.
+     */
+    private static final class BitFilter {
+
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashCount;
+
+        BitFilter(long expectedInsertions, double falsePositiveRate) {
+            double ln2 = Math.log(2);
+            long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bits + 63) / 64));
+            this.words = new AtomicLongArray(wordCount);
+            this.bitCount = wordCount * 64L;
+            this.hashCount = (int) Math.max(1, Math.round((double) bits / expectedInsertions * ln2));
+        }
+
+        void put(long h1, long h2) {
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                long mask = 1L << (bit & 63);
+                int word = (int) (bit >>> 6);
+                if ((words.get(word) & mask) == 0) {
+                    words.getAndAccumulate(word, mask, (current, set) -> current | set);
+                }
+            }
+        }
+
+        boolean mightContain(long h1, long h2) {
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << (bit & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
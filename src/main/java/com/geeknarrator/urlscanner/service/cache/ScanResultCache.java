@@ -0,0 +1,160 @@
+package com.geeknarrator.urlscanner.service.cache;
+
+import com.geeknarrator.urlscanner.entity.ScanSummary;
+import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Cache of recent scan results, keyed by normalized URL hash, in front of the global cache lookup in
+ * {@code createScan()}.
+ * <p>
+ * Lookups go to an in-process tier first and then to the {@link SharedResultStore}, whose hits are
+ * copied into the local tier. Each entry expires when the scan it came from falls out of
+ * {@code urlscan.cache.ttl.hours}, the same window the database lookup uses, so a hit here is never
+ * staler than a hit there would be. Entries hold the stored document's hash and the result summary,
+ * not the document; local entries are weighed by their approximate size and bounded by
+ * {@code urlscan.cache.local.max-size-mb}. Both tiers are filled when the worker moves a scan to DONE
+ * and by database lookups that found one. When one of a URL's scans is deleted its entry is evicted
+ * from the shared tier, and every node sharing it drops its local copy.
+ * <p>
+ * The shared tier is an optimisation only: when it fails, lookups fall through to the database.
+ * Local hits, misses, evictions and size are published under the {@code cache.*} metrics with
+ * {@code cache=scan-results}, shared-tier lookups under {@code scans.cache.shared}.
+ */
+@Component
+public class ScanResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScanResultCache.class);
+
+    private final SharedResultStore sharedStore;
+    private final MeterRegistry meterRegistry;
+    private final Duration ttl;
+    private final Cache<String, CachedScanResult> cache;
+
+    public ScanResultCache(MeterRegistry meterRegistry,
+                           SharedResultStore sharedStore,
+                           @Value("${urlscan.cache.ttl.hours:24}") int ttlHours,
+                           @Value("${urlscan.cache.local.enabled:true}") boolean enabled,
+                           @Value("${urlscan.cache.local.max-size-mb:64}") long maxSizeMb) {
+        this.sharedStore = sharedStore;
+        this.meterRegistry = meterRegistry;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(enabled ? maxSizeMb * 1024 * 1024 : 0)
+                .weigher(ScanResultCache::weigh)
+                .expireAfter(new UntilStale())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "scan-results");
+        sharedStore.onEviction(cache::invalidate);
+    }
+
+    public Optional<CachedScanResult> get(String urlHash) {
+        CachedScanResult local = cache.getIfPresent(urlHash);
+        if (local != null) {
+            return Optional.of(local);
+        }
+        Optional<CachedScanResult> shared;
+        try {
+            shared = sharedStore.get(urlHash).filter(entry -> remaining(entry.scannedAt()) > 0);
+        } catch (RuntimeException e) {
+            sharedStoreFailed("get", e);
+            return Optional.empty();
+        }
+        meterRegistry.counter("scans.cache.shared", "result", shared.isPresent() ? "hit" : "miss").increment();
+        shared.ifPresent(entry -> putLocal(urlHash, entry));
+        return shared;
+    }
+
+    /**
+     * Caches the result of a DONE scan in both tiers, unless they already hold a more recent one for
+     * its URL. Scans without a stored result document are not cached.
+     */
+    public void put(UrlScan scan) {
+        if (scan.getStatus() != UrlScan.ScanStatus.DONE || scan.getUrlHash() == null || scan.getCreatedAt() == null
+                || scan.getResultDocument() == null || remaining(scan.getCreatedAt()) <= 0) {
+            return;
+        }
+        CachedScanResult entry = CachedScanResult.from(scan);
+        putLocal(scan.getUrlHash(), entry);
+        try {
+            sharedStore.put(scan.getUrlHash(), entry, Duration.ofNanos(remaining(entry.scannedAt())));
+        } catch (RuntimeException e) {
+            sharedStoreFailed("put", e);
+        }
+    }
+
+    public void invalidate(String urlHash) {
+        if (urlHash == null) {
+            return;
+        }
+        cache.invalidate(urlHash);
+        try {
+            sharedStore.evict(urlHash);
+        } catch (RuntimeException e) {
+            // The shared entry still expires with its TTL; other nodes keep their copy until then.
+            sharedStoreFailed("evict", e);
+        }
+    }
+
+    /**
+     * Approximate heap size of an entry in bytes: a fixed part for the record, hash and ids, plus the
+     * summary's strings.
+     */
+    private static int weigh(String urlHash, CachedScanResult entry) {
+        ScanSummary summary = entry.summary();
+        if (summary == null) {
+            return 512;
+        }
+        int chars = length(summary.getTitle()) + length(summary.getDomain())
+                + (summary.getCategories() == null ? 0 : summary.getCategories().stream().mapToInt(ScanResultCache::length).sum());
+        return 768 + 2 * chars;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private void putLocal(String urlHash, CachedScanResult entry) {
+        cache.asMap().merge(urlHash, entry, (cached, fresh) -> fresh.scannedAt().isAfter(cached.scannedAt()) ? fresh : cached);
+    }
+
+    private void sharedStoreFailed(String operation, RuntimeException e) {
+        meterRegistry.counter("scans.cache.shared", "result", "error").increment();
+        logger.warn("Shared result cache {} failed: {}", operation, e.getMessage());
+    }
+
+    private long remaining(LocalDateTime scannedAt) {
+        return Math.max(0, Duration.between(LocalDateTime.now(), scannedAt.plus(ttl)).toNanos());
+    }
+
+    private class UntilStale implements Expiry<String, CachedScanResult> {
+
+        @Override
+        public long expireAfterCreate(String urlHash, CachedScanResult entry, long currentTime) {
+            return remaining(entry.scannedAt());
+        }
+
+        @Override
+        public long expireAfterUpdate(String urlHash, CachedScanResult entry, long currentTime, long currentDuration) {
+            return remaining(entry.scannedAt());
+        }
+
+        @Override
+        public long expireAfterRead(String urlHash, CachedScanResult entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
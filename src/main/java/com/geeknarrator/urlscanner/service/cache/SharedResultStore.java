@@ -0,0 +1,31 @@
+package com.geeknarrator.urlscanner.service.cache;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Second cache tier under the in-process {@link ScanResultCache}. Implementations decide whether
+ * entries are local to this node or shared with every node that uses the same store.
+ */
+public interface SharedResultStore {
+
+    Optional<CachedScanResult> get(String urlHash);
+
+    /**
+     * Stores {@code entry} for {@code ttl}, unless the store already holds a more recent scan of
+     * the URL.
+     */
+    void put(String urlHash, CachedScanResult entry, Duration ttl);
+
+    /**
+     * Removes the entry and tells every node sharing the store to drop its local copy.
+     */
+    void evict(String urlHash);
+
+    /**
+     * Registers {@code listener} to be called with the URL hash of every entry evicted through this
+     * store, by this node or another one.
+     */
+    void onEviction(Consumer<String> listener);
+}
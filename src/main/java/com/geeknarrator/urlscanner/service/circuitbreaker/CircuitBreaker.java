@@ -0,0 +1,178 @@
+package com.geeknarrator.urlscanner.service.circuitbreaker;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * A count-based circuit breaker.
+ * <p>
+ * While CLOSED, the outcome of the last {@code windowSize} calls is recorded. Once at least
+ * {@code minimumCalls} are recorded and either the failure rate or the slow-call rate reaches its
+ * threshold, the breaker OPENs and hands out no permits for {@code openDurationMs}. It then goes
+ * HALF_OPEN and hands out up to {@code halfOpenProbes} permits: if all probes succeed quickly the
+ * breaker closes with a fresh window, and the first failed or slow probe opens it again.
+ * <p>
+ * Permits are taken in bulk before work is claimed ({@link #acquirePermits}) and unused ones are
+ * handed back ({@link #release}), mirroring the rate limiter.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final CircuitBreakerProperties properties;
+    private final Clock clock;
+    private final StateListener listener;
+
+    private State state = State.CLOSED;
+    private long openedAtMillis;
+    private int probesAvailable;
+    private int probesSucceeded;
+
+    // Ring buffer of recent call outcomes.
+    private boolean[] failed;
+    private boolean[] slow;
+    private int recorded;
+    private int next;
+    private int failures;
+    private int slowCalls;
+
+    public CircuitBreaker(CircuitBreakerProperties properties, Clock clock, StateListener listener) {
+        this.properties = properties;
+        this.clock = clock;
+        this.listener = listener;
+        resetWindow();
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && openElapsed()) {
+            transitionTo(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    /**
+     * @return how many calls may be made now, between 0 and {@code requested}.
+     */
+    public synchronized int acquirePermits(int requested) {
+        return switch (getState()) {
+            case CLOSED -> requested;
+            case OPEN -> 0;
+            case HALF_OPEN -> {
+                int granted = Math.min(requested, probesAvailable);
+                probesAvailable -= granted;
+                yield granted;
+            }
+        };
+    }
+
+    /**
+     * Hands back permits from {@link #acquirePermits} that were not used.
+     */
+    public synchronized void release(int unused) {
+        if (state == State.HALF_OPEN && unused > 0) {
+            probesAvailable = Math.min(properties.getHalfOpenProbes() - probesSucceeded, probesAvailable + unused);
+        }
+    }
+
+    /**
+     * @return whether calls must not be made at all right now. Calls already permitted but not yet
+     *         made when the breaker trips should check this and skip the upstream.
+     */
+    public synchronized boolean isOpen() {
+        return getState() == State.OPEN;
+    }
+
+    /**
+     * @return how long until the breaker lets probe calls through, or zero if it is not open.
+     */
+    public synchronized Duration remainingOpenTime() {
+        if (getState() != State.OPEN) {
+            return Duration.ZERO;
+        }
+        long remaining = openedAtMillis + properties.getOpenDurationMs() - clock.millis();
+        return Duration.ofMillis(Math.max(1, remaining));
+    }
+
+    public synchronized void onSuccess(Duration duration) {
+        record(false, duration);
+    }
+
+    public synchronized void onFailure(Duration duration) {
+        record(true, duration);
+    }
+
+    private void record(boolean callFailed, Duration duration) {
+        boolean callSlow = duration.toMillis() >= properties.getSlowCallDurationMs();
+        switch (getState()) {
+            case CLOSED -> {
+                addToWindow(callFailed, callSlow);
+                if (recorded >= Math.max(1, properties.getMinimumCalls()) && (
+                        (double) failures / recorded >= properties.getFailureRateThreshold()
+                                || (double) slowCalls / recorded >= properties.getSlowCallRateThreshold())) {
+                    transitionTo(State.OPEN);
+                }
+            }
+            case HALF_OPEN -> {
+                if (callFailed || callSlow) {
+                    transitionTo(State.OPEN);
+                } else if (++probesSucceeded >= properties.getHalfOpenProbes()) {
+                    transitionTo(State.CLOSED);
+                }
+            }
+            case OPEN -> {
+                // A call that was already in flight when the breaker tripped; nothing to learn from it.
+            }
+        }
+    }
+
+    private void addToWindow(boolean callFailed, boolean callSlow) {
+        if (recorded == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = callFailed;
+        slow[next] = callSlow;
+        failures += callFailed ? 1 : 0;
+        slowCalls += callSlow ? 1 : 0;
+        next = (next + 1) % failed.length;
+    }
+
+    private void transitionTo(State newState) {
+        State previous = state;
+        state = newState;
+        switch (newState) {
+            case OPEN -> openedAtMillis = clock.millis();
+            case HALF_OPEN -> {
+                probesAvailable = Math.max(1, properties.getHalfOpenProbes());
+                probesSucceeded = 0;
+            }
+            case CLOSED -> resetWindow();
+        }
+        listener.onStateChange(previous, newState);
+    }
+
+    private boolean openElapsed() {
+        return clock.millis() - openedAtMillis >= properties.getOpenDurationMs();
+    }
+
+    private void resetWindow() {
+        int size = Math.max(1, properties.getWindowSize());
+        failed = new boolean[size];
+        slow = new boolean[size];
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    @FunctionalInterface
+    public interface StateListener {
+        void onStateChange(State from, State to);
+    }
+}
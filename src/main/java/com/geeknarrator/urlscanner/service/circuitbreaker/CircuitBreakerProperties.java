@@ -0,0 +1,101 @@
+package com.geeknarrator.urlscanner.service.circuitbreaker;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Thresholds for the circuit breakers around urlscan.io. Bound from {@code urlscan.circuit-breaker.*};
+ * the submit and result endpoints each get their own breaker with these settings.
+ */
+@Component
+@ConfigurationProperties(prefix = "urlscan.circuit-breaker")
+public class CircuitBreakerProperties {
+
+    /** Whether calls are guarded at all. */
+    private boolean enabled = true;
+
+    /** Number of most recent calls the failure and slow-call rates are computed over. */
+    private int windowSize = 20;
+
+    /** Calls needed in the window before the breaker may trip. */
+    private int minimumCalls = 10;
+
+    /** Share of failed calls in the window that opens the breaker. */
+    private double failureRateThreshold = 0.5;
+
+    /** A call taking at least this long counts as slow. */
+    private long slowCallDurationMs = 5000;
+
+    /** Share of slow calls in the window that opens the breaker. */
+    private double slowCallRateThreshold = 0.5;
+
+    /** How long the breaker stays open before letting probe calls through. */
+    private long openDurationMs = 30000;
+
+    /** Probe calls allowed while half-open; all of them must succeed to close the breaker. */
+    private int halfOpenProbes = 3;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public long getSlowCallDurationMs() {
+        return slowCallDurationMs;
+    }
+
+    public void setSlowCallDurationMs(long slowCallDurationMs) {
+        this.slowCallDurationMs = slowCallDurationMs;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public long getOpenDurationMs() {
+        return openDurationMs;
+    }
+
+    public void setOpenDurationMs(long openDurationMs) {
+        this.openDurationMs = openDurationMs;
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    public void setHalfOpenProbes(int halfOpenProbes) {
+        this.halfOpenProbes = halfOpenProbes;
+    }
+}
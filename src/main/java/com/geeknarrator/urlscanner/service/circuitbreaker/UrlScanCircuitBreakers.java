@@ -0,0 +1,82 @@
+package com.geeknarrator.urlscanner.service.circuitbreaker;
+
+import com.geeknarrator.urlscanner.service.UrlScanEndpoint;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * One {@link CircuitBreaker} per urlscan.io endpoint, so a broken result API does not stop
+ * submissions and vice versa.
+ * <p>
+ * Each breaker's state is published as the gauge {@code urlscan.circuit.state} (0 closed,
+ * 1 half-open, 2 open) and every state change is counted in {@code urlscan.circuit.transitions}.
+ */
+@Component
+public class UrlScanCircuitBreakers {
+
+    private static final Logger logger = LoggerFactory.getLogger(UrlScanCircuitBreakers.class);
+
+    private final CircuitBreakerProperties properties;
+    private final Map<UrlScanEndpoint, CircuitBreaker> breakers = new EnumMap<>(UrlScanEndpoint.class);
+
+    public UrlScanCircuitBreakers(CircuitBreakerProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        for (UrlScanEndpoint endpoint : UrlScanEndpoint.values()) {
+            CircuitBreaker breaker = new CircuitBreaker(properties, Clock.systemUTC(), (from, to) -> {
+                meterRegistry.counter("urlscan.circuit.transitions", "endpoint", endpoint.name(), "to", to.name()).increment();
+                if (to == CircuitBreaker.State.OPEN) {
+                    logger.warn("Circuit breaker for urlscan.io {} calls opened (was {}). Pausing calls for {}ms.",
+                            endpoint, from, properties.getOpenDurationMs());
+                } else {
+                    logger.info("Circuit breaker for urlscan.io {} calls is now {} (was {}).", endpoint, to, from);
+                }
+            });
+            breakers.put(endpoint, breaker);
+            Gauge.builder("urlscan.circuit.state", breaker, b -> b.getState().ordinal())
+                    .description("Circuit breaker state: 0 closed, 1 half-open, 2 open")
+                    .tag("endpoint", endpoint.name())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * @return how many calls to {@code endpoint} may be made now, between 0 and {@code requested}.
+     */
+    public int acquirePermits(UrlScanEndpoint endpoint, int requested) {
+        return properties.isEnabled() ? breakers.get(endpoint).acquirePermits(requested) : requested;
+    }
+
+    public void release(UrlScanEndpoint endpoint, int unused) {
+        if (properties.isEnabled()) {
+            breakers.get(endpoint).release(unused);
+        }
+    }
+
+    public boolean isOpen(UrlScanEndpoint endpoint) {
+        return properties.isEnabled() && breakers.get(endpoint).isOpen();
+    }
+
+    public Duration remainingOpenTime(UrlScanEndpoint endpoint) {
+        return properties.isEnabled() ? breakers.get(endpoint).remainingOpenTime() : Duration.ZERO;
+    }
+
+    public void onSuccess(UrlScanEndpoint endpoint, Duration duration) {
+        if (properties.isEnabled()) {
+            breakers.get(endpoint).onSuccess(duration);
+        }
+    }
+
+    public void onFailure(UrlScanEndpoint endpoint, Duration duration) {
+        if (properties.isEnabled()) {
+            breakers.get(endpoint).onFailure(duration);
+        }
+    }
+}
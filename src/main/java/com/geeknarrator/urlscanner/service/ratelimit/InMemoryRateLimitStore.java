@@ -0,0 +1,56 @@
+package com.geeknarrator.urlscanner.service.ratelimit;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps buckets in this JVM. Only suitable when a single node talks to urlscan.io.
+ */
+@Component
+@ConditionalOnProperty(name = "urlscan.rate-limit.store", havingValue = "memory")
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+    private final Map<String, Bucket> buckets = new HashMap<>();
+
+    @Override
+    public synchronized long tryAcquire(String bucket, long requested, double capacity, double refillPerSecond) {
+        long now = System.nanoTime();
+        Bucket state = buckets.computeIfAbsent(bucket, name -> new Bucket(capacity, now));
+        double elapsedSeconds = Math.max(0, now - state.updatedAtNanos) / 1_000_000_000.0;
+        double available = Math.min(capacity, state.tokens + refillPerSecond * elapsedSeconds);
+        long granted = Math.min((long) Math.floor(available), requested);
+        state.tokens = available - granted;
+        state.updatedAtNanos = now;
+        return granted;
+    }
+
+    @Override
+    public synchronized void release(String bucket, long permits, double capacity) {
+        Bucket state = buckets.get(bucket);
+        if (state != null) {
+            state.tokens = Math.min(capacity, state.tokens + permits);
+        }
+    }
+
+    @Override
+    public synchronized void drain(String bucket) {
+        Bucket state = buckets.get(bucket);
+        if (state != null) {
+            state.tokens = 0;
+            state.updatedAtNanos = System.nanoTime();
+        }
+    }
+
+    private static class Bucket {
+        private double tokens;
+        private long updatedAtNanos;
+
+        private Bucket(double tokens, long updatedAtNanos) {
+            this.tokens = tokens;
+            this.updatedAtNanos = updatedAtNanos;
+        }
+    }
+}
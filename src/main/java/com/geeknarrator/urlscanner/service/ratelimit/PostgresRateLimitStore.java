@@ -0,0 +1,44 @@
+package com.geeknarrator.urlscanner.service.ratelimit;
+
+import com.geeknarrator.urlscanner.repository.RateLimitBucketRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Keeps buckets in the {@code rate_limit_buckets} table, so that every node sharing the database
+ * draws from the same budget. Each call is one short transaction that locks a single row.
+ */
+@Component
+@ConditionalOnProperty(name = "urlscan.rate-limit.store", havingValue = "postgres", matchIfMissing = true)
+public class PostgresRateLimitStore implements RateLimitStore {
+
+    private final RateLimitBucketRepository rateLimitBucketRepository;
+
+    public PostgresRateLimitStore(RateLimitBucketRepository rateLimitBucketRepository) {
+        this.rateLimitBucketRepository = rateLimitBucketRepository;
+    }
+
+    @Override
+    @Transactional
+    public long tryAcquire(String bucket, long requested, double capacity, double refillPerSecond) {
+        Long granted = rateLimitBucketRepository.acquire(bucket, requested, capacity, refillPerSecond);
+        if (granted == null) {
+            rateLimitBucketRepository.createIfMissing(bucket, capacity);
+            granted = rateLimitBucketRepository.acquire(bucket, requested, capacity, refillPerSecond);
+        }
+        return granted == null ? 0 : granted;
+    }
+
+    @Override
+    @Transactional
+    public void release(String bucket, long permits, double capacity) {
+        rateLimitBucketRepository.release(bucket, permits, capacity);
+    }
+
+    @Override
+    @Transactional
+    public void drain(String bucket) {
+        rateLimitBucketRepository.drain(bucket);
+    }
+}
@@ -0,0 +1,88 @@
+package com.geeknarrator.urlscanner.service.ratelimit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Budgets for calls to urlscan.io. Bound from {@code urlscan.rate-limit.*}.
+ */
+@Component
+@ConfigurationProperties(prefix = "urlscan.rate-limit")
+public class RateLimitProperties {
+
+    /** Whether calls are throttled at all. */
+    private boolean enabled = true;
+
+    /** Where bucket state lives: {@code postgres} (shared by all nodes) or {@code memory} (this node only). */
+    private String store = "postgres";
+
+    /** Budget for scan submissions. */
+    private Bucket submit = new Bucket(10, 1.0);
+
+    /** Budget for result lookups. */
+    private Bucket result = new Bucket(20, 2.0);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getStore() {
+        return store;
+    }
+
+    public void setStore(String store) {
+        this.store = store;
+    }
+
+    public Bucket getSubmit() {
+        return submit;
+    }
+
+    public void setSubmit(Bucket submit) {
+        this.submit = submit;
+    }
+
+    public Bucket getResult() {
+        return result;
+    }
+
+    public void setResult(Bucket result) {
+        this.result = result;
+    }
+
+    public static class Bucket {
+
+        /** Largest burst of calls allowed after an idle period. */
+        private int capacity;
+
+        /** Sustained calls per second. */
+        private double refillPerSecond;
+
+        public Bucket() {}
+
+        public Bucket(int capacity, double refillPerSecond) {
+            this.capacity = capacity;
+            this.refillPerSecond = refillPerSecond;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public double getRefillPerSecond() {
+            return refillPerSecond;
+        }
+
+        public void setRefillPerSecond(double refillPerSecond) {
+            this.refillPerSecond = refillPerSecond;
+        }
+    }
+}
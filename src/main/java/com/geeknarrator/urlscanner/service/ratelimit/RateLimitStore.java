@@ -0,0 +1,26 @@
+package com.geeknarrator.urlscanner.service.ratelimit;
+
+/**
+ * Holds token-bucket state. Implementations decide whether the budget is local to this node or
+ * shared with every node that uses the same store.
+ */
+public interface RateLimitStore {
+
+    /**
+     * Refills the bucket for the time elapsed since it was last used and takes up to
+     * {@code requested} tokens. Never blocks waiting for tokens.
+     *
+     * @return the number of tokens taken, between 0 and {@code requested}.
+     */
+    long tryAcquire(String bucket, long requested, double capacity, double refillPerSecond);
+
+    /**
+     * Returns tokens that were acquired but not used.
+     */
+    void release(String bucket, long permits, double capacity);
+
+    /**
+     * Empties the bucket, e.g. after the upstream signalled that we are over its limit anyway.
+     */
+    void drain(String bucket);
+}
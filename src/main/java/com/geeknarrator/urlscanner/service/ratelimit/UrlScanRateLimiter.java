@@ -0,0 +1,104 @@
+package com.geeknarrator.urlscanner.service.ratelimit;
+
+import com.geeknarrator.urlscanner.service.UrlScanEndpoint;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Token-bucket budgets for the urlscan.io submit and result endpoints.
+ * <p>
+ * Callers take permits before doing work and hand back whatever they did not use. Acquisition
+ * never blocks: a caller that gets fewer permits than it asked for does less work now and tries
+ * again once {@link #refillTime} has passed. With the Postgres store the budget is shared by all
+ * nodes, so adding replicas splits the upstream quota instead of multiplying it.
+ */
+@Component
+public class UrlScanRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UrlScanRateLimiter.class);
+
+    private final RateLimitStore rateLimitStore;
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public UrlScanRateLimiter(RateLimitStore rateLimitStore, RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.rateLimitStore = rateLimitStore;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return how many calls to {@code endpoint} may be made now, between 0 and {@code requested}.
+     */
+    public int tryAcquire(UrlScanEndpoint endpoint, int requested) {
+        if (!properties.isEnabled() || requested <= 0) {
+            return Math.max(requested, 0);
+        }
+        RateLimitProperties.Bucket budget = budget(endpoint);
+        int granted = (int) rateLimitStore.tryAcquire(bucket(endpoint), requested, budget.getCapacity(), budget.getRefillPerSecond());
+        meterRegistry.counter("urlscan.ratelimit.granted", "endpoint", endpoint.name()).increment(granted);
+        if (granted < requested) {
+            meterRegistry.counter("urlscan.ratelimit.throttled", "endpoint", endpoint.name()).increment();
+            logger.debug("Rate limit for {}: granted {} of {} requested permits.", endpoint, granted, requested);
+        }
+        return granted;
+    }
+
+    /**
+     * Hands back permits from {@link #tryAcquire} that were not used.
+     */
+    public void release(UrlScanEndpoint endpoint, int unused) {
+        if (!properties.isEnabled() || unused <= 0) {
+            return;
+        }
+        rateLimitStore.release(bucket(endpoint), unused, budget(endpoint).getCapacity());
+    }
+
+    /**
+     * @return how many permits make up {@code share} of the bucket for {@code endpoint}, rounded down;
+     *         0 when rate limiting is disabled, since there is then no budget to hold back.
+     */
+    public int reservation(UrlScanEndpoint endpoint, double share) {
+        if (!properties.isEnabled() || share <= 0) {
+            return 0;
+        }
+        return (int) Math.floor(Math.min(share, 1.0) * budget(endpoint).getCapacity());
+    }
+
+    /**
+     * Called when urlscan.io answered 429 despite the budget: empties the bucket so that every node
+     * pauses until it refills.
+     */
+    public void onRateLimited(UrlScanEndpoint endpoint) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        meterRegistry.counter("urlscan.ratelimit.upstream_rejections", "endpoint", endpoint.name()).increment();
+        rateLimitStore.drain(bucket(endpoint));
+    }
+
+    /**
+     * @return roughly how long until {@code permits} tokens (capped at the bucket size) are available
+     *         again, starting from an empty bucket.
+     */
+    public Duration refillTime(UrlScanEndpoint endpoint, int permits) {
+        RateLimitProperties.Bucket budget = budget(endpoint);
+        if (!properties.isEnabled() || budget.getRefillPerSecond() <= 0) {
+            return Duration.ZERO;
+        }
+        int tokens = Math.max(1, Math.min(permits, budget.getCapacity()));
+        return Duration.ofMillis((long) Math.ceil(tokens * 1000 / budget.getRefillPerSecond()));
+    }
+
+    private RateLimitProperties.Bucket budget(UrlScanEndpoint endpoint) {
+        return endpoint == UrlScanEndpoint.SUBMIT ? properties.getSubmit() : properties.getResult();
+    }
+
+    private static String bucket(UrlScanEndpoint endpoint) {
+        return "urlscan." + endpoint.name().toLowerCase();
+    }
+}
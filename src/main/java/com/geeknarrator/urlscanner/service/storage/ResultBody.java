@@ -0,0 +1,64 @@
+package com.geeknarrator.urlscanner.service.storage;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * A result document as it goes out in an API response: embedded as JSON rather than as an escaped
+ * string, so clients parse it once.
+ * <p>
+ * A stored document is decompressed and copied token by token into the response as it is written,
+ * without being decoded to a {@code String} first.
+ */
+@JsonSerialize(using = ResultBody.Serializer.class)
+public final class ResultBody {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final byte[] data;
+    private final String text;
+
+    private ResultBody(byte[] data, String text) {
+        this.data = data;
+        this.text = text;
+    }
+
+    /**
+     * @param data a document encoded by {@link ResultCodec}.
+     */
+    public static ResultBody stored(byte[] data) {
+        return new ResultBody(data, null);
+    }
+
+    public static ResultBody text(String text) {
+        return new ResultBody(null, text);
+    }
+
+    private JsonParser parse() throws IOException {
+        return data != null ? JSON.createParser(ResultCodec.open(data)) : JSON.createParser(text);
+    }
+
+    static class Serializer extends StdSerializer<ResultBody> {
+
+        Serializer() {
+            super(ResultBody.class);
+        }
+
+        @Override
+        public void serialize(ResultBody body, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            try (JsonParser parser = body.parse()) {
+                if (parser.nextToken() == null) {
+                    generator.writeNull();
+                    return;
+                }
+                generator.copyCurrentStructure(parser);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.geeknarrator.urlscanner.service.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Binary encoding of stored result documents. The first byte says how the rest is encoded, so that
+ * documents written in different formats can be read side by side:
+ * <ul>
+ *     <li>{@code 0}: UTF-8 text as is,</li>
+ *     <li>{@code 1}: UTF-8 text compressed with deflate (zlib).</li>
+ * </ul>
+ * urlscan.io documents are large and repetitive and usually shrink several times over; a document
+ * that deflate would not make smaller is stored as is.
+ */
+public final class ResultCodec {
+
+    static final byte PLAIN = 0;
+    static final byte DEFLATE = 1;
+
+    private ResultCodec() {
+    }
+
+    public static byte[] encode(String content) {
+        byte[] text = content.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(text);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(text.length / 4 + 16);
+            out.write(DEFLATE);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() > text.length) {
+                    return plain(text);
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String decode(byte[] data) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Stored result has no format marker");
+        }
+        return switch (data[0]) {
+            case PLAIN -> new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+            case DEFLATE -> inflate(data);
+            default -> throw new IllegalArgumentException("Unknown stored result format: " + data[0]);
+        };
+    }
+
+    /**
+     * Streams the UTF-8 text of {@code data}, decompressing it as it is read rather than all at once.
+     */
+    public static InputStream open(byte[] data) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Stored result has no format marker");
+        }
+        InputStream encoded = new ByteArrayInputStream(data, 1, data.length - 1);
+        return switch (data[0]) {
+            case PLAIN -> encoded;
+            case DEFLATE -> new InflaterInputStream(encoded);
+            default -> throw new IllegalArgumentException("Unknown stored result format: " + data[0]);
+        };
+    }
+
+    private static byte[] plain(byte[] text) {
+        byte[] data = new byte[text.length + 1];
+        data[0] = PLAIN;
+        System.arraycopy(text, 0, data, 1, text.length);
+        return data;
+    }
+
+    private static String inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 1, data.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Stored result is truncated");
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Stored result is corrupt: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.geeknarrator.urlscanner.service.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Passes a result document through while encoding it for storage, so that it can be parsed and
+ * stored in one pass without ever being held as text.
+ * <p>
+ * Every byte read is hashed and compressed in the {@link ResultCodec} deflate format. Once the
+ * reader is done, {@link #finish()} consumes whatever it left unread and returns the encoded
+ * document and its content hash. Unlike {@link ResultCodec#encode(String)}, documents are always
+ * compressed, since the plain bytes are not kept to fall back on.
+ */
+public class ResultEncodingStream extends FilterInputStream {
+
+    private final MessageDigest digest;
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream(8192);
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final DeflaterOutputStream compressor = new DeflaterOutputStream(encoded, deflater, 8192);
+    private long length;
+
+    public ResultEncodingStream(InputStream body) {
+        super(body);
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        encoded.write(ResultCodec.DEFLATE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            digest.update((byte) b);
+            compressor.write(b);
+            length++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        int read = super.read(buffer, offset, count);
+        if (read > 0) {
+            digest.update(buffer, offset, read);
+            compressor.write(buffer, offset, read);
+            length += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes must still be hashed and stored.
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Reads the rest of the document and finishes encoding it.
+     */
+    public Encoded finish() throws IOException {
+        byte[] buffer = new byte[8192];
+        while (read(buffer, 0, buffer.length) >= 0) {
+            // Consumed for the digest and the encoder.
+        }
+        compressor.finish();
+        return new Encoded(HexFormat.of().formatHex(digest.digest()), encoded.toByteArray(), length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param contentHash the SHA-256 of the document's bytes.
+     * @param data        the document in the {@link ResultCodec} format.
+     * @param length      the size of the document before encoding, in bytes.
+     */
+    public record Encoded(String contentHash, byte[] data, long length) {
+    }
+}
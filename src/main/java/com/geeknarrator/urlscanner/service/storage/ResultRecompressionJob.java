@@ -0,0 +1,126 @@
+package com.geeknarrator.urlscanner.service.storage;
+
+import com.geeknarrator.urlscanner.repository.InlineResult;
+import com.geeknarrator.urlscanner.repository.PlainTextResult;
+import com.geeknarrator.urlscanner.repository.ScanResultRepository;
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One-off migration of results written before compressed storage: documents in
+ * {@code scan_results} still stored as plain text are recompressed in place, and results still
+ * stored inline in {@code url_scans.result} are moved into {@code scan_results} (deduplicated and
+ * compressed) and referenced from there.
+ * <p>
+ * Enabled with {@code urlscan.storage.recompress.enabled}, it runs once in the background after
+ * startup, {@code urlscan.storage.recompress.batch-size} rows per transaction with a pause of
+ * {@code urlscan.storage.recompress.pause-ms} in between so that it does not crowd out the
+ * application's own queries. Rows are locked with {@code SKIP LOCKED}, so several nodes can run it
+ * at once, and a run that is interrupted simply resumes where it stopped the next time. Both
+ * formats stay readable throughout.
+ */
+@Component
+@ConditionalOnProperty(name = "urlscan.storage.recompress.enabled", havingValue = "true")
+public class ResultRecompressionJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResultRecompressionJob.class);
+
+    private final ScanResultRepository scanResultRepository;
+    private final UrlScanRepository urlScanRepository;
+    private final ScanResultStorage scanResultStorage;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "result-recompression");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${urlscan.storage.recompress.batch-size:200}")
+    private int batchSize;
+
+    @Value("${urlscan.storage.recompress.pause-ms:100}")
+    private long pauseMs;
+
+    public ResultRecompressionJob(ScanResultRepository scanResultRepository, UrlScanRepository urlScanRepository,
+                                  ScanResultStorage scanResultStorage, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.scanResultRepository = scanResultRepository;
+        this.urlScanRepository = urlScanRepository;
+        this.scanResultStorage = scanResultStorage;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    void run() {
+        try {
+            long documents = drain(this::recompressDocuments);
+            long inline = drain(this::moveInlineResults);
+            logger.info("Result recompression finished: {} stored documents recompressed, {} inline results moved.", documents, inline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info("Result recompression interrupted; it resumes on the next start.");
+        } catch (RuntimeException e) {
+            logger.error("Result recompression failed; it resumes on the next start.", e);
+        }
+    }
+
+    private long drain(BatchStep step) throws InterruptedException {
+        long total = 0;
+        int migrated;
+        do {
+            Integer batch = transactionTemplate.execute(status -> step.migrate());
+            migrated = batch == null ? 0 : batch;
+            total += migrated;
+            if (migrated > 0 && pauseMs > 0) {
+                Thread.sleep(pauseMs);
+            }
+        } while (migrated == batchSize && !Thread.currentThread().isInterrupted());
+        return total;
+    }
+
+    private int recompressDocuments() {
+        List<PlainTextResult> batch = scanResultRepository.findAndLockPlainText(batchSize);
+        for (PlainTextResult document : batch) {
+            scanResultRepository.replaceContent(document.getContentHash(), ResultCodec.encode(document.getContent()));
+        }
+        meterRegistry.counter("scans.results.recompressed", "source", "scan_results").increment(batch.size());
+        return batch.size();
+    }
+
+    private int moveInlineResults() {
+        List<InlineResult> batch = urlScanRepository.findAndLockInlineResults(batchSize);
+        for (InlineResult inline : batch) {
+            urlScanRepository.moveInlineResult(inline.getId(), scanResultStorage.store(inline.getResult()).getContentHash());
+        }
+        meterRegistry.counter("scans.results.recompressed", "source", "url_scans").increment(batch.size());
+        return batch.size();
+    }
+
+    @FunctionalInterface
+    private interface BatchStep {
+        int migrate();
+    }
+}
@@ -0,0 +1,154 @@
+package com.geeknarrator.urlscanner.service.storage;
+
+import com.geeknarrator.urlscanner.entity.ScanResult;
+import com.geeknarrator.urlscanner.repository.ScanResultRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Content-addressed storage for result documents in {@code scan_results}.
+ * <p>
+ * A document is stored once under the SHA-256 of its content and scans refer to it by that hash,
+ * so scans of a popular URL, followers of a shared submission and cache-hit copies all share one
+ * row instead of each carrying its own copy. Documents no scan refers to any more are deleted every
+ * {@code urlscan.storage.gc-interval-ms}, once they are older than
+ * {@code urlscan.storage.gc-grace-minutes}. Storing or referencing a document locks it until the
+ * transaction ends, and collection skips locked documents, so a scan being written never points at
+ * a deleted one.
+ * <p>
+ * Documents are stored encoded by {@link ResultCodec}, so compression costs one deflate per distinct
+ * document and is skipped entirely when the document is already stored. Documents fetched from
+ * urlscan.io are encoded while they are read, see {@link ResultEncodingStream}.
+ */
+@Service
+public class ScanResultStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScanResultStorage.class);
+
+    private static final int GC_BATCH_SIZE = 1000;
+
+    private final ScanResultRepository scanResultRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Duration gcGrace;
+
+    public ScanResultStorage(ScanResultRepository scanResultRepository, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                             @Value("${urlscan.storage.gc-grace-minutes:60}") long gcGraceMinutes) {
+        this.scanResultRepository = scanResultRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.gcGrace = Duration.ofMinutes(gcGraceMinutes);
+    }
+
+    /**
+     * Stores {@code content}, encoded with {@link ResultCodec}, unless an identical document is
+     * already stored.
+     *
+     * @return a reference to the stored document, for a scan to point at.
+     */
+    @Transactional
+    public ScanResult store(String content) {
+        String contentHash = hash(content);
+        if (scanResultRepository.lockIfStored(contentHash).isPresent()) {
+            meterRegistry.counter("scans.results.stored", "outcome", "shared").increment();
+            return scanResultRepository.getReferenceById(contentHash);
+        }
+        byte[] data = ResultCodec.encode(content);
+        boolean inserted = insertOrLock(contentHash, data);
+        meterRegistry.counter("scans.results.stored", "outcome", inserted ? "new" : "shared").increment();
+        if (inserted) {
+            meterRegistry.counter("scans.results.bytes", "form", "text").increment(content.length());
+            meterRegistry.counter("scans.results.bytes", "form", "stored").increment(data.length);
+        }
+        return scanResultRepository.getReferenceById(contentHash);
+    }
+
+    /**
+     * Stores a document that arrived already encoded, such as one streamed from urlscan.io, unless an
+     * identical document is already stored.
+     *
+     * @param document an unsaved document, see {@link ScanResult#ScanResult(String, byte[])}.
+     * @return a reference to the stored document, for a scan to point at.
+     */
+    @Transactional
+    public ScanResult store(ScanResult document) {
+        boolean inserted = insertOrLock(document.getContentHash(), document.getData());
+        meterRegistry.counter("scans.results.stored", "outcome", inserted ? "new" : "shared").increment();
+        return scanResultRepository.getReferenceById(document.getContentHash());
+    }
+
+    /**
+     * @return a reference to the already stored document with {@code contentHash}, without loading it.
+     */
+    public ScanResult reference(String contentHash) {
+        return scanResultRepository.getReferenceById(contentHash);
+    }
+
+    /**
+     * Like {@link #reference(String)}, for a document a scan was not already pointing at, such as one
+     * found in the result cache: the document is locked so garbage collection cannot delete it before
+     * the current transaction has written the scan that points at it.
+     *
+     * @return a reference to the stored document, or empty if it has been collected.
+     */
+    public Optional<ScanResult> lockReference(String contentHash) {
+        return scanResultRepository.lockIfStored(contentHash).map(scanResultRepository::getReferenceById);
+    }
+
+    @Scheduled(fixedDelayString = "${urlscan.storage.gc-interval-ms:3600000}", initialDelayString = "${urlscan.storage.gc-interval-ms:3600000}")
+    public void collectGarbage() {
+        LocalDateTime createdBefore = LocalDateTime.now().minus(gcGrace);
+        int total = 0;
+        int deleted;
+        do {
+            Integer batch = transactionTemplate.execute(status -> scanResultRepository.deleteUnreferenced(createdBefore, GC_BATCH_SIZE));
+            deleted = batch == null ? 0 : batch;
+            total += deleted;
+        } while (deleted == GC_BATCH_SIZE);
+        if (total > 0) {
+            meterRegistry.counter("scans.results.collected").increment(total);
+            logger.info("Deleted {} result documents no scan refers to.", total);
+        }
+    }
+
+    /**
+     * Inserts a document, or locks the identical one already stored like {@link #lockReference} does,
+     * so that garbage collection cannot delete it before the scan pointing at it is written. Only if
+     * that copy is collected between the two statements is the insert tried again.
+     *
+     * @return whether the document was inserted.
+     */
+    private boolean insertOrLock(String contentHash, byte[] data) {
+        while (true) {
+            if (scanResultRepository.insertIfAbsent(contentHash, data, LocalDateTime.now()) > 0) {
+                return true;
+            }
+            if (scanResultRepository.lockIfStored(contentHash).isPresent()) {
+                return false;
+            }
+        }
+    }
+
+    static String hash(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.geeknarrator.urlscanner.worker;
+
+import java.util.List;
+
+/**
+ * A slice of the scan queue: scans whose {@code user_id % count} is one of {@code indexes}. Worker
+ * runs over different partitions never compete for the same rows, and because partitions are by
+ * user, each user's scans are still scheduled by a single {@link DeficitRoundRobinScheduler}.
+ */
+public record ClaimPartition(int count, List<Integer> indexes) {
+
+    public ClaimPartition {
+        indexes = List.copyOf(indexes);
+    }
+
+    /** The whole queue. */
+    public static ClaimPartition all() {
+        return new ClaimPartition(1, List.of(0));
+    }
+
+    /** Lane {@code index} of {@code count} lanes that together cover the whole queue. */
+    public static ClaimPartition lane(int index, int count) {
+        return new ClaimPartition(count, List.of(index));
+    }
+
+    @Override
+    public String toString() {
+        return count == 1 ? "all partitions" : "partitions " + indexes + " of " + count;
+    }
+}
@@ -0,0 +1,122 @@
+package com.geeknarrator.urlscanner.worker;
+
+import com.geeknarrator.urlscanner.entity.User;
+import com.geeknarrator.urlscanner.repository.ClaimCandidate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks which candidate scans to claim in a worker run using weighted deficit round-robin.
+ * <p>
+ * Every round, each backlogged user is credited {@code quantum * weight * ageBoost} and may claim
+ * one scan per whole credit. Unused credit (the deficit) carries over to the next round and the
+ * next run, so a user with weight 0.5 is served every other round instead of never. The age boost
+ * grows with how long the user's oldest candidate has been waiting, up to {@code maxAgeBoost}, so a
+ * scan stuck behind others catches up without an old backlog taking over the whole batch. Rounds
+ * repeat until the batch is full, so heavy users still fill any spare capacity. A user's deficit is
+ * dropped once they have nothing left to claim.
+ * <p>
+ * Each run starts with the user after the one the previous run stopped at, so a user who filled the
+ * batch from the front of the candidates does not get the first turn again while others wait.
+ * <p>
+ * One instance is kept per job type and claim partition; it is safe for concurrent worker runs.
+ */
+public class DeficitRoundRobinScheduler {
+
+    private final SchedulerProperties properties;
+    private final Map<Long, Double> deficits = new HashMap<>();
+    private Long lastVisited;
+
+    public DeficitRoundRobinScheduler(SchedulerProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @param candidates claimable scans, each user's in the order they should be served.
+     * @param capacity   the maximum number of scans to select.
+     * @return the IDs of the selected scans.
+     */
+    public synchronized List<Long> select(List<ClaimCandidate> candidates, int capacity, LocalDateTime now) {
+        Map<Long, Deque<ClaimCandidate>> queues = new LinkedHashMap<>();
+        for (ClaimCandidate candidate : candidates) {
+            queues.computeIfAbsent(candidate.getUserId(), userId -> new ArrayDeque<>()).add(candidate);
+        }
+        // Users without candidates this run are treated as idle: forget their deficit.
+        deficits.keySet().retainAll(queues.keySet());
+
+        List<Long> selected = new ArrayList<>(Math.min(capacity, candidates.size()));
+        Deque<Long> ring = ringAfter(lastVisited, queues.keySet());
+        boolean credited = true;
+        while (selected.size() < capacity && !ring.isEmpty() && credited) {
+            credited = false;
+            for (int visits = ring.size(); visits > 0 && selected.size() < capacity; visits--) {
+                Long userId = ring.pollFirst();
+                Deque<ClaimCandidate> queue = queues.get(userId);
+
+                double credit = credit(queue.peekFirst(), now);
+                // Users with weight 0 never accumulate credit; stop once nobody else is left to serve.
+                credited |= credit > 0;
+                double deficit = deficits.getOrDefault(userId, 0.0) + credit;
+                while (deficit >= 1.0 && !queue.isEmpty() && selected.size() < capacity) {
+                    selected.add(queue.pollFirst().getId());
+                    deficit -= 1.0;
+                }
+                lastVisited = userId;
+                if (queue.isEmpty()) {
+                    deficits.remove(userId);
+                } else {
+                    deficits.put(userId, Math.min(deficit, capacity));
+                    ring.addLast(userId);
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return {@code users} in order, starting with the one after {@code previous}, or with the first
+     *         if {@code previous} has no candidates this run.
+     */
+    private static Deque<Long> ringAfter(Long previous, Collection<Long> users) {
+        Deque<Long> ring = new ArrayDeque<>(users);
+        if (previous != null && users.contains(previous)) {
+            Long userId;
+            do {
+                userId = ring.pollFirst();
+                ring.addLast(userId);
+            } while (!userId.equals(previous));
+        }
+        return ring;
+    }
+
+    private double credit(ClaimCandidate head, LocalDateTime now) {
+        double weight = properties.weightFor(head.getUserId(), parseTier(head.getTier()));
+        double ageBoost = 1.0;
+        if (properties.getAgingIntervalMs() > 0 && head.getCreatedAt() != null) {
+            long waitedMs = Math.max(0, Duration.between(head.getCreatedAt(), now).toMillis());
+            ageBoost = Math.min(ageBoost + (double) waitedMs / properties.getAgingIntervalMs(),
+                    Math.max(1.0, properties.getMaxAgeBoost()));
+        }
+        return properties.getQuantum() * weight * ageBoost;
+    }
+
+    private static User.Tier parseTier(String tier) {
+        if (tier == null) {
+            return User.Tier.FREE;
+        }
+        try {
+            return User.Tier.valueOf(tier);
+        } catch (IllegalArgumentException e) {
+            return User.Tier.FREE;
+        }
+    }
+}
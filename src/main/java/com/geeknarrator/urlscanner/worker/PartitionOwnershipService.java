@@ -0,0 +1,147 @@
+package com.geeknarrator.urlscanner.worker;
+
+import com.geeknarrator.urlscanner.repository.WorkerNodeRepository;
+import com.geeknarrator.urlscanner.repository.WorkerPartitionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+/**
+ * Splits the scan queue between worker nodes, so that each node only claims from its own share of
+ * it instead of every node competing for the same rows.
+ * <p>
+ * The queue is cut into a fixed number of partitions by {@code user_id % count}, recorded in the
+ * {@code worker_partitions} table. Each node registers itself in {@code worker_nodes} and, on every
+ * heartbeat, renews the leases on the partitions it owns and moves towards its fair share of
+ * {@code ceil(count / liveNodes)}: a node with too many gives the surplus back, a node with too few
+ * takes unowned or expired ones. When a node joins, the others shed partitions on their next
+ * heartbeat and it picks them up on its own; when a node leaves (or dies and its leases run out),
+ * the others take over its partitions. Ownership only narrows what a node looks at: scans are still
+ * locked and leased one by one when claimed, so a short overlap during a handover is harmless.
+ * <p>
+ * With {@code worker.partitions.enabled=false} the node owns every partition and nothing is stored.
+ */
+@Service
+public class PartitionOwnershipService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionOwnershipService.class);
+
+    private final WorkerPartitionRepository workerPartitionRepository;
+    private final WorkerNodeRepository workerNodeRepository;
+    private final String nodeId;
+    private final boolean enabled;
+    private final int partitionCount;
+    private final long leaseDurationMs;
+    private volatile Set<Integer> owned;
+
+    public PartitionOwnershipService(WorkerPartitionRepository workerPartitionRepository,
+                                     WorkerNodeRepository workerNodeRepository,
+                                     ScanClaimService scanClaimService,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${worker.partitions.enabled:true}") boolean enabled,
+                                     @Value("${worker.partitions.count:16}") int partitionCount,
+                                     @Value("${worker.partitions.lease-duration-ms:30000}") long leaseDurationMs) {
+        this.workerPartitionRepository = workerPartitionRepository;
+        this.workerNodeRepository = workerNodeRepository;
+        this.nodeId = scanClaimService.getLeaseOwner();
+        this.enabled = enabled;
+        this.partitionCount = Math.max(1, partitionCount);
+        this.leaseDurationMs = leaseDurationMs;
+        this.owned = enabled ? Set.of() : allPartitions();
+        Gauge.builder("worker.partitions.owned", this, service -> service.owned.size())
+                .description("Worker partitions owned by this node")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Renews this node's partition leases and rebalances towards its fair share.
+     *
+     * @return whether this node took over partitions it did not own before.
+     */
+    @Transactional
+    public boolean heartbeat() {
+        if (!enabled) {
+            return false;
+        }
+        workerPartitionRepository.createMissing(partitionCount);
+        workerNodeRepository.heartbeat(nodeId);
+        workerNodeRepository.deleteStale(leaseDurationMs);
+        long liveNodes = Math.max(1, workerNodeRepository.count());
+        int fairShare = (int) Math.ceil((double) partitionCount / liveNodes);
+
+        Set<Integer> current = new TreeSet<>(workerPartitionRepository.renew(nodeId, partitionCount, leaseDurationMs));
+        Set<Integer> lost = new TreeSet<>(owned);
+        lost.removeAll(current);
+        List<Integer> released = List.of();
+        List<Integer> taken = List.of();
+        if (current.size() > fairShare) {
+            // Give back the highest indexes, so that a node keeps the same partitions across rebalances.
+            released = current.stream().sorted(Comparator.reverseOrder()).limit(current.size() - fairShare).toList();
+            workerPartitionRepository.release(nodeId, released);
+            released.forEach(current::remove);
+        } else if (current.size() < fairShare) {
+            taken = workerPartitionRepository.claimFree(nodeId, partitionCount, fairShare - current.size(), leaseDurationMs);
+            current.addAll(taken);
+        }
+        if (!lost.isEmpty() || !released.isEmpty() || !taken.isEmpty()) {
+            logger.info("Worker partitions rebalanced across {} node(s): took {}, released {}, lost {}; now owning {}.",
+                    liveNodes, taken, released, lost, current);
+        }
+        owned = Set.copyOf(current);
+        return !taken.isEmpty();
+    }
+
+    /**
+     * Hands every partition back so that the other nodes can take them over without waiting for the
+     * leases to expire.
+     */
+    @Transactional
+    public void leave() {
+        if (!enabled) {
+            return;
+        }
+        owned = Set.of();
+        try {
+            workerPartitionRepository.releaseAll(nodeId);
+            workerNodeRepository.deleteById(nodeId);
+        } catch (Exception e) {
+            logger.warn("Could not release worker partitions on shutdown: {}. They will be taken over once their leases expire.", e.getMessage());
+        }
+    }
+
+    /**
+     * Narrows a worker lane to the partitions this node owns. Lane {@code i} of {@code n} gets the
+     * owned partitions whose index is {@code i} modulo {@code n}.
+     *
+     * @return the part of the queue the lane may claim from, or empty if it has nothing to do.
+     */
+    public Optional<ClaimPartition> restrict(ClaimPartition lane) {
+        List<Integer> indexes = new ArrayList<>();
+        for (Integer partition : new TreeSet<>(owned)) {
+            if (lane.indexes().contains(partition % lane.count())) {
+                indexes.add(partition);
+            }
+        }
+        return indexes.isEmpty() ? Optional.empty() : Optional.of(new ClaimPartition(partitionCount, indexes));
+    }
+
+    public Set<Integer> getOwnedPartitions() {
+        return owned;
+    }
+
+    private Set<Integer> allPartitions() {
+        return Set.copyOf(IntStream.range(0, partitionCount).boxed().toList());
+    }
+}
@@ -0,0 +1,280 @@
+package com.geeknarrator.urlscanner.worker;
+
+import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.repository.ClaimCandidate;
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import com.geeknarrator.urlscanner.service.cache.ScanResultCache;
+import com.geeknarrator.urlscanner.service.storage.ScanResultStorage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Claims batches of scans for a worker run and writes their outcomes back.
+ * <p>
+ * Claiming and completing are two short transactions. Claimed rows are stamped with this node's
+ * lease owner and a lease expiry and the row locks are released on commit, so the urlscan.io calls
+ * in between run without holding a JDBC connection or a lock. A row whose lease has expired (for
+ * example because its worker died mid-run) becomes claimable again.
+ * <p>
+ * Scans of the same URL share one urlscan.io submission: the first to be submitted leads, the
+ * others follow it (see {@link UrlScan#getLeaderScanId()}). When the leader's submission or result
+ * is written back, the outcome is copied to its followers with one bulk update. Result documents go
+ * to {@link ScanResultStorage}, so a leader and its followers share one stored copy.
+ * <p>
+ * Results of scans that reach DONE go into the {@link ScanResultCache} once their transaction has
+ * committed, so the next submission of the URL is answered without a database lookup.
+ */
+@Service
+public class ScanClaimService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScanClaimService.class);
+
+    private final UrlScanRepository urlScanRepository;
+    private final MeterRegistry meterRegistry;
+    private final SchedulerProperties schedulerProperties;
+    private final ScanResultCache scanResultCache;
+    private final ScanResultStorage scanResultStorage;
+    private final Map<SchedulerKey, DeficitRoundRobinScheduler> schedulers = new ConcurrentHashMap<>();
+    private final String leaseOwner;
+
+    @Value("${worker.lease.duration-ms:300000}")
+    private long leaseDurationMs;
+
+    public ScanClaimService(UrlScanRepository urlScanRepository,
+                            MeterRegistry meterRegistry,
+                            SchedulerProperties schedulerProperties,
+                            ScanResultCache scanResultCache,
+                            ScanResultStorage scanResultStorage,
+                            @Value("${worker.lease.owner:}") String leaseOwner) {
+        this.urlScanRepository = urlScanRepository;
+        this.meterRegistry = meterRegistry;
+        this.schedulerProperties = schedulerProperties;
+        this.scanResultCache = scanResultCache;
+        this.scanResultStorage = scanResultStorage;
+        this.leaseOwner = leaseOwner.isBlank() ? defaultLeaseOwner() : leaseOwner;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    /**
+     * Claims up to {@code maxBatchSize} scans in the given status, priority lane and partition.
+     * Candidates are read without locks, the {@link DeficitRoundRobinScheduler} for that status, lane
+     * and partition picks whose turn it is, and only the picked rows are locked and leased.
+     *
+     * @return the claimed scans, detached once the transaction commits.
+     */
+    @Transactional
+    public List<UrlScan> claim(UrlScan.ScanStatus status, UrlScan.Priority priority, int maxBatchSize, ClaimPartition partition) {
+        if (maxBatchSize <= 0) {
+            return List.of();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        int candidateLimit = maxBatchSize * Math.max(1, schedulerProperties.getCandidateFactor());
+        List<ClaimCandidate> candidates = urlScanRepository.findClaimCandidates(status, priority, now, maxBatchSize, candidateLimit,
+                partition.count(), partition.indexes());
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+        List<Long> selectedIds = schedulerFor(status, priority, partition).select(candidates, maxBatchSize, now);
+        if (selectedIds.isEmpty()) {
+            return List.of();
+        }
+        List<UrlScan> claimed = urlScanRepository.findAndLockClaimableByIds(selectedIds, status, now);
+        if (!claimed.isEmpty()) {
+            logger.info("Claimed {} {} {} scans across {} users.", claimed.size(), priority, status,
+                    claimed.stream().map(UrlScan::getUserId).distinct().count());
+            acquireLeases(claimed, now);
+            recordClaims(claimed, status, priority, now);
+        }
+        return claimed;
+    }
+
+    /**
+     * @return for each URL among {@code scans}, a scan of that URL already sent to urlscan.io and
+     *         still waiting for its result, keyed by URL hash.
+     */
+    public Map<String, UrlScan> findInFlightLeaders(List<UrlScan> scans) {
+        Set<String> urlHashes = scans.stream()
+                .map(UrlScan::getUrlHash)
+                .collect(Collectors.toSet());
+        if (urlHashes.isEmpty()) {
+            return Map.of();
+        }
+        return urlScanRepository.findInFlightLeaders(urlHashes).stream()
+                .collect(Collectors.toMap(UrlScan::getUrlHash, Function.identity()));
+    }
+
+    /**
+     * Writes the outcome fields of processed scans back and releases their leases. Scans whose lease
+     * was lost in the meantime (expired and reclaimed elsewhere) or that were deleted are skipped.
+     * <p>
+     * A scan that has just been sent to urlscan.io takes on every unleased SUBMITTED scan of the
+     * same URL as a follower, and a leader that has finished passes its outcome on to its followers.
+     */
+    @Transactional
+    public void complete(List<UrlScan> processed) {
+        if (processed.isEmpty()) {
+            return;
+        }
+        List<UrlScan> newLeaders = new ArrayList<>();
+        List<UrlScan> finishedLeaders = new ArrayList<>();
+        Map<Long, UrlScan> current = urlScanRepository.findAllById(processed.stream().map(UrlScan::getId).toList())
+                .stream()
+                .collect(Collectors.toMap(UrlScan::getId, Function.identity()));
+        for (UrlScan outcome : processed) {
+            UrlScan scan = current.get(outcome.getId());
+            if (scan == null) {
+                logger.info("Scan ID: {} was deleted while being processed. Discarding outcome.", outcome.getId());
+                continue;
+            }
+            if (!leaseOwner.equals(scan.getLeaseOwner())) {
+                meterRegistry.counter("scans.lease.lost").increment();
+                logger.warn("Lease on scan ID: {} is now held by {}. Discarding outcome.", scan.getId(), scan.getLeaseOwner());
+                continue;
+            }
+            if (outcome.getLeaderScanId() == null && scan.getLeaderScanId() == null) {
+                if (scan.getStatus() == UrlScan.ScanStatus.SUBMITTED && outcome.getStatus() == UrlScan.ScanStatus.PROCESSING) {
+                    newLeaders.add(scan);
+                } else if (scan.getStatus() == UrlScan.ScanStatus.PROCESSING && isFinal(outcome.getStatus())) {
+                    finishedLeaders.add(scan);
+                }
+            }
+            scan.setStatus(outcome.getStatus());
+            scan.setExternalScanId(outcome.getExternalScanId());
+            scan.setLeaderScanId(outcome.getLeaderScanId());
+            if (scan.getResultDocument() == null) {
+                if (outcome.getResultDocument() != null) {
+                    scan.setResultDocument(scanResultStorage.store(outcome.getResultDocument()));
+                } else if (outcome.getResult() != null) {
+                    scan.setResultDocument(scanResultStorage.store(outcome.getResult()));
+                }
+            }
+            scan.setSummary(outcome.getSummary());
+            scan.setFailureReason(outcome.getFailureReason());
+            scan.setNextCheckAt(outcome.getNextCheckAt());
+            scan.setCheckAttempts(outcome.getCheckAttempts());
+            scan.setSubmitAttempts(outcome.getSubmitAttempts());
+            scan.setLeaseOwner(null);
+            scan.setLeaseExpiresAt(null);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (UrlScan leader : newLeaders) {
+            int attached = urlScanRepository.attachFollowers(leader.getId(), leader.getUrlHash(), leader.getExternalScanId(),
+                    leader.getNextCheckAt(), now);
+            if (attached > 0) {
+                meterRegistry.counter("scans.coalesced").increment(attached);
+                logger.info("{} queued scans of the same URL now follow scan ID: {}.", attached, leader.getId());
+            }
+        }
+        for (UrlScan leader : finishedLeaders) {
+            String resultHash = leader.getResultDocument() == null ? null : leader.getResultDocument().getContentHash();
+            int completed = urlScanRepository.completeFollowers(leader.getId(), leader.getStatus(), resultHash,
+                    leader.getFailureReason(), now);
+            if (completed > 0) {
+                logger.info("Copied {} outcome of scan ID: {} to {} followers.", leader.getStatus(), leader.getId(), completed);
+            }
+        }
+        cacheResultsAfterCommit(finishedLeaders);
+    }
+
+    private void cacheResultsAfterCommit(List<UrlScan> finished) {
+        List<UrlScan> done = finished.stream().filter(scan -> scan.getStatus() == UrlScan.ScanStatus.DONE).toList();
+        if (done.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            done.forEach(scanResultCache::put);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                done.forEach(scanResultCache::put);
+            }
+        });
+    }
+
+    private static boolean isFinal(UrlScan.ScanStatus status) {
+        return status == UrlScan.ScanStatus.DONE || status == UrlScan.ScanStatus.FAILED;
+    }
+
+    private DeficitRoundRobinScheduler schedulerFor(UrlScan.ScanStatus status, UrlScan.Priority priority, ClaimPartition partition) {
+        SchedulerKey key = new SchedulerKey(status, priority, partition);
+        if (!schedulers.containsKey(key)) {
+            // Partitions moved between lanes or nodes; schedulers for the old layout will not be used again.
+            schedulers.keySet().removeIf(existing -> existing.status() == status && existing.priority() == priority
+                    && existing.overlaps(partition));
+        }
+        return schedulers.computeIfAbsent(key, k -> new DeficitRoundRobinScheduler(schedulerProperties));
+    }
+
+    private void recordClaims(List<UrlScan> claimed, UrlScan.ScanStatus status, UrlScan.Priority priority, LocalDateTime now) {
+        meterRegistry.counter("scans.claimed", "status", status.name(), "priority", priority.name()).increment(claimed.size());
+        if (status != UrlScan.ScanStatus.SUBMITTED) {
+            return;
+        }
+        // Time from creation to first pick-up is the queueing delay each lane is meant to bound.
+        Timer queueWait = Timer.builder("scans.queue.wait")
+                .description("Time a scan waited in its lane before it was first claimed for submission")
+                .tag("priority", priority.name())
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        for (UrlScan scan : claimed) {
+            if (scan.getSubmitAttempts() == 0 && scan.getCreatedAt() != null) {
+                queueWait.record(Duration.between(scan.getCreatedAt(), now));
+            }
+        }
+    }
+
+    private void acquireLeases(List<UrlScan> scans, LocalDateTime now) {
+        LocalDateTime expiresAt = now.plus(Duration.ofMillis(leaseDurationMs));
+        for (UrlScan scan : scans) {
+            if (scan.getLeaseOwner() != null) {
+                meterRegistry.counter("scans.lease.reclaimed").increment();
+                logger.warn("Reclaiming scan ID: {} from expired lease held by {}.", scan.getId(), scan.getLeaseOwner());
+            }
+            scan.setLeaseOwner(leaseOwner);
+            scan.setLeaseExpiresAt(expiresAt);
+        }
+        urlScanRepository.saveAllAndFlush(scans);
+    }
+
+    // Deficits are per user and lane, so each lane and partition of users keeps its own scheduler state.
+    private record SchedulerKey(UrlScan.ScanStatus status, UrlScan.Priority priority, ClaimPartition partition) {
+
+        boolean overlaps(ClaimPartition other) {
+            return partition.count() != other.count() || partition.indexes().stream().anyMatch(other.indexes()::contains);
+        }
+    }
+
+    private static String defaultLeaseOwner() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "worker";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,154 @@
+package com.geeknarrator.urlscanner.worker;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Wakes the submission worker as soon as a new scan is inserted, using Postgres LISTEN/NOTIFY.
+ * <p>
+ * An insert trigger on {@code url_scans} raises a notification on commit. This listener holds its
+ * own JDBC connection (outside the pool) in LISTEN mode and, when notified, asks the
+ * {@link WorkerScheduler} for a submission run. Notifications that arrive while a run is pending
+ * collapse into it. The scheduled submission poll stays in place as a slow safety net.
+ */
+@Component
+@ConditionalOnProperty(name = "worker.notify.enabled", havingValue = "true", matchIfMissing = true)
+public class ScanNotificationListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScanNotificationListener.class);
+
+    static final String CHANNEL = "url_scan_submitted";
+
+    private static final String INSTALL_TRIGGER_SQL = """
+            CREATE OR REPLACE FUNCTION notify_url_scan_submitted() RETURNS trigger AS $$
+            BEGIN
+                PERFORM pg_notify('%1$s', '');
+                RETURN NEW;
+            END;
+            $$ LANGUAGE plpgsql;
+            CREATE OR REPLACE TRIGGER url_scans_notify_submitted
+                AFTER INSERT ON url_scans
+                FOR EACH ROW WHEN (NEW.scan_status = 'SUBMITTED')
+                EXECUTE FUNCTION notify_url_scan_submitted();
+            """.formatted(CHANNEL);
+
+    private final ListenConnectionFactory connectionFactory;
+    private final WorkerScheduler workerScheduler;
+    private final MeterRegistry meterRegistry;
+
+    private final ExecutorService listenerExecutor = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "scan-notify-listener"));
+    private volatile boolean running = true;
+
+    @Value("${worker.notify.poll-timeout-ms:5000}")
+    private int pollTimeoutMs;
+
+    @Value("${worker.notify.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    @Autowired
+    public ScanNotificationListener(JdbcConnectionDetails connectionDetails, WorkerScheduler workerScheduler, MeterRegistry meterRegistry) {
+        this(() -> DriverManager.getConnection(connectionDetails.getJdbcUrl(), connectionDetails.getUsername(), connectionDetails.getPassword()),
+                workerScheduler, meterRegistry);
+    }
+
+    ScanNotificationListener(ListenConnectionFactory connectionFactory, WorkerScheduler workerScheduler, MeterRegistry meterRegistry) {
+        this.connectionFactory = connectionFactory;
+        this.workerScheduler = workerScheduler;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listenerExecutor.execute(this::listen);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        listenerExecutor.shutdownNow();
+    }
+
+    private void listen() {
+        boolean triggerInstalled = false;
+        while (running) {
+            try (Connection connection = connectionFactory.open()) {
+                if (!triggerInstalled) {
+                    installTrigger(connection);
+                    triggerInstalled = true;
+                }
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                logger.info("Listening for new scans on channel '{}'.", CHANNEL);
+                // Scans inserted while we were not listening would otherwise wait for the safety-net poll.
+                requestWakeup();
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMs);
+                    if (notifications != null && notifications.length > 0) {
+                        requestWakeup();
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("Scan notification listener lost its connection: {}. Reconnecting in {}ms.", e.getMessage(), reconnectDelayMs);
+                try {
+                    Thread.sleep(reconnectDelayMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void installTrigger(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(INSTALL_TRIGGER_SQL);
+        } catch (SQLException e) {
+            logger.warn("Could not install the scan insert trigger: {}. New scans will be picked up by the scheduled poll only.", e.getMessage());
+        }
+    }
+
+    private void requestWakeup() {
+        if (workerScheduler.requestSubmissionRun()) {
+            meterRegistry.counter("worker.notify.wakeups").increment();
+        }
+    }
+
+    /**
+     * Opens the connection the listener LISTENs on. It is held for as long as the listener runs, so
+     * it is not taken from the pool.
+     */
+    @FunctionalInterface
+    interface ListenConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,95 @@
+package com.geeknarrator.urlscanner.worker;
+
+import com.geeknarrator.urlscanner.entity.User;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tuning for the deficit round-robin scheduler that decides which users' scans are claimed in a
+ * worker run. Bound from {@code worker.scheduler.*}.
+ */
+@Component
+@ConfigurationProperties(prefix = "worker.scheduler")
+public class SchedulerProperties {
+
+    /** Scans credited to a weight-1 user per round. */
+    private double quantum = 1.0;
+
+    /** How long a user's oldest waiting scan must wait to double that user's share. */
+    private long agingIntervalMs = 60000;
+
+    /** The most waiting can multiply a user's share by. */
+    private double maxAgeBoost = 4.0;
+
+    /** Candidates read per run, as a multiple of the batch size. */
+    private int candidateFactor = 3;
+
+    /** Weight per user tier; tiers that are not listed get weight 1. */
+    private Map<User.Tier, Double> tierWeights = new EnumMap<>(Map.of(
+            User.Tier.FREE, 1.0,
+            User.Tier.PRO, 2.0,
+            User.Tier.ENTERPRISE, 4.0));
+
+    /** Per-user weight overrides, keyed by user ID. */
+    private Map<Long, Double> userWeights = new HashMap<>();
+
+    public double weightFor(Long userId, User.Tier tier) {
+        Double userWeight = userWeights.get(userId);
+        if (userWeight != null) {
+            return userWeight;
+        }
+        return tierWeights.getOrDefault(tier == null ? User.Tier.FREE : tier, 1.0);
+    }
+
+    public double getQuantum() {
+        return quantum;
+    }
+
+    public void setQuantum(double quantum) {
+        this.quantum = quantum;
+    }
+
+    public long getAgingIntervalMs() {
+        return agingIntervalMs;
+    }
+
+    public void setAgingIntervalMs(long agingIntervalMs) {
+        this.agingIntervalMs = agingIntervalMs;
+    }
+
+    public double getMaxAgeBoost() {
+        return maxAgeBoost;
+    }
+
+    public void setMaxAgeBoost(double maxAgeBoost) {
+        this.maxAgeBoost = maxAgeBoost;
+    }
+
+    public int getCandidateFactor() {
+        return candidateFactor;
+    }
+
+    public void setCandidateFactor(int candidateFactor) {
+        this.candidateFactor = candidateFactor;
+    }
+
+    public Map<User.Tier, Double> getTierWeights() {
+        return tierWeights;
+    }
+
+    public void setTierWeights(Map<User.Tier, Double> tierWeights) {
+        this.tierWeights = tierWeights;
+    }
+
+    public Map<Long, Double> getUserWeights() {
+        return userWeights;
+    }
+
+    public void setUserWeights(Map<Long, Double> userWeights) {
+        this.userWeights = userWeights;
+    }
+}
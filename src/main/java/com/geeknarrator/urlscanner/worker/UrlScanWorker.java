@@ -1,31 +1,44 @@
 package com.geeknarrator.urlscanner.worker;
 
 import com.geeknarrator.urlscanner.entity.UrlScan;
-import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import com.geeknarrator.urlscanner.service.FetchedResult;
+import com.geeknarrator.urlscanner.service.SubmissionResult;
+import com.geeknarrator.urlscanner.service.UrlScanEndpoint;
 import com.geeknarrator.urlscanner.service.UrlScanIoClient;
+import com.geeknarrator.urlscanner.service.circuitbreaker.UrlScanCircuitBreakers;
+import com.geeknarrator.urlscanner.service.ratelimit.UrlScanRateLimiter;
 import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.function.Consumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class UrlScanWorker {
 
     private static final Logger logger = LoggerFactory.getLogger(UrlScanWorker.class);
 
-    private final UrlScanRepository urlScanRepository;
+    private final ScanClaimService scanClaimService;
     private final UrlScanIoClient urlScanIoClient;
     private final MeterRegistry meterRegistry;
+    private final UrlScanRateLimiter rateLimiter;
+    private final UrlScanCircuitBreakers circuitBreakers;
 
     @Value("${worker.submission.batch-size:100}")
     private int submissionBatchSize;
@@ -33,78 +46,264 @@ public class UrlScanWorker {
     @Value("${worker.result.batch-size:100}")
     private int resultBatchSize;
 
-    @Value("${worker.fairness.per-user-batch-size:5}")
-    private int perUserBatchSize;
+    @Value("${worker.submission.concurrency:10}")
+    private int submissionConcurrency;
 
-    public UrlScanWorker(UrlScanRepository urlScanRepository, UrlScanIoClient urlScanIoClient, MeterRegistry meterRegistry) {
-        this.urlScanRepository = urlScanRepository;
+    @Value("${worker.result.initial-delay-ms:15000}")
+    private long resultInitialDelayMs;
+
+    @Value("${worker.result.backoff-multiplier:2.0}")
+    private double resultBackoffMultiplier;
+
+    @Value("${worker.result.max-backoff-ms:300000}")
+    private long resultMaxBackoffMs;
+
+    @Value("${worker.result.max-attempts:30}")
+    private int resultMaxAttempts;
+
+    @Value("${worker.priority.interactive-share:0.2}")
+    private double interactiveShare;
+
+    @Value("${urlscan.client.max-retries:3}")
+    private int submissionMaxAttempts;
+
+    @Value("${urlscan.client.retry-initial-delay-ms:5000}")
+    private long submissionRetryInitialDelayMs;
+
+    private ExecutorService submissionExecutor;
+
+    public UrlScanWorker(ScanClaimService scanClaimService, UrlScanIoClient urlScanIoClient, MeterRegistry meterRegistry,
+                         UrlScanRateLimiter rateLimiter, UrlScanCircuitBreakers circuitBreakers) {
+        this.scanClaimService = scanClaimService;
         this.urlScanIoClient = urlScanIoClient;
         this.meterRegistry = meterRegistry;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreakers = circuitBreakers;
     }
 
-    @Scheduled(fixedDelayString = "${worker.submission.delay-ms:10000}")
-    @Transactional
-    public void processSubmittedScans() {
-        runFairnessWorker(UrlScan.ScanStatus.SUBMITTED, submissionBatchSize, this::processScan);
+    @PostConstruct
+    void startSubmissionExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        submissionExecutor = Executors.newFixedThreadPool(Math.max(1, submissionConcurrency), runnable -> {
+            Thread thread = new Thread(runnable, "scan-submitter-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    @Scheduled(fixedDelayString = "${worker.result.delay-ms:15000}")
-    @Transactional
-    public void checkProcessingScans() {
-        runFairnessWorker(UrlScan.ScanStatus.PROCESSING, resultBatchSize, this::checkScanResult);
+    @PreDestroy
+    void stopSubmissionExecutor() throws InterruptedException {
+        submissionExecutor.shutdown();
+        if (!submissionExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+            submissionExecutor.shutdownNow();
+        }
     }
 
-    private void runFairnessWorker(UrlScan.ScanStatus status, int maxBatchSize, Consumer<UrlScan> processor) {
-        logger.info("Running fairness worker for status: {}", status);
-        int processedCount = 0;
+    /**
+     * Claims a batch of SUBMITTED scans in {@code partition} and sends them to urlscan.io. No
+     * transaction is open while the HTTP calls run: the claim and the write-back are separate short
+     * transactions.
+     * <p>
+     * Only as many scans are claimed as the submit circuit breaker and rate limit allow.
+     *
+     * @return when to run again ahead of the regular schedule: once a limit that cut this batch short
+     *         has lifted, or when the earliest re-queued scan is due for its retry.
+     */
+    public Optional<Duration> processSubmittedScans(ClaimPartition partition) {
+        logger.info("Running worker for status: {} ({})", UrlScan.ScanStatus.SUBMITTED, partition);
+        Claim claim = claimWithinLimits(UrlScan.ScanStatus.SUBMITTED, UrlScanEndpoint.SUBMIT, submissionBatchSize, partition);
+        Optional<Duration> untilRetry = submitScans(claim.scans());
+        scanClaimService.complete(claim.scans());
+        logger.info("Finished worker run for status: {} ({})", UrlScan.ScanStatus.SUBMITTED, partition);
+        return earliest(claim.followUp(), untilRetry);
+    }
 
-        // --- Phase 1: Fairness Pass (Round-Robin per user) ---
-        List<Long> userIds = urlScanRepository.findDistinctUserIdsWithStatus(status);
-        if (!userIds.isEmpty()) {
-            logger.info("Fairness pass: Found {} users with pending scans.", userIds.size());
-            for (Long userId : userIds) {
-                if (processedCount >= maxBatchSize) {
-                    logger.info("Batch limit reached during fairness pass. Deferring remaining users.");
-                    break;
-                }
-                Pageable perUserPageable = PageRequest.of(0, perUserBatchSize);
-                Page<UrlScan> userScans = urlScanRepository.findAndLockByUserIdAndStatus(userId, status, perUserPageable);
-                for (UrlScan scan : userScans) {
-                    processor.accept(scan);
-                    processedCount++;
-                }
+    /**
+     * Claims a batch of PROCESSING scans in {@code partition} that are due for a check and fetches
+     * their results.
+     *
+     * @return when to run again ahead of the regular schedule, if a limit cut this batch short.
+     */
+    public Optional<Duration> checkProcessingScans(ClaimPartition partition) {
+        logger.info("Running worker for status: {} ({})", UrlScan.ScanStatus.PROCESSING, partition);
+        Claim claim = claimWithinLimits(UrlScan.ScanStatus.PROCESSING, UrlScanEndpoint.RESULT, resultBatchSize, partition);
+        claim.scans().forEach(this::checkScanResult);
+        scanClaimService.complete(claim.scans());
+        logger.info("Finished worker run for status: {} ({})", UrlScan.ScanStatus.PROCESSING, partition);
+        return claim.followUp();
+    }
+
+    /**
+     * Claims at most as many scans as both the circuit breaker and the rate limit for {@code endpoint}
+     * allow, and hands back the permits the claim did not need. While the breaker is open nothing is
+     * claimed; while it is half-open only a few probe scans are. When either limit is the reason the
+     * batch is smaller than {@code batchSize}, the claim says when the limit should have lifted, so the
+     * backlog is not left to the next scheduled run.
+     * <p>
+     * Interactive scans are claimed first and may use every permit. Bulk scans only get what is left
+     * above a reserve of {@code worker.priority.interactive-share} of the rate-limit bucket, so an
+     * interactive scan arriving between runs finds budget waiting for it however large the bulk
+     * backlog is.
+     */
+    private Claim claimWithinLimits(UrlScan.ScanStatus status, UrlScanEndpoint endpoint, int batchSize, ClaimPartition partition) {
+        int allowed = circuitBreakers.acquirePermits(endpoint, batchSize);
+        if (allowed == 0) {
+            logger.info("Circuit breaker for {} is open; not claiming {} scans this run.", endpoint, status);
+            return new Claim(List.of(), positive(circuitBreakers.remainingOpenTime(endpoint)));
+        }
+        int reserve = rateLimiter.reservation(endpoint, interactiveShare);
+        // Ask for the reserve on top, so that bulk can tell whether the bucket holds more than the reserve.
+        int granted = rateLimiter.tryAcquire(endpoint, allowed + reserve);
+        if (granted == 0) {
+            circuitBreakers.release(endpoint, allowed);
+            logger.info("Rate limit for {} exhausted; not claiming {} scans this run.", endpoint, status);
+            return new Claim(List.of(), positive(rateLimiter.refillTime(endpoint, batchSize)));
+        }
+        int permits = Math.min(granted, allowed);
+        List<UrlScan> scans = new ArrayList<>(scanClaimService.claim(status, UrlScan.Priority.INTERACTIVE, permits, partition));
+        int unclaimed = permits - scans.size();
+        int bulkLimit = Math.max(0, Math.min(permits, granted - reserve) - scans.size());
+        List<UrlScan> bulk = scanClaimService.claim(status, UrlScan.Priority.BULK, bulkLimit, partition);
+        scans.addAll(bulk);
+        rateLimiter.release(endpoint, granted - scans.size());
+        circuitBreakers.release(endpoint, allowed - scans.size());
+        // Bulk filled everything the reserve left it, so more is probably waiting for the bucket to refill.
+        boolean bulkHeldBack = bulkLimit < unclaimed && bulk.size() == bulkLimit;
+        if ((permits < batchSize && scans.size() == permits) || bulkHeldBack) {
+            // Half-open probes finish within this run, so by then the breaker has closed or reopened.
+            return new Claim(scans, positive(rateLimiter.refillTime(endpoint, batchSize)));
+        }
+        return new Claim(scans, Optional.empty());
+    }
+
+    /**
+     * Sends the claimed scans to urlscan.io in parallel, bounded by {@code worker.submission.concurrency}.
+     * Only the HTTP calls run on the submission pool; outcomes are applied to the claimed scans back on
+     * the calling thread before they are written back.
+     * <p>
+     * Each URL is submitted once. Scans of a URL that is already waiting for its result at urlscan.io
+     * follow that scan, and of several claimed scans of the same URL only the first is submitted and
+     * the others take its outcome. The permits saved are handed back.
+     *
+     * @return how long until the earliest scan that was re-queued for a retry is due.
+     */
+    private Optional<Duration> submitScans(List<UrlScan> scans) {
+        Map<String, UrlScan> inFlight = scanClaimService.findInFlightLeaders(scans);
+        Map<String, List<UrlScan>> byUrl = new LinkedHashMap<>();
+        for (UrlScan scan : scans) {
+            UrlScan leader = inFlight.get(scan.getUrlHash());
+            if (leader != null) {
+                follow(scan, leader);
+            } else {
+                byUrl.computeIfAbsent(scan.getUrlHash(), key -> new ArrayList<>()).add(scan);
             }
         }
+        int saved = scans.size() - byUrl.size();
+        if (saved > 0) {
+            rateLimiter.release(UrlScanEndpoint.SUBMIT, saved);
+            circuitBreakers.release(UrlScanEndpoint.SUBMIT, saved);
+        }
 
-        // --- Phase 2: Efficiency Pass (Bulk processing for remaining capacity) ---
-        int remainingCapacity = maxBatchSize - processedCount;
-        if (remainingCapacity > 0) {
-            logger.info("Efficiency pass: Fetching up to {} more scans.", remainingCapacity);
-            Pageable bulkPageable = PageRequest.of(0, remainingCapacity);
-            Page<UrlScan> bulkScans = urlScanRepository.findAndLockByStatus(status, bulkPageable);
-            if (!bulkScans.isEmpty()) {
-                logger.info("Found and locked {} additional scans in efficiency pass.", bulkScans.getNumberOfElements());
-                for (UrlScan scan : bulkScans) {
-                    processor.accept(scan);
+        List<List<UrlScan>> groups = new ArrayList<>(byUrl.values());
+        List<CompletableFuture<SubmissionResult>> submissions = new ArrayList<>(groups.size());
+        for (List<UrlScan> group : groups) {
+            String url = group.get(0).getUrl();
+            submissions.add(CompletableFuture.supplyAsync(() -> urlScanIoClient.submitScan(url), submissionExecutor));
+        }
+        for (int i = 0; i < groups.size(); i++) {
+            List<UrlScan> group = groups.get(i);
+            UrlScan leader = group.get(0);
+            SubmissionResult submission;
+            try {
+                submission = submissions.get(i).join();
+            } catch (CompletionException e) {
+                Exception cause = e.getCause() instanceof Exception ex ? ex : e;
+                group.forEach(scan -> handleFailure(scan, "submission_error",
+                        "An unexpected error occurred while submitting scan: " + cause.getMessage(), cause));
+                continue;
+            }
+            applySubmission(leader, submission);
+            for (UrlScan scan : group.subList(1, group.size())) {
+                if (leader.getStatus() == UrlScan.ScanStatus.PROCESSING) {
+                    follow(scan, leader);
+                } else {
+                    applySubmission(scan, submission);
                 }
             }
         }
-        logger.info("Finished worker run for status: {}", status);
+
+        LocalDateTime earliestRetry = null;
+        for (UrlScan scan : scans) {
+            if (scan.getStatus() == UrlScan.ScanStatus.SUBMITTED
+                    && (earliestRetry == null || scan.getNextCheckAt().isBefore(earliestRetry))) {
+                earliestRetry = scan.getNextCheckAt();
+            }
+        }
+        if (earliestRetry == null) {
+            return Optional.empty();
+        }
+        // Retried scans cause no insert notification; make sure they are not left to the safety-net poll.
+        Duration untilRetry = Duration.between(LocalDateTime.now(), earliestRetry);
+        return Optional.of(untilRetry.isNegative() || untilRetry.isZero() ? Duration.ofMillis(1) : untilRetry);
     }
 
-    private void processScan(UrlScan scan) {
-        try {
-            Optional<String> externalScanIdOpt = urlScanIoClient.submitScan(scan.getUrl());
-            if (externalScanIdOpt.isPresent()) {
-                scan.setExternalScanId(externalScanIdOpt.get());
+    /**
+     * Attaches {@code scan} to the urlscan.io scan {@code leader} is waiting on. The scan is not polled
+     * itself; it gets the leader's outcome when the leader's result is written back.
+     */
+    private void follow(UrlScan scan, UrlScan leader) {
+        scan.setExternalScanId(leader.getExternalScanId());
+        scan.setLeaderScanId(leader.getId());
+        scan.setStatus(UrlScan.ScanStatus.PROCESSING);
+        scan.setCheckAttempts(0);
+        scan.setNextCheckAt(leader.getNextCheckAt());
+        meterRegistry.counter("scans.coalesced").increment();
+        logger.info("Scan ID: {} follows scan ID: {} for the same URL. External ID: {}", scan.getId(), leader.getId(), leader.getExternalScanId());
+    }
+
+    private void applySubmission(UrlScan scan, SubmissionResult submission) {
+        switch (submission.outcome()) {
+            case SUBMITTED -> {
+                scan.setExternalScanId(submission.externalScanId());
                 scan.setStatus(UrlScan.ScanStatus.PROCESSING);
-                logger.info("Scan ID: {} successfully submitted. External ID: {}", scan.getId(), externalScanIdOpt.get());
-            } else {
-                handleFailure(scan, "submission_error", "Failed to submit scan to urlscan.io");
+                // urlscan.io needs a while to finish a scan; don't ask for the result before then.
+                scan.setCheckAttempts(0);
+                scan.setNextCheckAt(LocalDateTime.now().plus(Duration.ofMillis(resultInitialDelayMs)));
+                logger.info("Scan ID: {} successfully submitted. External ID: {}", scan.getId(), submission.externalScanId());
             }
-        } catch (Exception e) {
-            handleFailure(scan, "submission_error", "An unexpected error occurred while submitting scan: " + e.getMessage(), e);
+            case RETRYABLE -> scheduleSubmissionRetry(scan, submission);
+            case REJECTED -> handleFailure(scan, "submission_error", submission.error());
+            case DEFERRED -> {
+                // The breaker opened during this run and no request went out, so no attempt is counted.
+                Duration untilProbe = submission.retryAfter() == null ? Duration.ZERO : submission.retryAfter();
+                scan.setNextCheckAt(LocalDateTime.now().plus(untilProbe));
+                logger.info("Circuit breaker for {} is open. Deferring submission of scan ID: {} to {}.",
+                        UrlScanEndpoint.SUBMIT, scan.getId(), scan.getNextCheckAt());
+            }
+        }
+    }
+
+    /**
+     * Leaves a scan that hit a transient failure in SUBMITTED and makes it claimable again after an
+     * exponentially growing delay, or after the delay urlscan.io asked for if that is longer. The
+     * scan fails once {@code urlscan.client.max-retries} attempts have been made.
+     */
+    private void scheduleSubmissionRetry(UrlScan scan, SubmissionResult submission) {
+        int attempts = scan.getSubmitAttempts() + 1;
+        scan.setSubmitAttempts(attempts);
+        if (attempts >= submissionMaxAttempts) {
+            handleFailure(scan, "submission_retries_exhausted",
+                    "Failed to submit scan to urlscan.io after " + attempts + " attempts: " + submission.error());
+            return;
+        }
+        Duration delay = Duration.ofMillis((long) (submissionRetryInitialDelayMs * Math.pow(2, attempts - 1)));
+        if (submission.retryAfter() != null && submission.retryAfter().compareTo(delay) > 0) {
+            delay = submission.retryAfter();
         }
+        scan.setNextCheckAt(LocalDateTime.now().plus(delay));
+        meterRegistry.counter("scans.submission.retried").increment();
+        logger.warn("Submission of scan ID: {} failed ({}). Attempt {}/{}, retrying at {}.",
+                scan.getId(), submission.error(), attempts, submissionMaxAttempts, scan.getNextCheckAt());
     }
 
     private void checkScanResult(UrlScan scan) {
@@ -112,21 +311,66 @@ public class UrlScanWorker {
             handleFailure(scan, "invalid_state", "Scan is in PROCESSING state but has no external scan ID");
             return;
         }
+        if (circuitBreakers.isOpen(UrlScanEndpoint.RESULT)) {
+            // The breaker opened during this run. Not a check of this scan, so it does not count as one.
+            Duration untilProbe = circuitBreakers.remainingOpenTime(UrlScanEndpoint.RESULT);
+            scan.setNextCheckAt(LocalDateTime.now().plus(untilProbe.isNegative() ? Duration.ZERO : untilProbe));
+            logger.info("Circuit breaker for {} is open. Deferring check of scan ID: {} to {}.",
+                    UrlScanEndpoint.RESULT, scan.getId(), scan.getNextCheckAt());
+            return;
+        }
         try {
-            Optional<String> resultOpt = urlScanIoClient.getScanResult(scan.getExternalScanId());
+            Optional<FetchedResult> resultOpt = urlScanIoClient.fetchScanResult(scan.getExternalScanId());
             if (resultOpt.isPresent()) {
-                scan.setResult(resultOpt.get());
+                // Stored when the outcome is written back; see ScanClaimService#complete.
+                scan.setResultDocument(resultOpt.get().document());
+                scan.setSummary(resultOpt.get().summary());
                 scan.setStatus(UrlScan.ScanStatus.DONE);
                 meterRegistry.counter("scans.completed").increment();
                 logger.info("Successfully fetched result for scan ID: {}. Status set to DONE.", scan.getId());
+            } else if (scan.getCheckAttempts() + 1 >= resultMaxAttempts) {
+                handleFailure(scan, "result_unavailable",
+                        "Result not available from urlscan.io after " + (scan.getCheckAttempts() + 1) + " checks");
             } else {
-                logger.info("Result for scan ID: {} not yet available.", scan.getId());
+                scheduleNextCheck(scan);
+                logger.info("Result for scan ID: {} not yet available. Next check at {}.", scan.getId(), scan.getNextCheckAt());
             }
         } catch (Exception e) {
             handleFailure(scan, "result_error", "An unexpected error occurred while checking result: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Backs off exponentially from the expected completion delay, so scans that are taking long are
+     * polled less and less often, capped at {@code worker.result.max-backoff-ms}. A scan fails once
+     * {@code worker.result.max-attempts} checks have found no result, whether urlscan.io answered 404
+     * or the lookup failed, so a result that never arrives is not polled forever.
+     */
+    private void scheduleNextCheck(UrlScan scan) {
+        int attempts = scan.getCheckAttempts() + 1;
+        double backoffMs = resultInitialDelayMs * Math.pow(resultBackoffMultiplier, attempts - 1);
+        long delayMs = (long) Math.min(backoffMs, resultMaxBackoffMs);
+        scan.setCheckAttempts(attempts);
+        scan.setNextCheckAt(LocalDateTime.now().plus(Duration.ofMillis(delayMs)));
+    }
+
+    private static Optional<Duration> positive(Duration delay) {
+        return delay.isZero() || delay.isNegative() ? Optional.empty() : Optional.of(delay);
+    }
+
+    private static Optional<Duration> earliest(Optional<Duration> a, Optional<Duration> b) {
+        if (a.isEmpty()) {
+            return b;
+        }
+        if (b.isEmpty()) {
+            return a;
+        }
+        return a.get().compareTo(b.get()) <= 0 ? a : b;
+    }
+
+    private record Claim(List<UrlScan> scans, Optional<Duration> followUp) {
+    }
+
     private void handleFailure(UrlScan scan, String reasonCode, String errorMessage, Exception... e) {
         meterRegistry.counter("scans.failed", "reason", reasonCode).increment();
         scan.setStatus(UrlScan.ScanStatus.FAILED);
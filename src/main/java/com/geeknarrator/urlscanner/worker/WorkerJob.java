@@ -0,0 +1,168 @@
+package com.geeknarrator.urlscanner.worker;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * A recurring worker job running on its own scheduler pool, so that a slow job cannot hold up
+ * another one.
+ * <p>
+ * The job is split into {@code parallelism} lanes, each covering one {@link ClaimPartition} of the
+ * queue. Every lane runs with a fixed delay between runs. On top of that a run can be requested
+ * early, either from outside ({@link #requestRun}) or by the job itself by returning a delay from a
+ * run. Early requests are coalesced: each lane has at most one pending, the soonest requested.
+ * <p>
+ * A lane never runs twice at once, even when the pool has more threads than there are lanes. A run
+ * that comes due while its lane is busy is not started; the lane runs once more when the busy run
+ * ends instead, so work that arrived in the meantime is not left to the next scheduled run.
+ * <p>
+ * Metrics, tagged with the job name: {@code worker.job.duration} (run time),
+ * {@code worker.job.queue.depth} (runs queued on the pool, scheduled or waiting for a thread) and
+ * {@code worker.job.active} (runs in progress).
+ */
+class WorkerJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkerJob.class);
+
+    private final String name;
+    private final int parallelism;
+    private final Duration fixedDelay;
+    private final Function<ClaimPartition, Optional<Duration>> body;
+    private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    // Per lane: when the pending early run is due, and its task. Guarded by this.
+    private final Instant[] earlyRunAt;
+    private final ScheduledFuture<?>[] earlyRunTask;
+    // Per lane: whether a run is in progress, and whether a run came due while it was.
+    private final AtomicBoolean[] running;
+    private final AtomicBoolean[] missedRun;
+    private final MeterRegistry meterRegistry;
+    private final Timer runTimer;
+
+    /**
+     * @param body runs the job for one partition and returns when it wants to run again ahead of the
+     *             fixed delay, if at all.
+     */
+    WorkerJob(String name, int poolSize, int parallelism, Duration fixedDelay,
+              Function<ClaimPartition, Optional<Duration>> body, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.parallelism = Math.max(1, parallelism);
+        this.fixedDelay = fixedDelay;
+        this.body = body;
+        this.meterRegistry = meterRegistry;
+        this.earlyRunAt = new Instant[this.parallelism];
+        this.earlyRunTask = new ScheduledFuture<?>[this.parallelism];
+        this.running = new AtomicBoolean[this.parallelism];
+        this.missedRun = new AtomicBoolean[this.parallelism];
+        for (int lane = 0; lane < this.parallelism; lane++) {
+            running[lane] = new AtomicBoolean();
+            missedRun[lane] = new AtomicBoolean();
+        }
+        if (poolSize < this.parallelism) {
+            logger.warn("Worker job '{}' has {} lanes but only {} threads; lanes will wait for each other.", name, this.parallelism, poolSize);
+        }
+        scheduler.setPoolSize(Math.max(1, poolSize));
+        scheduler.setThreadNamePrefix("worker-" + name + "-");
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        this.runTimer = Timer.builder("worker.job.duration")
+                .description("Time taken by one run of a worker job lane")
+                .tag("job", name)
+                .register(meterRegistry);
+        // Initialised up front so that runs can be requested before the lanes are started.
+        scheduler.initialize();
+        Gauge.builder("worker.job.queue.depth", scheduler, s -> s.getScheduledThreadPoolExecutor().getQueue().size())
+                .description("Runs queued on the worker job's pool, scheduled or waiting for a thread")
+                .tag("job", name)
+                .register(meterRegistry);
+        Gauge.builder("worker.job.active", scheduler, ThreadPoolTaskScheduler::getActiveCount)
+                .description("Worker job runs in progress")
+                .tag("job", name)
+                .register(meterRegistry);
+    }
+
+    void start() {
+        for (int lane = 0; lane < parallelism; lane++) {
+            int index = lane;
+            scheduler.scheduleWithFixedDelay(() -> run(index), fixedDelay);
+        }
+        logger.info("Started worker job '{}' with {} lane(s) every {}ms.", name, parallelism, fixedDelay.toMillis());
+    }
+
+    void stop() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Runs every lane once more after {@code delay}, unless a lane already has an early run pending.
+     *
+     * @return whether any lane accepted the request.
+     */
+    boolean requestRun(Duration delay) {
+        boolean accepted = false;
+        for (int lane = 0; lane < parallelism; lane++) {
+            accepted |= requestRun(lane, delay);
+        }
+        return accepted;
+    }
+
+    private synchronized boolean requestRun(int lane, Duration delay) {
+        Instant at = Instant.now().plus(delay);
+        if (earlyRunAt[lane] != null && !at.isBefore(earlyRunAt[lane])) {
+            return false;
+        }
+        // A sooner request replaces the pending one, e.g. new work arriving while a run waits for a refill.
+        if (earlyRunTask[lane] != null) {
+            earlyRunTask[lane].cancel(false);
+        }
+        earlyRunAt[lane] = at;
+        earlyRunTask[lane] = scheduler.schedule(() -> {
+            // Clear before running so that requests made during the run trigger another one.
+            clearEarlyRun(lane, at);
+            run(lane);
+        }, at);
+        return true;
+    }
+
+    private synchronized void clearEarlyRun(int lane, Instant at) {
+        if (at.equals(earlyRunAt[lane])) {
+            earlyRunAt[lane] = null;
+            earlyRunTask[lane] = null;
+        }
+    }
+
+    private void run(int lane) {
+        if (!running[lane].compareAndSet(false, true)) {
+            missedRun[lane].set(true);
+            // The busy run may have ended between the two, without seeing the missed run.
+            if (!running[lane].compareAndSet(false, true)) {
+                return;
+            }
+            missedRun[lane].set(false);
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            body.apply(ClaimPartition.lane(lane, parallelism))
+                    .ifPresent(delay -> requestRun(lane, delay));
+        } catch (Exception e) {
+            logger.error("Run of worker job '{}' (lane {}) failed.", name, lane, e);
+        } finally {
+            sample.stop(runTimer);
+            running[lane].set(false);
+        }
+        if (missedRun[lane].getAndSet(false)) {
+            requestRun(lane, Duration.ZERO);
+        }
+    }
+}
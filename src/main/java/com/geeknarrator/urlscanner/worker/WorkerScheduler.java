@@ -0,0 +1,81 @@
+package com.geeknarrator.urlscanner.worker;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Runs the submission and result jobs of {@link UrlScanWorker}, each on its own pool with its own
+ * size and number of partition lanes, so that the two scale independently and a slow run of one
+ * never delays the other. Lanes only claim from the partitions this node owns; a third job keeps
+ * that ownership up to date through {@link PartitionOwnershipService#heartbeat()}.
+ */
+@Component
+public class WorkerScheduler {
+
+    private final PartitionOwnershipService partitionOwnership;
+    private final WorkerJob submissionJob;
+    private final WorkerJob resultJob;
+    private final WorkerJob partitionJob;
+
+    public WorkerScheduler(UrlScanWorker urlScanWorker,
+                           PartitionOwnershipService partitionOwnership,
+                           MeterRegistry meterRegistry,
+                           @Value("${worker.submission.delay-ms:60000}") long submissionDelayMs,
+                           @Value("${worker.submission.pool-size:2}") int submissionPoolSize,
+                           @Value("${worker.submission.parallelism:1}") int submissionParallelism,
+                           @Value("${worker.result.delay-ms:15000}") long resultDelayMs,
+                           @Value("${worker.result.pool-size:2}") int resultPoolSize,
+                           @Value("${worker.result.parallelism:1}") int resultParallelism,
+                           @Value("${worker.partitions.heartbeat-ms:10000}") long heartbeatMs) {
+        this.partitionOwnership = partitionOwnership;
+        this.submissionJob = new WorkerJob("submission", submissionPoolSize, submissionParallelism,
+                Duration.ofMillis(submissionDelayMs), lane -> runOwned(lane, urlScanWorker::processSubmittedScans), meterRegistry);
+        this.resultJob = new WorkerJob("result", resultPoolSize, resultParallelism,
+                Duration.ofMillis(resultDelayMs), lane -> runOwned(lane, urlScanWorker::checkProcessingScans), meterRegistry);
+        this.partitionJob = new WorkerJob("partitions", 1, 1, Duration.ofMillis(heartbeatMs), lane -> {
+            if (partitionOwnership.heartbeat()) {
+                // Newly taken partitions may have a backlog; don't leave it for the next poll.
+                submissionJob.requestRun(Duration.ZERO);
+                resultJob.requestRun(Duration.ZERO);
+            }
+            return Optional.empty();
+        }, meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        partitionJob.start();
+        submissionJob.start();
+        resultJob.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        submissionJob.stop();
+        resultJob.stop();
+        partitionJob.stop();
+        partitionOwnership.leave();
+    }
+
+    /**
+     * Runs the submission job on every lane as soon as a thread is free, e.g. because new scans were
+     * inserted. Requests made while a run is already pending are merged into it.
+     *
+     * @return whether a new run was queued.
+     */
+    public boolean requestSubmissionRun() {
+        return submissionJob.requestRun(Duration.ZERO);
+    }
+
+    private Optional<Duration> runOwned(ClaimPartition lane, Function<ClaimPartition, Optional<Duration>> job) {
+        return partitionOwnership.restrict(lane).flatMap(job);
+    }
+}
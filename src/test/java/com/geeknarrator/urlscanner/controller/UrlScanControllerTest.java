@@ -1,9 +1,22 @@
 package com.geeknarrator.urlscanner.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.geeknarrator.urlscanner.entity.ScanResult;
+import com.geeknarrator.urlscanner.entity.ScanSummary;
 import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.entity.User;
+import com.geeknarrator.urlscanner.repository.ScanListItem;
+import com.geeknarrator.urlscanner.repository.StoredResult;
 import com.geeknarrator.urlscanner.repository.UrlScanRepository;
 import com.geeknarrator.urlscanner.security.SecurityUtils;
+import com.geeknarrator.urlscanner.service.SubmissionSingleFlight;
+import com.geeknarrator.urlscanner.service.admission.AdmissionRejectedException;
+import com.geeknarrator.urlscanner.service.admission.ScanAdmissionService;
+import com.geeknarrator.urlscanner.service.cache.InMemorySharedResultStore;
+import com.geeknarrator.urlscanner.service.cache.RecentUrlFilter;
+import com.geeknarrator.urlscanner.service.cache.ScanResultCache;
+import com.geeknarrator.urlscanner.service.storage.ResultCodec;
+import com.geeknarrator.urlscanner.service.storage.ScanResultStorage;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,23 +26,28 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -39,9 +57,22 @@ class UrlScanControllerTest {
     @Mock
     private UrlScanRepository urlScanRepository;
 
+    @Mock
+    private ScanAdmissionService scanAdmissionService;
+
+    @Mock
+    private SubmissionSingleFlight submissionSingleFlight;
+
+    @Mock
+    private RecentUrlFilter recentUrlFilter;
+
+    @Mock
+    private ScanResultStorage scanResultStorage;
+
     @InjectMocks
     private UrlScanController urlScanController;
 
+    private ScanResultCache scanResultCache;
     private MockMvc mockMvc;
     private ObjectMapper objectMapper;
 
@@ -49,9 +80,15 @@ class UrlScanControllerTest {
     void setUp() {
         // Provide a simple MeterRegistry for the unit test
         MeterRegistry meterRegistry = new SimpleMeterRegistry();
-        urlScanController = new UrlScanController(urlScanRepository, meterRegistry);
+        scanResultCache = new ScanResultCache(meterRegistry, new InMemorySharedResultStore(1000), 24, true, 64);
+        urlScanController = new UrlScanController(urlScanRepository, meterRegistry, scanAdmissionService, submissionSingleFlight,
+                scanResultCache, recentUrlFilter, scanResultStorage);
+        lenient().when(recentUrlFilter.mightHaveBeenScanned(any())).thenReturn(true);
+        lenient().when(submissionSingleFlight.execute(any(), any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(2).get());
 
         mockMvc = MockMvcBuilders.standaloneSetup(urlScanController)
+                .setControllerAdvice(new GlobalExceptionHandler())
                 .setCustomArgumentResolvers(new PageableHandlerMethodArgumentResolver())
                 .build();
         objectMapper = new ObjectMapper();
@@ -67,9 +104,9 @@ class UrlScanControllerTest {
         savedScan.setId(1L);
 
         try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
-            securityUtils.when(SecurityUtils::getCurrentUserId).thenReturn(1L);
-            when(urlScanRepository.findFirstByUserIdAndUrlAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
-            when(urlScanRepository.findFirstByUrlAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
+            securityUtils.when(SecurityUtils::getCurrentUser).thenReturn(createUser(1L));
+            when(urlScanRepository.findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
+            when(urlScanRepository.findFirstByUrlHashAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
             when(urlScanRepository.save(any(UrlScan.class))).thenReturn(savedScan);
 
             // When & Then
@@ -86,6 +123,197 @@ class UrlScanControllerTest {
         }
     }
 
+    @Test
+    void createScan_LocalCacheHitSkipsGlobalDatabaseLookup() throws Exception {
+        // Given
+        UrlScanController.CreateScanRequest request = new UrlScanController.CreateScanRequest();
+        request.setUrl("https://EXAMPLE.com/");
+        UrlScan done = createUrlScan(7L, "https://example.com", 2L);
+        done.setStatus(UrlScan.ScanStatus.DONE);
+        done.setExternalScanId("ext-7");
+        done.setResultDocument(new ScanResult("hash-7", ResultCodec.encode("{\"verdict\":\"clean\"}")));
+        done.setSummary(summary(false, 0));
+        scanResultCache.put(done);
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUser).thenReturn(createUser(1L));
+            when(urlScanRepository.findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
+            when(scanResultStorage.lockReference("hash-7")).thenReturn(Optional.of(done.getResultDocument()));
+            when(urlScanRepository.save(any(UrlScan.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+            // When & Then
+            mockMvc.perform(post("/api/scans")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.status").value("DONE"))
+                    .andExpect(jsonPath("$.externalScanId").value("ext-7"))
+                    .andExpect(jsonPath("$.summary.malicious").value(false))
+                    .andExpect(jsonPath("$.result").doesNotExist());
+
+            verify(urlScanRepository, never()).findFirstByUrlHashAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any());
+            verifyNoInteractions(scanAdmissionService);
+        }
+    }
+
+    @Test
+    void createScan_UserResubmittingACachedUrlGetsTheirOwnScan() throws Exception {
+        // Given - the user's own scan is done and its result is cached
+        UrlScanController.CreateScanRequest request = new UrlScanController.CreateScanRequest();
+        request.setUrl("https://example.com");
+        UrlScan own = createUrlScan(7L, "https://example.com", 1L);
+        own.setStatus(UrlScan.ScanStatus.DONE);
+        own.setResultDocument(new ScanResult("hash-7", ResultCodec.encode("{\"verdict\":\"clean\"}")));
+        own.setSummary(summary(false, 0));
+        scanResultCache.put(own);
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUser).thenReturn(createUser(1L));
+            when(urlScanRepository.findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.of(own));
+
+            // When & Then
+            mockMvc.perform(post("/api/scans")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.id").value(7L));
+
+            verify(urlScanRepository, never()).save(any());
+            verifyNoInteractions(scanResultStorage, scanAdmissionService);
+        }
+    }
+
+    @Test
+    void createScan_CacheHitWhoseDocumentWasCollectedFallsBackToTheDatabase() throws Exception {
+        // Given - the cached scan's document has since been garbage collected
+        UrlScanController.CreateScanRequest request = new UrlScanController.CreateScanRequest();
+        request.setUrl("https://example.com");
+        UrlScan done = createUrlScan(7L, "https://example.com", 2L);
+        done.setStatus(UrlScan.ScanStatus.DONE);
+        done.setResultDocument(new ScanResult("hash-7", ResultCodec.encode("{\"verdict\":\"clean\"}")));
+        done.setSummary(summary(false, 0));
+        scanResultCache.put(done);
+        UrlScan savedScan = createUrlScan(8L, "https://example.com", 1L);
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUser).thenReturn(createUser(1L));
+            when(scanResultStorage.lockReference("hash-7")).thenReturn(Optional.empty());
+            when(urlScanRepository.findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
+            when(urlScanRepository.findFirstByUrlHashAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
+            when(urlScanRepository.save(any(UrlScan.class))).thenReturn(savedScan);
+
+            // When & Then - submitted anew instead of pointing at a missing document
+            mockMvc.perform(post("/api/scans")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.id").value(8L))
+                    .andExpect(jsonPath("$.status").value("SUBMITTED"));
+
+            assertThat(scanResultCache.get(done.getUrlHash())).isEmpty();
+            verify(scanAdmissionService).admit(any(), any());
+        }
+    }
+
+    @Test
+    void createScan_NeverScannedUrlSkipsGlobalLookup() throws Exception {
+        // Given
+        UrlScanController.CreateScanRequest request = new UrlScanController.CreateScanRequest();
+        request.setUrl("https://new.example.com");
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUser).thenReturn(createUser(1L));
+            when(recentUrlFilter.mightHaveBeenScanned(any())).thenReturn(false);
+            when(urlScanRepository.findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
+            when(urlScanRepository.save(any(UrlScan.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+            // When & Then
+            mockMvc.perform(post("/api/scans")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.status").value("SUBMITTED"));
+
+            verify(urlScanRepository).findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any());
+            verify(urlScanRepository, never()).findFirstByUrlHashAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any());
+            verify(recentUrlFilter).record(any(), any());
+        }
+    }
+
+    @Test
+    void createScan_UserDedupDoesNotTrustTheFilter() throws Exception {
+        // Given - the user's scan was inserted on another node and has not reached this node's filter
+        UrlScanController.CreateScanRequest request = new UrlScanController.CreateScanRequest();
+        request.setUrl("https://example.com");
+        UrlScan existing = createUrlScan(5L, "https://example.com", 1L);
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUser).thenReturn(createUser(1L));
+            when(urlScanRepository.findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.of(existing));
+
+            // When & Then
+            mockMvc.perform(post("/api/scans")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.id").value(5L));
+
+            verify(recentUrlFilter, never()).mightHaveBeenScanned(any());
+            verify(urlScanRepository, never()).save(any());
+            verifyNoInteractions(scanAdmissionService);
+        }
+    }
+
+    @Test
+    void createScan_RejectedWithRetryAfterWhenQueueIsFull() throws Exception {
+        // Given
+        UrlScanController.CreateScanRequest request = new UrlScanController.CreateScanRequest();
+        request.setUrl("https://example.com");
+        request.setPriority(UrlScan.Priority.BULK);
+        User user = createUser(1L);
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUser).thenReturn(user);
+            when(urlScanRepository.findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
+            when(urlScanRepository.findFirstByUrlHashAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
+            doThrow(new AdmissionRejectedException(AdmissionRejectedException.Reason.SYSTEM_BACKLOG, Duration.ofSeconds(42), "The scan queue is full."))
+                    .when(scanAdmissionService).admit(user, UrlScan.Priority.BULK);
+
+            // When & Then
+            mockMvc.perform(post("/api/scans")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "42"))
+                    .andExpect(jsonPath("$.message").value("The scan queue is full."));
+
+            verify(urlScanRepository, never()).save(any());
+        }
+    }
+
+    @Test
+    void createScan_UserOverBacklogGets429() throws Exception {
+        // Given
+        UrlScanController.CreateScanRequest request = new UrlScanController.CreateScanRequest();
+        request.setUrl("https://example.com");
+        User user = createUser(1L);
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUser).thenReturn(user);
+            when(urlScanRepository.findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
+            when(urlScanRepository.findFirstByUrlHashAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(any(), any(), any())).thenReturn(Optional.empty());
+            doThrow(new AdmissionRejectedException(AdmissionRejectedException.Reason.USER_BACKLOG, Duration.ofSeconds(5), "Too many scans waiting."))
+                    .when(scanAdmissionService).admit(user, UrlScan.Priority.INTERACTIVE);
+
+            // When & Then
+            mockMvc.perform(post("/api/scans")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isTooManyRequests())
+                    .andExpect(header().string("Retry-After", "5"));
+        }
+    }
+
     @Test
     void createScan_InvalidUrl() throws Exception {
         // Given
@@ -119,15 +347,17 @@ class UrlScanControllerTest {
     @Test
     void getAllScans_Success() throws Exception {
         // Given
-        List<UrlScan> scans = Arrays.asList(
-                createUrlScan(1L, "https://example1.com", 1L),
-                createUrlScan(2L, "https://example2.com", 1L)
+        UrlScan done = createUrlScan(1L, "https://example1.com", 1L);
+        done.setStatus(UrlScan.ScanStatus.DONE);
+        done.setSummary(summary(false, 0));
+        List<ScanListItem> scans = Arrays.asList(
+                listItem(done),
+                listItem(createUrlScan(2L, "https://example2.com", 1L))
         );
-        Page<UrlScan> page = new PageImpl<>(scans, PageRequest.of(0, 10), 2);
 
         try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
             securityUtils.when(SecurityUtils::getCurrentUserId).thenReturn(1L);
-            when(urlScanRepository.findByUserId(eq(1L), any(Pageable.class))).thenReturn(page);
+            when(urlScanRepository.findListItemsByUserIdOrderByCreatedAtDescIdDesc(eq(1L), any(Pageable.class))).thenReturn(scans);
 
             // When & Then
             mockMvc.perform(get("/api/scans"))
@@ -136,42 +366,65 @@ class UrlScanControllerTest {
                     .andExpect(jsonPath("$.content.length()").value(2))
                     .andExpect(jsonPath("$.content[0].id").value(1L))
                     .andExpect(jsonPath("$.content[0].url").value("https://example1.com"))
+                    .andExpect(jsonPath("$.content[0].summary.malicious").value(false))
+                    .andExpect(jsonPath("$.content[0].result").doesNotExist())
                     .andExpect(jsonPath("$.content[1].id").value(2L))
                     .andExpect(jsonPath("$.content[1].url").value("https://example2.com"))
-                    .andExpect(jsonPath("$.totalElements").value(2))
-                    .andExpect(jsonPath("$.totalPages").value(1))
-                    .andExpect(jsonPath("$.size").value(10))
-                    .andExpect(jsonPath("$.number").value(0));
+                    .andExpect(jsonPath("$.nextCursor").doesNotExist());
 
-            verify(urlScanRepository).findByUserId(eq(1L), any(Pageable.class));
+            // One row more than the default page size, to see whether there is a next page
+            verify(urlScanRepository).findListItemsByUserIdOrderByCreatedAtDescIdDesc(1L, PageRequest.ofSize(21));
         }
     }
 
     @Test
-    void getAllScans_WithPagination() throws Exception {
-        // Given
-        List<UrlScan> scans = Arrays.asList(
-                createUrlScan(3L, "https://example3.com", 1L),
-                createUrlScan(4L, "https://example4.com", 1L)
-        );
-        Page<UrlScan> page = new PageImpl<>(scans, PageRequest.of(1, 2), 10);
+    void getAllScans_WithCursor() throws Exception {
+        // Given - the first page ends at scan 4; the query returns one scan more than asked for
+        LocalDateTime start = LocalDateTime.of(2024, 1, 15, 10, 30);
+        UrlScan newer = createUrlScan(5L, "https://example5.com", 1L);
+        newer.setCreatedAt(start.plusSeconds(2));
+        UrlScan last = createUrlScan(4L, "https://example4.com", 1L);
+        last.setCreatedAt(start.plusSeconds(1));
+        UrlScan beyond = createUrlScan(3L, "https://example3.com", 1L);
+        beyond.setCreatedAt(start);
 
         try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
             securityUtils.when(SecurityUtils::getCurrentUserId).thenReturn(1L);
-            when(urlScanRepository.findByUserId(eq(1L), any(Pageable.class))).thenReturn(page);
+            when(urlScanRepository.findListItemsByUserIdOrderByCreatedAtDescIdDesc(eq(1L), any(Pageable.class)))
+                    .thenReturn(List.of(listItem(newer), listItem(last), listItem(beyond)));
+            when(urlScanRepository.findListItemsBefore(eq(1L), eq(last.getCreatedAt()), eq(4L), any(Pageable.class)))
+                    .thenReturn(List.of(listItem(beyond)));
 
-            // When & Then
-            mockMvc.perform(get("/api/scans")
-                            .param("page", "1")
-                            .param("size", "2"))
+            // When
+            String firstPage = mockMvc.perform(get("/api/scans").param("size", "2"))
                     .andExpect(status().isOk())
                     .andExpect(jsonPath("$.content.length()").value(2))
-                    .andExpect(jsonPath("$.totalElements").value(10))
-                    .andExpect(jsonPath("$.totalPages").value(5))
-                    .andExpect(jsonPath("$.size").value(2))
-                    .andExpect(jsonPath("$.number").value(1));
+                    .andExpect(jsonPath("$.content[1].id").value(4L))
+                    .andExpect(jsonPath("$.nextCursor").isString())
+                    .andReturn().getResponse().getContentAsString();
+            String cursor = objectMapper.readTree(firstPage).get("nextCursor").asText();
+
+            // Then
+            mockMvc.perform(get("/api/scans").param("size", "2").param("cursor", cursor))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.content.length()").value(1))
+                    .andExpect(jsonPath("$.content[0].id").value(3L))
+                    .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+            verify(urlScanRepository, never()).count();
+        }
+    }
+
+    @Test
+    void getAllScans_RejectsInvalidCursor() throws Exception {
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUserId).thenReturn(1L);
+
+            // When & Then
+            mockMvc.perform(get("/api/scans").param("cursor", "not-a-cursor"))
+                    .andExpect(status().isBadRequest());
 
-            verify(urlScanRepository).findByUserId(eq(1L), any(Pageable.class));
+            verify(urlScanRepository, never()).findListItemsBefore(any(), any(), any(), any());
         }
     }
 
@@ -195,6 +448,89 @@ class UrlScanControllerTest {
         }
     }
 
+    @Test
+    void getScanById_ReturnsSummaryWithoutResultByDefault() throws Exception {
+        // Given
+        ScanResult document = mock(ScanResult.class);
+        UrlScan scan = createUrlScan(1L, "https://example.com", 1L);
+        scan.setStatus(UrlScan.ScanStatus.DONE);
+        scan.setResultDocument(document);
+        scan.setSummary(summary(true, 100));
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUserId).thenReturn(1L);
+            when(urlScanRepository.findByIdAndUserId(1L, 1L)).thenReturn(Optional.of(scan));
+
+            // When & Then
+            mockMvc.perform(get("/api/scans/1"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.id").value(1L))
+                    .andExpect(jsonPath("$.summary.malicious").value(true))
+                    .andExpect(jsonPath("$.summary.score").value(100))
+                    .andExpect(jsonPath("$.result").doesNotExist());
+
+            verifyNoInteractions(document);
+        }
+    }
+
+    @Test
+    void getScanById_EmbedsStoredResultAsJsonWhenAsked() throws Exception {
+        // Given
+        UrlScan scan = createUrlScan(1L, "https://example.com", 1L);
+        scan.setStatus(UrlScan.ScanStatus.DONE);
+        scan.setResultDocument(new ScanResult("hash-1", ResultCodec.encode("{\"verdicts\":{\"overall\":{\"malicious\":false,\"score\":0}}}")));
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUserId).thenReturn(1L);
+            when(urlScanRepository.findByIdAndUserId(1L, 1L)).thenReturn(Optional.of(scan));
+
+            // When & Then - the document is an object in the response, not an escaped string
+            mockMvc.perform(get("/api/scans/1").param("include", "result"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.id").value(1L))
+                    .andExpect(jsonPath("$.result.verdicts.overall.malicious").value(false))
+                    .andExpect(jsonPath("$.result.verdicts.overall.score").value(0));
+        }
+    }
+
+    @Test
+    void getScanResult_StreamsStoredDocument() throws Exception {
+        // Given
+        String document = "{\"verdicts\":{\"overall\":{\"malicious\":true}}}";
+        StoredResult stored = mock(StoredResult.class);
+        when(stored.getData()).thenReturn(ResultCodec.encode(document));
+        when(stored.open()).thenCallRealMethod();
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUserId).thenReturn(1L);
+            when(urlScanRepository.findStoredResult(1L, 1L)).thenReturn(Optional.of(stored));
+
+            // When & Then
+            mockMvc.perform(get("/api/scans/1/result"))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(content().string(document));
+
+            verify(urlScanRepository, never()).findByIdAndUserId(any(), any());
+        }
+    }
+
+    @Test
+    void getScanResult_NotFoundWhileScanHasNoResult() throws Exception {
+        // Given
+        StoredResult stored = mock(StoredResult.class);
+        when(stored.open()).thenCallRealMethod();
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUserId).thenReturn(1L);
+            when(urlScanRepository.findStoredResult(1L, 1L)).thenReturn(Optional.of(stored));
+
+            // When & Then
+            mockMvc.perform(get("/api/scans/1/result"))
+                    .andExpect(status().isNotFound());
+        }
+    }
+
     @Test
     void getScanById_NotFound() throws Exception {
         // Given
@@ -243,6 +579,26 @@ class UrlScanControllerTest {
         }
     }
 
+    @Test
+    void deleteScan_InvalidatesCachedResult() throws Exception {
+        // Given
+        UrlScan scan = createUrlScan(1L, "https://example.com", 1L);
+        scan.setStatus(UrlScan.ScanStatus.DONE);
+        scanResultCache.put(scan);
+
+        try (MockedStatic<SecurityUtils> securityUtils = mockStatic(SecurityUtils.class)) {
+            securityUtils.when(SecurityUtils::getCurrentUserId).thenReturn(1L);
+            when(urlScanRepository.findByIdAndUserId(1L, 1L)).thenReturn(Optional.of(scan));
+
+            // When
+            mockMvc.perform(delete("/api/scans/1"))
+                    .andExpect(status().isNoContent());
+
+            // Then
+            assertThat(scanResultCache.get(scan.getUrlHash())).isEmpty();
+        }
+    }
+
     @Test
     void deleteScan_NotFound() throws Exception {
         // Given
@@ -280,4 +636,21 @@ class UrlScanControllerTest {
         scan.setId(id);
         return scan;
     }
+
+    private static ScanListItem listItem(UrlScan scan) {
+        return new SpelAwareProxyProjectionFactory().createProjection(ScanListItem.class, scan);
+    }
+
+    private static ScanSummary summary(boolean malicious, int score) {
+        ScanSummary summary = new ScanSummary();
+        summary.setMalicious(malicious);
+        summary.setScore(score);
+        return summary;
+    }
+
+    private User createUser(Long id) {
+        User user = new User("user" + id + "@test.com", "password", "Test", "User");
+        user.setId(id);
+        return user;
+    }
 }
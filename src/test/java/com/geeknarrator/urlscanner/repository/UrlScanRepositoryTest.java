@@ -1,18 +1,24 @@
 package com.geeknarrator.urlscanner.repository;
 
+import com.geeknarrator.urlscanner.entity.ScanResult;
+import com.geeknarrator.urlscanner.entity.ScanSummary;
 import com.geeknarrator.urlscanner.entity.UrlScan;
 import com.geeknarrator.urlscanner.entity.User;
 import com.geeknarrator.urlscanner.integration.BaseIntegrationTest;
+import com.geeknarrator.urlscanner.service.UrlNormalizer;
+import com.geeknarrator.urlscanner.service.storage.ResultCodec;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @Transactional
 class UrlScanRepositoryTest extends BaseIntegrationTest {
@@ -23,12 +29,19 @@ class UrlScanRepositoryTest extends BaseIntegrationTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private ScanResultRepository scanResultRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
     private User user1, user2, user3;
 
     @BeforeEach
     void setUp() {
         // Clean up tables before each test
         urlScanRepository.deleteAll();
+        scanResultRepository.deleteAll();
         userRepository.deleteAll();
 
         // Create and persist users
@@ -38,51 +51,371 @@ class UrlScanRepositoryTest extends BaseIntegrationTest {
     }
 
     @Test
-    void whenFindDistinctUserIdsWithStatus_thenReturnDistinctUserIds() {
+    void whenFindClaimCandidates_thenOnlyReturnScansInRequestedStatus() {
         // given
-        urlScanRepository.save(new UrlScan("https://example.com", user1.getId()));
-        urlScanRepository.save(new UrlScan("https://example.org", user1.getId()));
-        UrlScan user2Scan = new UrlScan("https://example.net", user2.getId());
-        user2Scan.setStatus(UrlScan.ScanStatus.PROCESSING);
-        urlScanRepository.save(user2Scan);
-        urlScanRepository.save(new UrlScan("https://example.io", user3.getId()));
+        UrlScan submitted = urlScanRepository.save(new UrlScan("https://example.com", user1.getId()));
+        UrlScan processing = new UrlScan("https://example.net", user2.getId());
+        processing.setStatus(UrlScan.ScanStatus.PROCESSING);
+        urlScanRepository.save(processing);
 
         // when
-        List<Long> userIds = urlScanRepository.findDistinctUserIdsWithStatus(UrlScan.ScanStatus.SUBMITTED);
+        List<ClaimCandidate> candidates = urlScanRepository.findClaimCandidates(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, LocalDateTime.now(), 5, 10, 1, List.of(0));
 
         // then
-        assertThat(userIds).hasSize(2).containsExactlyInAnyOrder(user1.getId(), user3.getId());
+        assertThat(candidates).extracting(ClaimCandidate::getId).containsExactly(submitted.getId());
     }
 
     @Test
-    void whenFindAndLockByUserIdAndStatus_thenReturnCorrectPageForUser() {
+    void whenFindClaimCandidates_thenInterleaveUsersOldestFirstUpToPerUserLimit() {
+        // given - user1 has a large backlog queued before user2 and user3 submitted anything
+        LocalDateTime start = LocalDateTime.now().minusHours(1);
+        for (int i = 0; i < 10; i++) {
+            saveSubmitted("https://heavy-" + i + ".com", user1, start.plusSeconds(i));
+        }
+        saveSubmitted("https://b1.com", user2, start.plusSeconds(20));
+        saveSubmitted("https://b2.com", user2, start.plusSeconds(21));
+        saveSubmitted("https://b3.com", user2, start.plusSeconds(22));
+        saveSubmitted("https://c1.com", user3, start.plusSeconds(30));
+
+        // when - at most three scans per user
+        List<ClaimCandidate> candidates = urlScanRepository.findClaimCandidates(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, LocalDateTime.now(), 3, 20, 1, List.of(0));
+
+        // then - every user's oldest scan comes before anyone's second
+        assertThat(candidates).hasSize(7);
+        assertThat(candidates.subList(0, 3)).extracting(ClaimCandidate::getUserId)
+                .containsExactly(user1.getId(), user2.getId(), user3.getId());
+        assertThat(candidates).filteredOn(candidate -> candidate.getUserId().equals(user1.getId())).hasSize(3);
+        assertThat(candidates).filteredOn(candidate -> candidate.getUserId().equals(user2.getId())).hasSize(3);
+    }
+
+    @Test
+    void whenFindClaimCandidates_thenIncludeOwnerTier() {
         // given
+        user2.setTier(User.Tier.PRO);
+        userRepository.save(user2);
         urlScanRepository.save(new UrlScan("https://a.com", user1.getId()));
-        urlScanRepository.save(new UrlScan("https://b.com", user1.getId()));
-        urlScanRepository.save(new UrlScan("https://c.com", user1.getId()));
-        urlScanRepository.save(new UrlScan("https://d.com", user2.getId()));
+        urlScanRepository.save(new UrlScan("https://b.com", user2.getId()));
 
         // when
-        Page<UrlScan> resultPage = urlScanRepository.findAndLockByUserIdAndStatus(user1.getId(), UrlScan.ScanStatus.SUBMITTED, PageRequest.of(0, 2));
+        List<ClaimCandidate> candidates = urlScanRepository.findClaimCandidates(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, LocalDateTime.now(), 5, 10, 1, List.of(0));
 
         // then
-        assertThat(resultPage.getTotalElements()).isEqualTo(3);
-        assertThat(resultPage.getContent()).hasSize(2);
-        assertThat(resultPage.getContent()).allMatch(scan -> scan.getUserId().equals(user1.getId()));
+        assertThat(candidates).extracting(ClaimCandidate::getUserId, ClaimCandidate::getTier)
+                .containsExactlyInAnyOrder(tuple(user1.getId(), "FREE"), tuple(user2.getId(), "PRO"));
     }
 
     @Test
-    void whenFindAndLockByStatus_thenReturnPagedResult() {
+    void whenFindClaimCandidates_thenSkipRowsUnderActiveLease() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        UrlScan free = urlScanRepository.save(new UrlScan("https://a.com", user1.getId()));
+        UrlScan leased = new UrlScan("https://b.com", user1.getId());
+        leased.setLeaseOwner("other-node");
+        leased.setLeaseExpiresAt(now.plusMinutes(5));
+        urlScanRepository.save(leased);
+        UrlScan expired = new UrlScan("https://c.com", user2.getId());
+        expired.setLeaseOwner("dead-node");
+        expired.setLeaseExpiresAt(now.minusMinutes(1));
+        expired = urlScanRepository.save(expired);
+
+        // when
+        List<ClaimCandidate> candidates = urlScanRepository.findClaimCandidates(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, now, 5, 10, 1, List.of(0));
+
+        // then
+        assertThat(candidates).extracting(ClaimCandidate::getId).containsExactlyInAnyOrder(free.getId(), expired.getId());
+    }
+
+    @Test
+    void whenFindClaimCandidates_thenSkipScansNotYetDueForCheck() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        UrlScan due = new UrlScan("https://a.com", user1.getId());
+        due.setStatus(UrlScan.ScanStatus.PROCESSING);
+        due.setNextCheckAt(now.minusSeconds(1));
+        due = urlScanRepository.save(due);
+        UrlScan notDue = new UrlScan("https://b.com", user2.getId());
+        notDue.setStatus(UrlScan.ScanStatus.PROCESSING);
+        notDue.setNextCheckAt(now.plusMinutes(1));
+        urlScanRepository.save(notDue);
+
+        // when
+        List<ClaimCandidate> candidates = urlScanRepository.findClaimCandidates(UrlScan.ScanStatus.PROCESSING, UrlScan.Priority.INTERACTIVE, now, 5, 10, 1, List.of(0));
+
+        // then
+        assertThat(candidates).extracting(ClaimCandidate::getId).containsExactly(due.getId());
+    }
+
+    @Test
+    void whenFindClaimCandidatesForPartition_thenOnlyReturnThatPartitionsUsers() {
         // given
         urlScanRepository.save(new UrlScan("https://a.com", user1.getId()));
+        urlScanRepository.save(new UrlScan("https://b.com", user2.getId()));
+        urlScanRepository.save(new UrlScan("https://c.com", user3.getId()));
+        int partition = (int) (user2.getId() % 3);
+
+        // when
+        List<ClaimCandidate> candidates = urlScanRepository.findClaimCandidates(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, LocalDateTime.now(), 5, 10, 3, List.of(partition));
+
+        // then - consecutive user IDs fall into different partitions
+        assertThat(candidates).extracting(ClaimCandidate::getUserId).containsExactly(user2.getId());
+    }
+
+    @Test
+    void whenFindClaimCandidatesForLane_thenOnlyReturnScansWithThatPriority() {
+        // given
+        UrlScan interactive = urlScanRepository.save(new UrlScan("https://a.com", user1.getId()));
+        UrlScan bulk = new UrlScan("https://b.com", user1.getId());
+        bulk.setPriority(UrlScan.Priority.BULK);
+        bulk = urlScanRepository.save(bulk);
+
+        // when
+        List<ClaimCandidate> interactiveCandidates = urlScanRepository.findClaimCandidates(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, LocalDateTime.now(), 5, 10, 1, List.of(0));
+        List<ClaimCandidate> bulkCandidates = urlScanRepository.findClaimCandidates(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.BULK, LocalDateTime.now(), 5, 10, 1, List.of(0));
+
+        // then
+        assertThat(interactiveCandidates).extracting(ClaimCandidate::getId).containsExactly(interactive.getId());
+        assertThat(bulkCandidates).extracting(ClaimCandidate::getId).containsExactly(bulk.getId());
+    }
+
+    @Test
+    void whenFindAndLockClaimableByIds_thenSkipRowsClaimedSinceSelection() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        UrlScan free = urlScanRepository.save(new UrlScan("https://a.com", user1.getId()));
+        UrlScan leased = new UrlScan("https://b.com", user2.getId());
+        leased.setLeaseOwner("other-node");
+        leased.setLeaseExpiresAt(now.plusMinutes(5));
+        leased = urlScanRepository.save(leased);
+
+        // when
+        List<UrlScan> claimed = urlScanRepository.findAndLockClaimableByIds(
+                List.of(free.getId(), leased.getId()), UrlScan.ScanStatus.SUBMITTED, now);
+
+        // then
+        assertThat(claimed).extracting(UrlScan::getId).containsExactly(free.getId());
+    }
+
+    @Test
+    void whenFindClaimCandidates_thenSkipFollowersOfALeaderStillWaitingForItsResult() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        UrlScan leader = saveProcessing("https://a.com", user1, "uuid-a", now.plusMinutes(1));
+        UrlScan follower = saveProcessing("https://a.com", user2, "uuid-a", now.minusSeconds(1));
+        follower.setLeaderScanId(leader.getId());
+        urlScanRepository.save(follower);
+        UrlScan orphan = saveProcessing("https://b.com", user3, "uuid-b", now.minusSeconds(1));
+        orphan.setLeaderScanId(Long.MAX_VALUE);
+        urlScanRepository.save(orphan);
+
+        // when
+        List<ClaimCandidate> candidates = urlScanRepository.findClaimCandidates(UrlScan.ScanStatus.PROCESSING, UrlScan.Priority.INTERACTIVE, now, 5, 10, 1, List.of(0));
+        List<UrlScan> locked = urlScanRepository.findAndLockClaimableByIds(List.of(follower.getId(), orphan.getId()), UrlScan.ScanStatus.PROCESSING, now);
+
+        // then - a follower whose leader is gone is polled on its own
+        assertThat(candidates).extracting(ClaimCandidate::getId).containsExactly(orphan.getId());
+        assertThat(locked).extracting(UrlScan::getId).containsExactly(orphan.getId());
+    }
+
+    @Test
+    void whenFindInFlightLeaders_thenReturnOneUnfollowedProcessingScanPerUrl() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        UrlScan leader = saveProcessing("https://a.com", user1, "uuid-a", now);
+        UrlScan follower = saveProcessing("https://a.com", user2, "uuid-a", now);
+        follower.setLeaderScanId(leader.getId());
+        urlScanRepository.save(follower);
         urlScanRepository.save(new UrlScan("https://b.com", user1.getId()));
-        urlScanRepository.save(new UrlScan("https://c.com", user2.getId()));
 
         // when
-        Page<UrlScan> resultPage = urlScanRepository.findAndLockByStatus(UrlScan.ScanStatus.SUBMITTED, PageRequest.of(0, 2));
+        List<UrlScan> leaders = urlScanRepository.findInFlightLeaders(List.of(leader.getUrlHash(), UrlNormalizer.hash("https://b.com")));
+
+        // then
+        assertThat(leaders).extracting(UrlScan::getId).containsExactly(leader.getId());
+    }
+
+    @Test
+    void whenAttachFollowers_thenOnlyUnleasedQueuedScansOfTheSameUrlFollow() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        UrlScan leader = saveProcessing("https://a.com", user1, "uuid-a", now.plusSeconds(15));
+        UrlScan queued = urlScanRepository.save(new UrlScan("https://A.com/", user2.getId()));
+        UrlScan leased = new UrlScan("https://a.com", user3.getId());
+        leased.setLeaseOwner("other-node");
+        leased.setLeaseExpiresAt(now.plusMinutes(5));
+        leased = urlScanRepository.save(leased);
+        UrlScan otherUrl = urlScanRepository.save(new UrlScan("https://b.com", user2.getId()));
+
+        // when
+        int attached = urlScanRepository.attachFollowers(leader.getId(), leader.getUrlHash(), "uuid-a", now.plusSeconds(15), now);
+        entityManager.clear();
 
         // then
-        assertThat(resultPage.getTotalElements()).isEqualTo(3);
-        assertThat(resultPage.getContent()).hasSize(2);
+        assertThat(attached).isEqualTo(1);
+        UrlScan follower = urlScanRepository.findById(queued.getId()).orElseThrow();
+        assertThat(follower.getStatus()).isEqualTo(UrlScan.ScanStatus.PROCESSING);
+        assertThat(follower.getExternalScanId()).isEqualTo("uuid-a");
+        assertThat(follower.getLeaderScanId()).isEqualTo(leader.getId());
+        assertThat(urlScanRepository.findById(leased.getId()).orElseThrow().getStatus()).isEqualTo(UrlScan.ScanStatus.SUBMITTED);
+        assertThat(urlScanRepository.findById(otherUrl.getId()).orElseThrow().getStatus()).isEqualTo(UrlScan.ScanStatus.SUBMITTED);
+    }
+
+    @Test
+    void whenCompleteFollowers_thenCopyLeaderOutcome() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        UrlScan leader = saveProcessing("https://a.com", user1, "uuid-a", now);
+        UrlScan follower = saveProcessing("https://a.com", user2, "uuid-a", now);
+        follower.setLeaderScanId(leader.getId());
+        urlScanRepository.save(follower);
+
+        scanResultRepository.insertIfAbsent("hash-clean", ResultCodec.encode("{\"verdict\":\"clean\"}"), now);
+        ScanSummary summary = new ScanSummary();
+        summary.setMalicious(false);
+        summary.setScore(-10);
+        summary.setCategories(List.of("search"));
+        summary.setDomain("a.com");
+        leader.setSummary(summary);
+        urlScanRepository.save(leader);
+
+        // when
+        int completed = urlScanRepository.completeFollowers(leader.getId(), UrlScan.ScanStatus.DONE, "hash-clean", null, now);
+        entityManager.clear();
+
+        // then
+        assertThat(completed).isEqualTo(1);
+        UrlScan done = urlScanRepository.findById(follower.getId()).orElseThrow();
+        assertThat(done.getStatus()).isEqualTo(UrlScan.ScanStatus.DONE);
+        assertThat(done.getResult()).isEqualTo("{\"verdict\":\"clean\"}");
+        assertThat(done.getSummary().getScore()).isEqualTo(-10);
+        assertThat(done.getSummary().getCategories()).containsExactly("search");
+        assertThat(done.getSummary().getDomain()).isEqualTo("a.com");
+        assertThat(done.getNextCheckAt()).isNull();
+    }
+
+    @Test
+    void whenDeleteUnreferenced_thenKeepDocumentsInUseOrTooYoung() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        scanResultRepository.insertIfAbsent("hash-used", ResultCodec.encode("{}"), now.minusDays(1));
+        scanResultRepository.insertIfAbsent("hash-orphan", ResultCodec.encode("[]"), now.minusDays(1));
+        scanResultRepository.insertIfAbsent("hash-young", ResultCodec.encode("{\"a\":1}"), now);
+        UrlScan scan = new UrlScan("https://a.com", user1.getId());
+        scan.setStatus(UrlScan.ScanStatus.DONE);
+        scan.setResultDocument(scanResultRepository.getReferenceById("hash-used"));
+        urlScanRepository.saveAndFlush(scan);
+
+        // when
+        int deleted = scanResultRepository.deleteUnreferenced(now.minusHours(1), 100);
+        entityManager.clear();
+
+        // then
+        assertThat(deleted).isEqualTo(1);
+        assertThat(scanResultRepository.findAll()).extracting(ScanResult::getContentHash)
+                .containsExactlyInAnyOrder("hash-used", "hash-young");
+    }
+
+    @Test
+    void whenFindListItemsByUserId_thenReturnOnlyThatUsersScansWithSummaries() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        scanResultRepository.insertIfAbsent("hash-big", ResultCodec.encode("{\"data\":\"" + "x".repeat(100_000) + "\"}"), now);
+        UrlScan done = new UrlScan("https://a.com", user1.getId());
+        done.setStatus(UrlScan.ScanStatus.DONE);
+        done.setResultDocument(scanResultRepository.getReferenceById("hash-big"));
+        ScanSummary summary = new ScanSummary();
+        summary.setScore(5);
+        done.setSummary(summary);
+        urlScanRepository.save(done);
+        urlScanRepository.save(new UrlScan("https://b.com", user2.getId()));
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        List<ScanListItem> items = urlScanRepository.findListItemsByUserIdOrderByCreatedAtDescIdDesc(user1.getId(), PageRequest.ofSize(10));
+
+        // then
+        assertThat(items).hasSize(1);
+        ScanListItem item = items.get(0);
+        assertThat(item.getUrl()).isEqualTo("https://a.com");
+        assertThat(item.getStatus()).isEqualTo(UrlScan.ScanStatus.DONE);
+        assertThat(item.getSummary().getScore()).isEqualTo(5);
+    }
+
+    @Test
+    void whenFindListItemsBefore_thenContinueAfterTheCursorIncludingScansCreatedInTheSameInstant() {
+        // given
+        LocalDateTime createdAt = LocalDateTime.of(2024, 1, 15, 10, 30);
+        UrlScan oldest = new UrlScan("https://a.com", user1.getId());
+        oldest.setCreatedAt(createdAt.minusMinutes(1));
+        urlScanRepository.save(oldest);
+        UrlScan tied1 = new UrlScan("https://b.com", user1.getId());
+        tied1.setCreatedAt(createdAt);
+        urlScanRepository.save(tied1);
+        UrlScan tied2 = new UrlScan("https://c.com", user1.getId());
+        tied2.setCreatedAt(createdAt);
+        urlScanRepository.save(tied2);
+        UrlScan otherUser = new UrlScan("https://d.com", user2.getId());
+        otherUser.setCreatedAt(createdAt.minusMinutes(2));
+        urlScanRepository.save(otherUser);
+        entityManager.flush();
+        entityManager.clear();
+
+        // when
+        List<ScanListItem> first = urlScanRepository.findListItemsByUserIdOrderByCreatedAtDescIdDesc(user1.getId(), PageRequest.ofSize(1));
+        ScanListItem last = first.get(0);
+        List<ScanListItem> rest = urlScanRepository.findListItemsBefore(user1.getId(), last.getCreatedAt(), last.getId(), PageRequest.ofSize(10));
+
+        // then
+        assertThat(first).extracting(ScanListItem::getId).containsExactly(tied2.getId());
+        assertThat(rest).extracting(ScanListItem::getId).containsExactly(tied1.getId(), oldest.getId());
+    }
+
+    @Test
+    void whenLoadingAScanWithoutUrlHash_thenHashItsUrl() {
+        // given - a row from before URL hashes were recorded
+        UrlScan scan = urlScanRepository.save(new UrlScan("https://Example.com", user1.getId()));
+        entityManager.flush();
+        entityManager.createNativeQuery("UPDATE url_scans SET url_hash = NULL WHERE id = :id")
+                .setParameter("id", scan.getId())
+                .executeUpdate();
+        entityManager.clear();
+
+        // when
+        UrlScan loaded = urlScanRepository.findById(scan.getId()).orElseThrow();
+
+        // then
+        assertThat(loaded.getUrlHash()).isEqualTo(UrlNormalizer.hash("https://example.com/"));
+    }
+
+    @Test
+    void whenFindStoredResult_thenReadDocumentOnlyForItsOwner() {
+        // given
+        scanResultRepository.insertIfAbsent("hash-a", ResultCodec.encode("{\"verdict\":\"clean\"}"), LocalDateTime.now());
+        UrlScan done = new UrlScan("https://a.com", user1.getId());
+        done.setStatus(UrlScan.ScanStatus.DONE);
+        done.setResultDocument(scanResultRepository.getReferenceById("hash-a"));
+        done = urlScanRepository.save(done);
+        UrlScan pending = urlScanRepository.save(new UrlScan("https://b.com", user1.getId()));
+        entityManager.flush();
+
+        // then
+        assertThat(urlScanRepository.findStoredResult(done.getId(), user1.getId()).orElseThrow().open())
+                .hasContent("{\"verdict\":\"clean\"}");
+        assertThat(urlScanRepository.findStoredResult(pending.getId(), user1.getId()).orElseThrow().open()).isNull();
+        assertThat(urlScanRepository.findStoredResult(done.getId(), user2.getId())).isEmpty();
+    }
+
+    private UrlScan saveProcessing(String url, User user, String externalScanId, LocalDateTime nextCheckAt) {
+        UrlScan scan = new UrlScan(url, user.getId());
+        scan.setStatus(UrlScan.ScanStatus.PROCESSING);
+        scan.setExternalScanId(externalScanId);
+        scan.setNextCheckAt(nextCheckAt);
+        return urlScanRepository.save(scan);
+    }
+
+    private void saveSubmitted(String url, User user, LocalDateTime createdAt) {
+        UrlScan scan = new UrlScan(url, user.getId());
+        scan.setCreatedAt(createdAt);
+        urlScanRepository.save(scan);
     }
 }
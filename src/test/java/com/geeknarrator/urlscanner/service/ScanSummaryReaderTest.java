@@ -0,0 +1,75 @@
+package com.geeknarrator.urlscanner.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.geeknarrator.urlscanner.entity.ScanSummary;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScanSummaryReaderTest {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Test
+    void readsVerdictAndPageFields() throws IOException {
+        // Given
+        String document = """
+                {
+                  "task": {"uuid": "uuid-1", "url": "https://example.com"},
+                  "data": {"requests": [{"request": {"url": "https://example.com/app.js"}}]},
+                  "page": {"url": "https://example.com/", "domain": "example.com", "ip": "93.184.216.34",
+                           "country": "US", "title": "Example Domain", "status": "200"},
+                  "verdicts": {
+                    "overall": {"score": 75, "categories": ["phishing", "brand-impersonation"], "malicious": true, "hasVerdicts": true},
+                    "urlscan": {"score": 75, "categories": ["ignored"], "malicious": true}
+                  }
+                }
+                """;
+
+        // When
+        ScanSummary summary = read(document);
+
+        // Then
+        assertThat(summary.getMalicious()).isTrue();
+        assertThat(summary.getScore()).isEqualTo(75);
+        assertThat(summary.getCategories()).containsExactly("phishing", "brand-impersonation");
+        assertThat(summary.getDomain()).isEqualTo("example.com");
+        assertThat(summary.getIp()).isEqualTo("93.184.216.34");
+        assertThat(summary.getCountry()).isEqualTo("US");
+        assertThat(summary.getTitle()).isEqualTo("Example Domain");
+    }
+
+    @Test
+    void leavesMissingOrMistypedFieldsEmpty() throws IOException {
+        // When
+        ScanSummary summary = read("{\"page\": {\"domain\": null, \"title\": {\"nested\": 1}}, \"verdicts\": {\"overall\": {\"score\": \"high\"}}}");
+
+        // Then
+        assertThat(summary.getDomain()).isNull();
+        assertThat(summary.getTitle()).isNull();
+        assertThat(summary.getScore()).isNull();
+        assertThat(summary.getMalicious()).isNull();
+    }
+
+    @Test
+    void truncatesLongTitles() throws IOException {
+        // When
+        ScanSummary summary = read("{\"page\": {\"title\": \"" + "x".repeat(2000) + "\"}}");
+
+        // Then
+        assertThat(summary.getTitle()).hasSize(ScanSummary.MAX_TITLE_LENGTH);
+    }
+
+    private ScanSummary read(String document) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(document)) {
+            parser.nextToken();
+            ScanSummary summary = ScanSummaryReader.read(parser);
+            // The whole root object has been consumed.
+            assertThat(parser.nextToken()).isNull();
+            return summary;
+        }
+    }
+}
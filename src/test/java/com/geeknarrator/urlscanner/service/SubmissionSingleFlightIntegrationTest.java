@@ -0,0 +1,71 @@
+package com.geeknarrator.urlscanner.service;
+
+import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.entity.User;
+import com.geeknarrator.urlscanner.integration.BaseIntegrationTest;
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import com.geeknarrator.urlscanner.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SubmissionSingleFlightIntegrationTest extends BaseIntegrationTest {
+
+    @Autowired
+    private UrlScanRepository urlScanRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        urlScanRepository.deleteAll();
+        userRepository.deleteAll();
+        user = userRepository.save(new User("user1@test.com", "password", "User", "One"));
+    }
+
+    @Test
+    void execute_SubmissionsOnDifferentNodesInsertOneRow() throws Exception {
+        // Given - two nodes, each with its own in-process map, so only the advisory lock is shared
+        SubmissionSingleFlight nodeA = node();
+        SubmissionSingleFlight nodeB = node();
+
+        // When - both look up, then insert after a pause that lets the other catch up
+        CompletableFuture<UrlScan> first = CompletableFuture.supplyAsync(() -> nodeA.execute(user.getId(), "https://example.com", this::findOrInsert));
+        CompletableFuture<UrlScan> second = CompletableFuture.supplyAsync(() -> nodeB.execute(user.getId(), "https://example.com", this::findOrInsert));
+
+        // Then
+        assertThat(first.get(10, TimeUnit.SECONDS).getId()).isEqualTo(second.get(10, TimeUnit.SECONDS).getId());
+        assertThat(urlScanRepository.count()).isEqualTo(1);
+    }
+
+    private UrlScan findOrInsert() {
+        return urlScanRepository.findFirstByUserIdAndUrlHashAndCreatedAtAfterOrderByCreatedAtDesc(user.getId(), UrlNormalizer.hash("https://example.com"),
+                        LocalDateTime.now().minusHours(1))
+                .orElseGet(() -> {
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return urlScanRepository.save(new UrlScan("https://example.com", user.getId()));
+                });
+    }
+
+    private SubmissionSingleFlight node() {
+        return new SubmissionSingleFlight(urlScanRepository, transactionTemplate, new SimpleMeterRegistry(), true);
+    }
+}
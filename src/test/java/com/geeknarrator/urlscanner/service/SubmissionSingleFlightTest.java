@@ -0,0 +1,154 @@
+package com.geeknarrator.urlscanner.service;
+
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class SubmissionSingleFlightTest {
+
+    @Mock
+    private UrlScanRepository urlScanRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MeterRegistry meterRegistry;
+    private SubmissionSingleFlight singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new SubmissionSingleFlight(urlScanRepository, new TransactionTemplate(transactionManager), meterRegistry, true);
+    }
+
+    @Test
+    void concurrentCallsForTheSameUserAndUrlShareOneRun() throws Exception {
+        // Given - the first run blocks until the second caller has arrived
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> singleFlight.execute(1L, "https://example.com", () -> {
+            runs.incrementAndGet();
+            await(release);
+            return "scan-1";
+        }));
+        awaitRun(runs);
+
+        // When
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> singleFlight.execute(1L, "https://example.com", () -> {
+            runs.incrementAndGet();
+            return "scan-2";
+        }));
+        while (meterRegistry.counter("scans.singleflight.shared").count() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        // Then
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("scan-1");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("scan-1");
+        assertThat(runs).hasValue(1);
+        verify(urlScanRepository, times(1)).lockSubmission(Long.hashCode(1L), SubmissionSingleFlight.lockKey(UrlNormalizer.hash("https://example.com")));
+    }
+
+    @Test
+    void spellingsOfTheSameUrlShareOneRunAndOneLock() throws Exception {
+        // Given - the first run blocks until the second caller has arrived
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> singleFlight.execute(1L, "https://Example.com", () -> {
+            runs.incrementAndGet();
+            await(release);
+            return "scan-1";
+        }));
+        awaitRun(runs);
+
+        // When
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> singleFlight.execute(1L, "https://example.com:443/#top",
+                () -> "scan-2"));
+        while (meterRegistry.counter("scans.singleflight.shared").count() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        // Then
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(first.get(5, TimeUnit.SECONDS));
+        assertThat(SubmissionSingleFlight.lockKey(UrlNormalizer.hash("https://Example.com")))
+                .isEqualTo(SubmissionSingleFlight.lockKey(UrlNormalizer.hash("https://example.com:443/#top")));
+    }
+
+    @Test
+    void differentUsersDoNotShare() {
+        // When
+        String first = singleFlight.execute(1L, "https://example.com", () -> "scan-1");
+        String second = singleFlight.execute(2L, "https://example.com", () -> "scan-2");
+
+        // Then
+        assertThat(first).isEqualTo("scan-1");
+        assertThat(second).isEqualTo("scan-2");
+    }
+
+    @Test
+    void laterCallsRunAgainOnceTheFirstHasFinished() {
+        // When
+        singleFlight.execute(1L, "https://example.com", () -> "scan-1");
+        String again = singleFlight.execute(1L, "https://example.com", () -> "scan-2");
+
+        // Then
+        assertThat(again).isEqualTo("scan-2");
+    }
+
+    @Test
+    void failureIsPassedToTheCallerAndNotCached() {
+        // When & Then
+        assertThatThrownBy(() -> singleFlight.execute(1L, "https://example.com", () -> {
+            throw new IllegalStateException("queue full");
+        })).isInstanceOf(IllegalStateException.class).hasMessage("queue full");
+        assertThat(singleFlight.execute(1L, "https://example.com", () -> "scan-1")).isEqualTo("scan-1");
+    }
+
+    @Test
+    void clusterLockCanBeTurnedOff() {
+        // Given
+        singleFlight = new SubmissionSingleFlight(urlScanRepository, new TransactionTemplate(transactionManager), meterRegistry, false);
+
+        // When
+        singleFlight.execute(1L, "https://example.com", () -> "scan-1");
+
+        // Then
+        verify(urlScanRepository, never()).lockSubmission(anyInt(), anyInt());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitRun(AtomicInteger runs) throws InterruptedException {
+        while (runs.get() == 0) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.geeknarrator.urlscanner.service;
+
+import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.entity.User;
+import com.geeknarrator.urlscanner.integration.BaseIntegrationTest;
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import com.geeknarrator.urlscanner.repository.UserRepository;
+import com.geeknarrator.urlscanner.service.cache.RecentUrlFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class UrlHashBackfillJobIntegrationTest extends BaseIntegrationTest {
+
+    @Autowired
+    private UrlScanRepository urlScanRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final RecentUrlFilter recentUrlFilter = mock(RecentUrlFilter.class);
+    private UrlHashBackfillJob job;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        urlScanRepository.deleteAll();
+        userRepository.deleteAll();
+        user = userRepository.save(new User("backfill@test.com", "password", "Back", "Fill"));
+        job = new UrlHashBackfillJob(urlScanRepository, recentUrlFilter, transactionTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(job, "batchSize", 2);
+        ReflectionTestUtils.setField(job, "pauseMs", 0L);
+    }
+
+    @Test
+    void run_HashesScansFromBeforeUrlHashesWereRecorded() {
+        // Given - three scans written without a hash, spellings of two URLs
+        List<String> urls = List.of("https://Example.com", "https://example.com:443/", "https://other.com/a");
+        for (String url : urls) {
+            UrlScan scan = urlScanRepository.save(new UrlScan(url, user.getId()));
+            jdbcTemplate.update("UPDATE url_scans SET url_hash = NULL WHERE id = ?", scan.getId());
+        }
+
+        // When
+        job.run();
+
+        // Then
+        List<String> hashes = jdbcTemplate.queryForList("SELECT url_hash FROM url_scans ORDER BY id", String.class);
+        assertThat(hashes).containsExactly(
+                UrlNormalizer.hash("https://example.com/"),
+                UrlNormalizer.hash("https://example.com/"),
+                UrlNormalizer.hash("https://other.com/a"));
+        verify(recentUrlFilter, times(2)).record(eq(UrlNormalizer.hash("https://example.com/")), any());
+        verify(recentUrlFilter).record(eq(UrlNormalizer.hash("https://other.com/a")), any());
+    }
+}
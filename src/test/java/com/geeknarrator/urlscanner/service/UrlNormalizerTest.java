@@ -0,0 +1,33 @@
+package com.geeknarrator.urlscanner.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UrlNormalizerTest {
+
+    @Test
+    void lowerCasesSchemeAndHostButNotPath() {
+        assertThat(UrlNormalizer.normalize("HTTPS://Example.COM/Some/Path?Q=1"))
+                .isEqualTo("https://example.com/Some/Path?Q=1");
+    }
+
+    @Test
+    void dropsDefaultPortAndFragment() {
+        assertThat(UrlNormalizer.normalize("https://example.com:443/a#section")).isEqualTo("https://example.com/a");
+        assertThat(UrlNormalizer.normalize("http://example.com:80")).isEqualTo("http://example.com/");
+        assertThat(UrlNormalizer.normalize("http://example.com:8080/")).isEqualTo("http://example.com:8080/");
+    }
+
+    @Test
+    void keepsUnparseableUrlsAsTheyAre() {
+        assertThat(UrlNormalizer.normalize(" https://exa mple.com ")).isEqualTo("https://exa mple.com");
+    }
+
+    @Test
+    void hashesEquivalentUrlsAlike() {
+        assertThat(UrlNormalizer.hash("https://Example.com")).isEqualTo(UrlNormalizer.hash("https://example.com/"))
+                .hasSize(64);
+        assertThat(UrlNormalizer.hash("https://example.com/a")).isNotEqualTo(UrlNormalizer.hash("https://example.com/b"));
+    }
+}
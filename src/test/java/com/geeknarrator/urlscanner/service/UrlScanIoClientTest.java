@@ -0,0 +1,96 @@
+package com.geeknarrator.urlscanner.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.geeknarrator.urlscanner.service.circuitbreaker.CircuitBreakerProperties;
+import com.geeknarrator.urlscanner.service.circuitbreaker.UrlScanCircuitBreakers;
+import com.geeknarrator.urlscanner.service.ratelimit.UrlScanRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+
+class UrlScanIoClientTest {
+
+    private final UrlScanRateLimiter rateLimiter = mock(UrlScanRateLimiter.class);
+    private UrlScanCircuitBreakers circuitBreakers;
+    private MockRestServiceServer server;
+    private UrlScanIoClient client;
+
+    @BeforeEach
+    void setUp() {
+        // One failure opens the breaker, which goes half-open straight away with a single probe.
+        CircuitBreakerProperties properties = new CircuitBreakerProperties();
+        properties.setWindowSize(1);
+        properties.setMinimumCalls(1);
+        properties.setOpenDurationMs(0);
+        properties.setHalfOpenProbes(1);
+        circuitBreakers = new UrlScanCircuitBreakers(properties, new SimpleMeterRegistry());
+        client = new UrlScanIoClient(new RestTemplateBuilder(), new ObjectMapper(), rateLimiter, circuitBreakers);
+        ReflectionTestUtils.setField(client, "urlscanApiKey", "test-key");
+        ReflectionTestUtils.setField(client, "urlscanApiBaseUrl", "https://urlscan.test/api/v1");
+        server = MockRestServiceServer.bindTo((RestTemplate) ReflectionTestUtils.getField(client, "restTemplate")).build();
+    }
+
+    @Test
+    void submitScan_RateLimitedProbeHandsItsPermitBack() {
+        // Given - the breaker is half-open and its only probe is taken
+        circuitBreakers.onFailure(UrlScanEndpoint.SUBMIT, Duration.ofMillis(10));
+        assertThat(circuitBreakers.acquirePermits(UrlScanEndpoint.SUBMIT, 5)).isEqualTo(1);
+        server.expect(requestTo("https://urlscan.test/api/v1/scan/")).andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS));
+
+        // When
+        SubmissionResult result = client.submitScan("https://example.com");
+
+        // Then - the probe can be tried again
+        assertThat(result.outcome()).isEqualTo(SubmissionResult.Outcome.RETRYABLE);
+        verify(rateLimiter).onRateLimited(UrlScanEndpoint.SUBMIT);
+        assertThat(circuitBreakers.acquirePermits(UrlScanEndpoint.SUBMIT, 5)).isEqualTo(1);
+    }
+
+    @Test
+    void fetchScanResult_RateLimitedProbeHandsItsPermitBack() {
+        // Given
+        circuitBreakers.onFailure(UrlScanEndpoint.RESULT, Duration.ofMillis(10));
+        assertThat(circuitBreakers.acquirePermits(UrlScanEndpoint.RESULT, 5)).isEqualTo(1);
+        server.expect(requestTo("https://urlscan.test/api/v1/result/uuid-1/")).andRespond(withStatus(HttpStatus.TOO_MANY_REQUESTS));
+
+        // When
+        boolean fetched = client.fetchScanResult("uuid-1").isPresent();
+
+        // Then
+        assertThat(fetched).isFalse();
+        verify(rateLimiter).onRateLimited(UrlScanEndpoint.RESULT);
+        assertThat(circuitBreakers.acquirePermits(UrlScanEndpoint.RESULT, 5)).isEqualTo(1);
+    }
+
+    @Test
+    void submitScan_DefersWithoutCallingWhileCircuitIsOpen() {
+        // Given - the breaker stays open for a minute
+        CircuitBreakerProperties properties = new CircuitBreakerProperties();
+        properties.setWindowSize(1);
+        properties.setMinimumCalls(1);
+        properties.setOpenDurationMs(60000);
+        circuitBreakers = new UrlScanCircuitBreakers(properties, new SimpleMeterRegistry());
+        client = new UrlScanIoClient(new RestTemplateBuilder(), new ObjectMapper(), rateLimiter, circuitBreakers);
+        circuitBreakers.onFailure(UrlScanEndpoint.SUBMIT, Duration.ofMillis(10));
+
+        // When
+        SubmissionResult result = client.submitScan("https://example.com");
+
+        // Then
+        assertThat(result.outcome()).isEqualTo(SubmissionResult.Outcome.DEFERRED);
+        assertThat(result.retryAfter()).isPositive().isLessThanOrEqualTo(Duration.ofMinutes(1));
+    }
+}
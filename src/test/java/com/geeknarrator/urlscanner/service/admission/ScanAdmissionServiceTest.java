@@ -0,0 +1,162 @@
+package com.geeknarrator.urlscanner.service.admission;
+
+import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.entity.User;
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import com.geeknarrator.urlscanner.service.ratelimit.RateLimitProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ScanAdmissionServiceTest {
+
+    @Mock
+    private UrlScanRepository urlScanRepository;
+
+    private AdmissionProperties properties;
+    private MeterRegistry meterRegistry;
+    private ScanAdmissionService scanAdmissionService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        properties = new AdmissionProperties();
+        properties.setGlobalWatermarks(Map.of(UrlScan.Priority.INTERACTIVE, 100L, UrlScan.Priority.BULK, 50L));
+        properties.setUserWatermarks(Map.of(User.Tier.FREE, 5L, User.Tier.PRO, 20L));
+        properties.setRefreshIntervalMs(60000);
+        RateLimitProperties rateLimitProperties = new RateLimitProperties();
+        rateLimitProperties.setSubmit(new RateLimitProperties.Bucket(10, 2.0));
+        meterRegistry = new SimpleMeterRegistry();
+        scanAdmissionService = new ScanAdmissionService(urlScanRepository, properties, rateLimitProperties, meterRegistry);
+        user = new User("user@test.com", "password", "Test", "User");
+        user.setId(1L);
+    }
+
+    @Test
+    void admitsWhileBelowWatermarks() {
+        // given
+        when(urlScanRepository.countByStatusCapped(UrlScan.ScanStatus.SUBMITTED, 101L)).thenReturn(10L);
+        when(urlScanRepository.countByUserIdAndStatusCapped(1L, UrlScan.ScanStatus.SUBMITTED, 6L)).thenReturn(4L);
+
+        // when & then
+        scanAdmissionService.admit(user, UrlScan.Priority.INTERACTIVE);
+        assertThat(meterRegistry.get("scans.backlog.estimate").gauge().value()).isEqualTo(11.0);
+    }
+
+    @Test
+    void countsAdmittedScansUntilTheEstimateIsRefreshed() {
+        // given - the user has room for exactly one more scan
+        when(urlScanRepository.countByStatusCapped(eq(UrlScan.ScanStatus.SUBMITTED), anyLong())).thenReturn(0L);
+        when(urlScanRepository.countByUserIdAndStatusCapped(eq(1L), eq(UrlScan.ScanStatus.SUBMITTED), anyLong())).thenReturn(4L);
+        scanAdmissionService.admit(user, UrlScan.Priority.INTERACTIVE);
+
+        // when & then - the second scan is rejected without going back to the database
+        assertThatThrownBy(() -> scanAdmissionService.admit(user, UrlScan.Priority.INTERACTIVE))
+                .isInstanceOfSatisfying(AdmissionRejectedException.class, e ->
+                        assertThat(e.getReason()).isEqualTo(AdmissionRejectedException.Reason.USER_BACKLOG));
+        verify(urlScanRepository, times(1)).countByUserIdAndStatusCapped(eq(1L), eq(UrlScan.ScanStatus.SUBMITTED), anyLong());
+    }
+
+    @Test
+    void takesAScanOffTheEstimatesWhenItsInsertRollsBack() {
+        // given
+        when(urlScanRepository.countByStatusCapped(eq(UrlScan.ScanStatus.SUBMITTED), anyLong())).thenReturn(10L);
+        when(urlScanRepository.countByUserIdAndStatusCapped(eq(1L), eq(UrlScan.ScanStatus.SUBMITTED), anyLong())).thenReturn(4L);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            scanAdmissionService.admit(user, UrlScan.Priority.INTERACTIVE);
+            assertThat(meterRegistry.get("scans.backlog.estimate").gauge().value()).isEqualTo(11.0);
+
+            // when
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // then - the user's slot is free again
+        assertThat(meterRegistry.get("scans.backlog.estimate").gauge().value()).isEqualTo(10.0);
+        scanAdmissionService.admit(user, UrlScan.Priority.INTERACTIVE);
+    }
+
+    @Test
+    void userWatermarkDependsOnTier() {
+        // given
+        user.setTier(User.Tier.PRO);
+        when(urlScanRepository.countByStatusCapped(eq(UrlScan.ScanStatus.SUBMITTED), anyLong())).thenReturn(0L);
+        when(urlScanRepository.countByUserIdAndStatusCapped(1L, UrlScan.ScanStatus.SUBMITTED, 21L)).thenReturn(10L);
+
+        // when & then - ten queued scans is over the free limit but not the pro one
+        scanAdmissionService.admit(user, UrlScan.Priority.INTERACTIVE);
+    }
+
+    @Test
+    void shedsBulkBeforeInteractiveWhenTheQueueIsDeep() {
+        // given
+        when(urlScanRepository.countByStatusCapped(UrlScan.ScanStatus.SUBMITTED, 101L)).thenReturn(60L);
+        when(urlScanRepository.countByUserIdAndStatusCapped(eq(1L), eq(UrlScan.ScanStatus.SUBMITTED), anyLong())).thenReturn(0L);
+
+        // when & then
+        assertThatThrownBy(() -> scanAdmissionService.admit(user, UrlScan.Priority.BULK))
+                .isInstanceOfSatisfying(AdmissionRejectedException.class, e ->
+                        assertThat(e.getReason()).isEqualTo(AdmissionRejectedException.Reason.SYSTEM_BACKLOG));
+        scanAdmissionService.admit(user, UrlScan.Priority.INTERACTIVE);
+        assertThat(meterRegistry.get("scans.admission.rejected").tag("reason", "SYSTEM_BACKLOG").tag("priority", "BULK").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void retryAfterIsTheTimeToDrainTheExcessAtTheSubmitRate() {
+        // given - 41 scans over the bulk watermark at 2 submissions per second
+        properties.setRefreshIntervalMs(1000);
+        when(urlScanRepository.countByStatusCapped(UrlScan.ScanStatus.SUBMITTED, 101L)).thenReturn(90L);
+
+        // when & then
+        assertThatThrownBy(() -> scanAdmissionService.admit(user, UrlScan.Priority.BULK))
+                .isInstanceOfSatisfying(AdmissionRejectedException.class, e ->
+                        assertThat(e.getRetryAfter()).isEqualTo(Duration.ofSeconds(21)));
+    }
+
+    @Test
+    void retryAfterIsCapped() {
+        // given
+        properties.setMaxRetryAfterSeconds(10);
+        when(urlScanRepository.countByStatusCapped(UrlScan.ScanStatus.SUBMITTED, 101L)).thenReturn(101L);
+
+        // when & then
+        assertThatThrownBy(() -> scanAdmissionService.admit(user, UrlScan.Priority.INTERACTIVE))
+                .isInstanceOfSatisfying(AdmissionRejectedException.class, e ->
+                        assertThat(e.getRetryAfter()).isEqualTo(Duration.ofSeconds(10)));
+    }
+
+    @Test
+    void admitsEverythingWhenDisabled() {
+        // given
+        properties.setEnabled(false);
+
+        // when
+        scanAdmissionService.admit(user, UrlScan.Priority.BULK);
+
+        // then
+        verifyNoInteractions(urlScanRepository);
+    }
+}
@@ -0,0 +1,60 @@
+package com.geeknarrator.urlscanner.service.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemorySharedResultStoreTest {
+
+    private final InMemorySharedResultStore store = new InMemorySharedResultStore(1000);
+
+    @Test
+    void entriesExpireWithTheirTtl() throws InterruptedException {
+        // Given
+        store.put("short", entry(1L, LocalDateTime.now()), Duration.ofMillis(1));
+        store.put("long", entry(2L, LocalDateTime.now()), Duration.ofHours(1));
+
+        // When
+        Thread.sleep(20);
+
+        // Then
+        assertThat(store.get("short")).isEmpty();
+        assertThat(store.get("long")).hasValueSatisfying(entry -> assertThat(entry.scanId()).isEqualTo(2L));
+    }
+
+    @Test
+    void olderScanDoesNotReplaceOrExtendANewerOne() throws InterruptedException {
+        // Given
+        store.put("url", entry(2L, LocalDateTime.now()), Duration.ofMillis(200));
+
+        // When - an older scan of the URL with a longer TTL arrives
+        store.put("url", entry(1L, LocalDateTime.now().minusHours(1)), Duration.ofHours(1));
+        assertThat(store.get("url")).hasValueSatisfying(entry -> assertThat(entry.scanId()).isEqualTo(2L));
+        Thread.sleep(300);
+
+        // Then
+        assertThat(store.get("url")).isEmpty();
+    }
+
+    @Test
+    void evictNotifiesListeners() {
+        // Given
+        StringBuilder evicted = new StringBuilder();
+        store.onEviction(evicted::append);
+        store.put("url", entry(1L, LocalDateTime.now()), Duration.ofHours(1));
+
+        // When
+        store.evict("url");
+
+        // Then
+        assertThat(store.get("url")).isEmpty();
+        assertThat(evicted).hasToString("url");
+    }
+
+    private static CachedScanResult entry(Long scanId, LocalDateTime scannedAt) {
+        return new CachedScanResult(scanId, "ext-" + scanId, "hash-" + scanId, null, scannedAt);
+    }
+}
@@ -0,0 +1,99 @@
+package com.geeknarrator.urlscanner.service.cache;
+
+import com.geeknarrator.urlscanner.service.UrlNormalizer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RollingBloomFilterTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final RollingBloomFilter filter = new RollingBloomFilter(Duration.ofHours(24), 24, 1000, 0.01, clock);
+
+    @Test
+    void reportsAddedKeysAndRejectsMostOthers() {
+        // Given
+        for (int i = 0; i < 500; i++) {
+            filter.put(UrlNormalizer.hash("https://example.com/" + i), LocalDateTime.now(clock));
+        }
+
+        // When
+        int falsePositives = 0;
+        for (int i = 500; i < 10500; i++) {
+            if (filter.mightContain(UrlNormalizer.hash("https://example.com/" + i))) {
+                falsePositives++;
+            }
+        }
+
+        // Then
+        for (int i = 0; i < 500; i++) {
+            assertThat(filter.mightContain(UrlNormalizer.hash("https://example.com/" + i))).isTrue();
+        }
+        assertThat(falsePositives).isLessThan(200);
+    }
+
+    @Test
+    void keepsKeysForTheWholeWindowAndDropsThemAfterwards() {
+        // Given
+        String key = UrlNormalizer.hash("https://example.com");
+        filter.put(key, LocalDateTime.now(clock));
+
+        // When
+        clock.advance(Duration.ofHours(24));
+        filter.rotate();
+
+        // Then
+        assertThat(filter.mightContain(key)).isTrue();
+
+        // When
+        clock.advance(Duration.ofHours(1));
+        filter.rotate();
+
+        // Then
+        assertThat(filter.mightContain(key)).isFalse();
+    }
+
+    @Test
+    void placesOldKeysInTheBucketOfTheirTime() {
+        // Given
+        String key = UrlNormalizer.hash("https://example.com");
+        filter.put(key, LocalDateTime.now(clock).minusHours(23).minusMinutes(30));
+
+        // When
+        clock.advance(Duration.ofHours(2));
+        filter.rotate();
+
+        // Then
+        assertThat(filter.mightContain(key)).isFalse();
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.geeknarrator.urlscanner.service.cache;
+
+import com.geeknarrator.urlscanner.entity.ScanResult;
+import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.service.storage.ResultCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScanResultCacheTest {
+
+    private final InMemorySharedResultStore sharedStore = new InMemorySharedResultStore(1000);
+    private final ScanResultCache cache = new ScanResultCache(new SimpleMeterRegistry(), sharedStore, 24, true, 64);
+
+    @Test
+    void cachesDoneScansByNormalizedUrl() {
+        // When
+        cache.put(doneScan(1L, "https://Example.com", LocalDateTime.now().minusHours(1)));
+
+        // Then
+        assertThat(cache.get(new UrlScan("https://example.com/", 2L).getUrlHash()))
+                .hasValueSatisfying(entry -> assertThat(entry.scanId()).isEqualTo(1L));
+    }
+
+    @Test
+    void ignoresScansThatAreNotDoneOrOlderThanTtl() {
+        // Given
+        UrlScan processing = doneScan(1L, "https://a.example.com", LocalDateTime.now());
+        processing.setStatus(UrlScan.ScanStatus.PROCESSING);
+        UrlScan stale = doneScan(2L, "https://b.example.com", LocalDateTime.now().minusHours(25));
+
+        // When
+        cache.put(processing);
+        cache.put(stale);
+
+        // Then
+        assertThat(cache.get(processing.getUrlHash())).isEmpty();
+        assertThat(cache.get(stale.getUrlHash())).isEmpty();
+    }
+
+    @Test
+    void keepsTheMostRecentScanOfAUrl() {
+        // Given
+        UrlScan newer = doneScan(2L, "https://example.com", LocalDateTime.now().minusHours(1));
+        UrlScan older = doneScan(1L, "https://example.com", LocalDateTime.now().minusHours(2));
+
+        // When
+        cache.put(newer);
+        cache.put(older);
+
+        // Then
+        assertThat(cache.get(newer.getUrlHash())).hasValueSatisfying(entry -> assertThat(entry.scanId()).isEqualTo(2L));
+    }
+
+    @Test
+    void invalidateDropsTheEntry() {
+        // Given
+        UrlScan scan = doneScan(1L, "https://example.com", LocalDateTime.now());
+        cache.put(scan);
+
+        // When
+        cache.invalidate(scan.getUrlHash());
+
+        // Then
+        assertThat(cache.get(scan.getUrlHash())).isEmpty();
+    }
+
+    @Test
+    void anotherNodeFindsTheResultInTheSharedTier() {
+        // Given
+        ScanResultCache otherNode = new ScanResultCache(new SimpleMeterRegistry(), sharedStore, 24, true, 64);
+        UrlScan scan = doneScan(1L, "https://example.com", LocalDateTime.now());
+
+        // When
+        cache.put(scan);
+
+        // Then
+        assertThat(otherNode.get(scan.getUrlHash())).hasValueSatisfying(entry -> assertThat(entry.scanId()).isEqualTo(1L));
+    }
+
+    @Test
+    void invalidationDropsEveryNodesLocalCopy() {
+        // Given
+        ScanResultCache otherNode = new ScanResultCache(new SimpleMeterRegistry(), sharedStore, 24, true, 64);
+        UrlScan scan = doneScan(1L, "https://example.com", LocalDateTime.now());
+        cache.put(scan);
+        otherNode.get(scan.getUrlHash());
+
+        // When
+        cache.invalidate(scan.getUrlHash());
+
+        // Then
+        assertThat(otherNode.get(scan.getUrlHash())).isEmpty();
+    }
+
+    private static UrlScan doneScan(Long id, String url, LocalDateTime createdAt) {
+        UrlScan scan = new UrlScan(url, 1L);
+        scan.setId(id);
+        scan.setStatus(UrlScan.ScanStatus.DONE);
+        scan.setResultDocument(new ScanResult("hash-" + id, ResultCodec.encode("{}")));
+        scan.setCreatedAt(createdAt);
+        return scan;
+    }
+}
@@ -0,0 +1,174 @@
+package com.geeknarrator.urlscanner.service.circuitbreaker;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static final Duration FAST = Duration.ofMillis(100);
+    private static final Duration SLOW = Duration.ofSeconds(6);
+
+    private final List<CircuitBreaker.State> transitions = new ArrayList<>();
+    private MutableClock clock;
+    private CircuitBreakerProperties properties;
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock();
+        properties = new CircuitBreakerProperties();
+        properties.setWindowSize(10);
+        properties.setMinimumCalls(4);
+        properties.setFailureRateThreshold(0.5);
+        properties.setSlowCallDurationMs(5000);
+        properties.setSlowCallRateThreshold(0.5);
+        properties.setOpenDurationMs(30000);
+        properties.setHalfOpenProbes(2);
+        circuitBreaker = new CircuitBreaker(properties, clock, (from, to) -> transitions.add(to));
+    }
+
+    @Test
+    void staysClosedBelowMinimumCalls() {
+        // When
+        circuitBreaker.onFailure(FAST);
+        circuitBreaker.onFailure(FAST);
+        circuitBreaker.onFailure(FAST);
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.acquirePermits(50)).isEqualTo(50);
+    }
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        // When
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onFailure(FAST);
+        circuitBreaker.onFailure(FAST);
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.isOpen()).isTrue();
+        assertThat(circuitBreaker.acquirePermits(50)).isZero();
+        assertThat(circuitBreaker.remainingOpenTime()).isEqualTo(Duration.ofSeconds(30));
+    }
+
+    @Test
+    void opensWhenSlowCallRateReachesThreshold() {
+        // When - every call succeeds, but most take too long
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onSuccess(SLOW);
+        circuitBreaker.onSuccess(SLOW);
+        circuitBreaker.onSuccess(SLOW);
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void oldOutcomesLeaveTheWindow() {
+        // Given - an early failure, then a long run of successes
+        circuitBreaker.onFailure(FAST);
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.onSuccess(FAST);
+        }
+
+        // When - four failures out of the last ten calls
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure(FAST);
+        }
+
+        // Then - the early failure would have made it five out of ten
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void letsLimitedProbesThroughOnceOpenDurationHasPassed() {
+        // Given
+        trip();
+
+        // When
+        clock.advance(Duration.ofSeconds(30));
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(circuitBreaker.acquirePermits(50)).isEqualTo(2);
+        assertThat(circuitBreaker.acquirePermits(50)).isZero();
+        circuitBreaker.release(1);
+        assertThat(circuitBreaker.acquirePermits(50)).isEqualTo(1);
+    }
+
+    @Test
+    void closesWhenAllProbesSucceed() {
+        // Given
+        trip();
+        clock.advance(Duration.ofSeconds(30));
+        circuitBreaker.acquirePermits(2);
+
+        // When
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onSuccess(FAST);
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.acquirePermits(50)).isEqualTo(50);
+        assertThat(transitions).containsExactly(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void reopensWhenAProbeIsSlow() {
+        // Given
+        trip();
+        clock.advance(Duration.ofSeconds(30));
+        circuitBreaker.acquirePermits(2);
+
+        // When
+        circuitBreaker.onSuccess(FAST);
+        circuitBreaker.onSuccess(SLOW);
+
+        // Then
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.remainingOpenTime()).isEqualTo(Duration.ofSeconds(30));
+    }
+
+    private void trip() {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onFailure(FAST);
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.geeknarrator.urlscanner.service.ratelimit;
+
+import com.geeknarrator.urlscanner.integration.BaseIntegrationTest;
+import com.geeknarrator.urlscanner.repository.RateLimitBucketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PostgresRateLimitStoreIntegrationTest extends BaseIntegrationTest {
+
+    @Autowired
+    private PostgresRateLimitStore rateLimitStore;
+
+    @Autowired
+    private RateLimitBucketRepository rateLimitBucketRepository;
+
+    @BeforeEach
+    void setUp() {
+        rateLimitBucketRepository.deleteAll();
+    }
+
+    @Test
+    void tryAcquire_StartsFullAndNeverGrantsMoreThanCapacity() {
+        // When
+        long first = rateLimitStore.tryAcquire("test", 8, 5, 0.0);
+        long second = rateLimitStore.tryAcquire("test", 8, 5, 0.0);
+
+        // Then
+        assertThat(first).isEqualTo(5);
+        assertThat(second).isZero();
+    }
+
+    @Test
+    void tryAcquire_RefillsOverTime() throws InterruptedException {
+        // Given
+        rateLimitStore.tryAcquire("test", 5, 5, 20.0);
+
+        // When - 20 tokens per second for at least 150ms
+        Thread.sleep(150);
+        long granted = rateLimitStore.tryAcquire("test", 5, 5, 20.0);
+
+        // Then
+        assertThat(granted).isBetween(3L, 5L);
+    }
+
+    @Test
+    void releaseAndDrain_AdjustTheSharedBudget() {
+        // Given
+        rateLimitStore.tryAcquire("test", 5, 5, 0.0);
+
+        // When / Then
+        rateLimitStore.release("test", 2, 5);
+        assertThat(rateLimitStore.tryAcquire("test", 5, 5, 0.0)).isEqualTo(2);
+
+        rateLimitStore.release("test", 4, 5);
+        rateLimitStore.drain("test");
+        assertThat(rateLimitStore.tryAcquire("test", 5, 5, 0.0)).isZero();
+    }
+
+    @Test
+    void tryAcquire_SharesBudgetBetweenConcurrentCallers() throws Exception {
+        // Given - many callers racing for a bucket of 50 that does not refill
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Callable<Long>> callers = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            callers.add(() -> rateLimitStore.tryAcquire("test", 3, 50, 0.0));
+        }
+
+        // When
+        long granted = 0;
+        try {
+            for (Future<Long> result : executor.invokeAll(callers)) {
+                granted += result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Then
+        assertThat(granted).isEqualTo(50);
+    }
+}
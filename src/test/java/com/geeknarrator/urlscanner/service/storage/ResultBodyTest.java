@@ -0,0 +1,34 @@
+package com.geeknarrator.urlscanner.service.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultBodyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void embedsStoredDocumentsAsJson() throws Exception {
+        // Given
+        String document = "{\"page\":{\"title\":\"Café \\\"quoted\\\"\"},\"lists\":{\"ips\":[\"" + "10.0.0.1\",\"".repeat(200) + "10.0.0.2\"]}}";
+
+        // When
+        String json = objectMapper.writeValueAsString(Map.of("result", ResultBody.stored(ResultCodec.encode(document))));
+
+        // Then
+        assertThat(json).isEqualTo("{\"result\":" + document + "}");
+    }
+
+    @Test
+    void embedsDocumentsHeldAsText() throws Exception {
+        // When
+        String json = objectMapper.writeValueAsString(Map.of("result", ResultBody.text("{\"verdict\": \"clean\"}")));
+
+        // Then - copied token by token, so insignificant whitespace is dropped
+        assertThat(json).isEqualTo("{\"result\":{\"verdict\":\"clean\"}}");
+    }
+}
@@ -0,0 +1,53 @@
+package com.geeknarrator.urlscanner.service.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResultCodecTest {
+
+    @Test
+    void compressesRepetitiveDocuments() {
+        // Given
+        String document = "{\"requests\":[" + "{\"url\":\"https://example.com/script.js\",\"type\":\"Script\"},".repeat(1000) + "{}]}";
+
+        // When
+        byte[] encoded = ResultCodec.encode(document);
+
+        // Then
+        assertThat(encoded[0]).isEqualTo(ResultCodec.DEFLATE);
+        assertThat(encoded.length).isLessThan(document.length() / 10);
+        assertThat(ResultCodec.decode(encoded)).isEqualTo(document);
+    }
+
+    @Test
+    void storesDocumentsThatDoNotShrinkAsIs() {
+        // When
+        byte[] encoded = ResultCodec.encode("{}");
+
+        // Then
+        assertThat(encoded[0]).isEqualTo(ResultCodec.PLAIN);
+        assertThat(ResultCodec.decode(encoded)).isEqualTo("{}");
+    }
+
+    @Test
+    void roundTripsNonAsciiText() {
+        // Given
+        String document = "{\"title\":\"Café – 日本\"}".repeat(50);
+
+        // Then
+        assertThat(ResultCodec.decode(ResultCodec.encode(document))).isEqualTo(document);
+    }
+
+    @Test
+    void rejectsUnknownFormats() {
+        // Given
+        byte[] data = "\u0007{}".getBytes(StandardCharsets.UTF_8);
+
+        // Then
+        assertThatThrownBy(() -> ResultCodec.decode(data)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
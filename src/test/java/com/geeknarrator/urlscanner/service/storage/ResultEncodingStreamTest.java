@@ -0,0 +1,44 @@
+package com.geeknarrator.urlscanner.service.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultEncodingStreamTest {
+
+    private static final String DOCUMENT = "{\"page\":{\"title\":\"Café – 日本\"},\"requests\":["
+            + "{\"url\":\"https://example.com/script.js\"},".repeat(500) + "{}]}";
+
+    @Test
+    void encodesWhatPassesThroughAndWhatIsLeftUnread() throws IOException {
+        // Given
+        ResultEncodingStream stream = new ResultEncodingStream(new ByteArrayInputStream(DOCUMENT.getBytes(StandardCharsets.UTF_8)));
+        byte[] head = new byte[100];
+
+        // When - the reader stops early, as a parser that has seen what it needs would
+        int read = stream.read(head, 0, head.length);
+        ResultEncodingStream.Encoded encoded = stream.finish();
+
+        // Then
+        assertThat(read).isEqualTo(head.length);
+        assertThat(encoded.data()[0]).isEqualTo(ResultCodec.DEFLATE);
+        assertThat(ResultCodec.decode(encoded.data())).isEqualTo(DOCUMENT);
+        assertThat(encoded.length()).isEqualTo(DOCUMENT.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void hashesLikeDocumentsStoredAsText() throws IOException {
+        // Given
+        ResultEncodingStream stream = new ResultEncodingStream(new ByteArrayInputStream(DOCUMENT.getBytes(StandardCharsets.UTF_8)));
+
+        // When
+        ResultEncodingStream.Encoded encoded = stream.finish();
+
+        // Then - the same document fetched twice is stored once, however it arrived
+        assertThat(encoded.contentHash()).isEqualTo(ScanResultStorage.hash(DOCUMENT));
+    }
+}
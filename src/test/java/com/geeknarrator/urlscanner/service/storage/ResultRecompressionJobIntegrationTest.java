@@ -0,0 +1,88 @@
+package com.geeknarrator.urlscanner.service.storage;
+
+import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.entity.User;
+import com.geeknarrator.urlscanner.integration.BaseIntegrationTest;
+import com.geeknarrator.urlscanner.repository.ScanResultRepository;
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import com.geeknarrator.urlscanner.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultRecompressionJobIntegrationTest extends BaseIntegrationTest {
+
+    private static final String DOCUMENT = "{\"page\":{\"url\":\"https://example.com\"},\"lists\":" + "[\"https://example.com/a.js\"],".repeat(200) + "[]}";
+
+    @Autowired
+    private ScanResultRepository scanResultRepository;
+
+    @Autowired
+    private UrlScanRepository urlScanRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ScanResultStorage scanResultStorage;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private ResultRecompressionJob job;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        urlScanRepository.deleteAll();
+        scanResultRepository.deleteAll();
+        userRepository.deleteAll();
+        user = userRepository.save(new User("recompress@test.com", "password", "Re", "Compress"));
+        job = new ResultRecompressionJob(scanResultRepository, urlScanRepository, scanResultStorage, transactionTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(job, "batchSize", 2);
+        ReflectionTestUtils.setField(job, "pauseMs", 0L);
+    }
+
+    @Test
+    void run_CompressesPlainDocumentsAndMovesInlineResults() {
+        // Given - rows written before compression, in both old layouts
+        jdbcTemplate.update("INSERT INTO scan_results (content_hash, content, created_at) VALUES (?, ?, ?)",
+                "plain-1", DOCUMENT, LocalDateTime.now());
+        UrlScan[] inline = new UrlScan[3];
+        for (int i = 0; i < inline.length; i++) {
+            UrlScan scan = new UrlScan("https://example.com/" + i, user.getId());
+            scan.setStatus(UrlScan.ScanStatus.DONE);
+            inline[i] = urlScanRepository.save(scan);
+            jdbcTemplate.update("UPDATE url_scans SET result = ? WHERE id = ?", DOCUMENT, inline[i].getId());
+        }
+
+        // When
+        job.run();
+
+        // Then
+        Integer plainLeft = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM scan_results WHERE content IS NOT NULL", Integer.class);
+        Integer inlineLeft = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM url_scans WHERE result IS NOT NULL", Integer.class);
+        Integer documents = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM scan_results", Integer.class);
+        assertThat(plainLeft).isZero();
+        assertThat(inlineLeft).isZero();
+        // The three inline copies share one stored document.
+        assertThat(documents).isEqualTo(2);
+        transactionTemplate.executeWithoutResult(status -> {
+            assertThat(scanResultRepository.findById("plain-1").orElseThrow().getContent()).isEqualTo(DOCUMENT);
+            for (UrlScan scan : inline) {
+                assertThat(urlScanRepository.findById(scan.getId()).orElseThrow().getResult()).isEqualTo(DOCUMENT);
+            }
+        });
+    }
+}
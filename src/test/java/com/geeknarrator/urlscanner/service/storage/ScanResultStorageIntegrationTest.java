@@ -0,0 +1,86 @@
+package com.geeknarrator.urlscanner.service.storage;
+
+import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.entity.User;
+import com.geeknarrator.urlscanner.integration.BaseIntegrationTest;
+import com.geeknarrator.urlscanner.repository.ScanResultRepository;
+import com.geeknarrator.urlscanner.repository.UrlScanRepository;
+import com.geeknarrator.urlscanner.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScanResultStorageIntegrationTest extends BaseIntegrationTest {
+
+    private static final String DOCUMENT = "{\"page\":{\"url\":\"https://example.com\"}}";
+
+    @Autowired
+    private ScanResultStorage scanResultStorage;
+
+    @Autowired
+    private ScanResultRepository scanResultRepository;
+
+    @Autowired
+    private UrlScanRepository urlScanRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        urlScanRepository.deleteAll();
+        scanResultRepository.deleteAll();
+        userRepository.deleteAll();
+        user = userRepository.save(new User("storage@test.com", "password", "Sto", "Rage"));
+    }
+
+    @Test
+    void collectGarbage_SkipsADocumentBeingStoredForAScan() throws Exception {
+        // Given - an identical document is stored, unreferenced and past the grace period
+        String contentHash = ScanResultStorage.hash(DOCUMENT);
+        jdbcTemplate.update("INSERT INTO scan_results (content_hash, data, created_at) VALUES (?, ?, ?)",
+                contentHash, ResultCodec.encode(DOCUMENT), LocalDateTime.now().minusDays(1));
+        CountDownLatch stored = new CountDownLatch(1);
+        CountDownLatch collected = new CountDownLatch(1);
+
+        // When - garbage collection runs between storing the document and writing the scan
+        CompletableFuture<UrlScan> completion = CompletableFuture.supplyAsync(() -> transactionTemplate.execute(status -> {
+            UrlScan scan = new UrlScan("https://example.com", user.getId());
+            scan.setStatus(UrlScan.ScanStatus.DONE);
+            scan.setResultDocument(scanResultStorage.store(DOCUMENT));
+            stored.countDown();
+            try {
+                collected.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return urlScanRepository.save(scan);
+        }));
+        assertThat(stored.await(10, TimeUnit.SECONDS)).isTrue();
+        scanResultStorage.collectGarbage();
+        collected.countDown();
+
+        // Then - the scan is written and its document kept
+        UrlScan scan = completion.get(10, TimeUnit.SECONDS);
+        assertThat(scanResultRepository.existsById(contentHash)).isTrue();
+        assertThat(jdbcTemplate.queryForObject("SELECT result_hash FROM url_scans WHERE id = ?", String.class, scan.getId()))
+                .isEqualTo(contentHash);
+    }
+}
@@ -0,0 +1,233 @@
+package com.geeknarrator.urlscanner.worker;
+
+import com.geeknarrator.urlscanner.repository.ClaimCandidate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeficitRoundRobinSchedulerTest {
+
+    private final AtomicLong ids = new AtomicLong();
+    private final LocalDateTime now = LocalDateTime.now();
+
+    private SchedulerProperties properties;
+    private DeficitRoundRobinScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SchedulerProperties();
+        properties.setAgingIntervalMs(0); // aging is tested separately
+        scheduler = new DeficitRoundRobinScheduler(properties);
+    }
+
+    @Test
+    void select_SharesCapacityEquallyBetweenEqualWeights() {
+        // Given
+        List<ClaimCandidate> candidates = new ArrayList<>();
+        candidates.addAll(candidates(1L, "FREE", 10));
+        candidates.addAll(candidates(2L, "FREE", 10));
+
+        // When
+        List<Long> selected = scheduler.select(candidates, 6, now);
+
+        // Then
+        assertThat(countFor(candidates, selected, 1L)).isEqualTo(3);
+        assertThat(countFor(candidates, selected, 2L)).isEqualTo(3);
+    }
+
+    @Test
+    void select_SharesCapacityInProportionToTierWeights() {
+        // Given - PRO has weight 2, FREE weight 1
+        List<ClaimCandidate> candidates = new ArrayList<>();
+        candidates.addAll(candidates(1L, "FREE", 20));
+        candidates.addAll(candidates(2L, "PRO", 20));
+
+        // When
+        List<Long> selected = scheduler.select(candidates, 9, now);
+
+        // Then
+        assertThat(countFor(candidates, selected, 1L)).isEqualTo(3);
+        assertThat(countFor(candidates, selected, 2L)).isEqualTo(6);
+    }
+
+    @Test
+    void select_UserWeightOverridesTierWeight() {
+        // Given
+        properties.setUserWeights(Map.of(1L, 3.0));
+        List<ClaimCandidate> candidates = new ArrayList<>();
+        candidates.addAll(candidates(1L, "FREE", 20));
+        candidates.addAll(candidates(2L, "FREE", 20));
+
+        // When
+        List<Long> selected = scheduler.select(candidates, 8, now);
+
+        // Then
+        assertThat(countFor(candidates, selected, 1L)).isEqualTo(6);
+        assertThat(countFor(candidates, selected, 2L)).isEqualTo(2);
+    }
+
+    @Test
+    void select_CarriesDeficitOverBetweenRuns() {
+        // Given - user 2 earns half a scan per round
+        properties.setUserWeights(Map.of(2L, 0.5));
+
+        // When - each run only has room for one scan
+        List<ClaimCandidate> first = new ArrayList<>(candidates(2L, "FREE", 5));
+        first.addAll(candidates(1L, "FREE", 5));
+        List<Long> firstRun = scheduler.select(first, 1, now);
+
+        List<ClaimCandidate> second = new ArrayList<>(candidates(2L, "FREE", 5));
+        second.addAll(candidates(1L, "FREE", 5));
+        List<Long> secondRun = scheduler.select(second, 1, now);
+
+        // Then - user 2 only banks half a scan in the first run and spends it in the second
+        assertThat(countFor(first, firstRun, 1L)).isEqualTo(1);
+        assertThat(countFor(second, secondRun, 2L)).isEqualTo(1);
+    }
+
+    @Test
+    void select_LetsHeavyUserFillSpareCapacity() {
+        // Given
+        List<ClaimCandidate> candidates = new ArrayList<>();
+        candidates.addAll(candidates(1L, "FREE", 50));
+        candidates.addAll(candidates(2L, "FREE", 2));
+
+        // When
+        List<Long> selected = scheduler.select(candidates, 20, now);
+
+        // Then
+        assertThat(selected).hasSize(20);
+        assertThat(countFor(candidates, selected, 2L)).isEqualTo(2);
+        assertThat(countFor(candidates, selected, 1L)).isEqualTo(18);
+    }
+
+    @Test
+    void select_BoostsUsersWhoseOldestScanHasWaitedLong() {
+        // Given - user 2's scans have waited two aging intervals, tripling their share
+        properties.setAgingIntervalMs(60_000);
+        List<ClaimCandidate> candidates = new ArrayList<>();
+        candidates.addAll(candidates(1L, "FREE", 20, now));
+        candidates.addAll(candidates(2L, "FREE", 20, now.minusMinutes(2)));
+
+        // When
+        List<Long> selected = scheduler.select(candidates, 8, now);
+
+        // Then
+        assertThat(countFor(candidates, selected, 1L)).isEqualTo(2);
+        assertThat(countFor(candidates, selected, 2L)).isEqualTo(6);
+    }
+
+    @Test
+    void select_CapsTheAgeBoost() {
+        // Given - user 1's scans have waited an hour, which would otherwise multiply their share by 61
+        properties.setAgingIntervalMs(60_000);
+        properties.setMaxAgeBoost(4.0);
+        List<ClaimCandidate> candidates = new ArrayList<>();
+        candidates.addAll(candidates(1L, "FREE", 20, now.minusHours(1)));
+        candidates.addAll(candidates(2L, "FREE", 20, now));
+
+        // When
+        List<Long> selected = scheduler.select(candidates, 10, now);
+
+        // Then
+        assertThat(countFor(candidates, selected, 1L)).isEqualTo(8);
+        assertThat(countFor(candidates, selected, 2L)).isEqualTo(2);
+    }
+
+    @Test
+    void select_AgedHeavyBacklogDoesNotStarveNewUsers() {
+        // Given - user 1 has an hour-old backlog, always first among the candidates; users 2 and 3
+        // each submit a single scan and submit the next one once it has been claimed
+        properties.setAgingIntervalMs(60_000);
+        List<ClaimCandidate> backlog = new ArrayList<>(candidates(1L, "FREE", 100, now.minusHours(1)));
+        Map<Long, ClaimCandidate> waiting = new HashMap<>();
+        Map<Long, Integer> runsWaited = new HashMap<>(Map.of(2L, 0, 3L, 0));
+        int longestWait = 0;
+
+        // When - several runs, each with room for three scans
+        for (int run = 0; run < 6; run++) {
+            for (Long userId : List.of(2L, 3L)) {
+                waiting.computeIfAbsent(userId, id -> candidates(id, "FREE", 1, now).get(0));
+            }
+            List<ClaimCandidate> candidates = new ArrayList<>(backlog);
+            candidates.addAll(waiting.values());
+            List<Long> selected = scheduler.select(candidates, 3, now);
+
+            backlog.removeIf(candidate -> selected.contains(candidate.getId()));
+            for (Long userId : List.of(2L, 3L)) {
+                if (selected.contains(waiting.get(userId).getId())) {
+                    waiting.remove(userId);
+                    runsWaited.put(userId, 0);
+                } else {
+                    longestWait = Math.max(longestWait, runsWaited.merge(userId, 1, Integer::sum));
+                }
+            }
+        }
+
+        // Then - no new scan is passed over for more than one run, and user 1 keeps the spare capacity
+        assertThat(longestWait).isLessThanOrEqualTo(1);
+        assertThat(backlog).hasSizeLessThanOrEqualTo(100 - 6);
+    }
+
+    @Test
+    void select_StopsWhenOnlyZeroWeightUsersRemain() {
+        // Given
+        properties.setUserWeights(Map.of(1L, 0.0));
+
+        // When
+        List<Long> selected = scheduler.select(candidates(1L, "FREE", 5), 5, now);
+
+        // Then
+        assertThat(selected).isEmpty();
+    }
+
+    private List<ClaimCandidate> candidates(Long userId, String tier, int count) {
+        return candidates(userId, tier, count, now);
+    }
+
+    private List<ClaimCandidate> candidates(Long userId, String tier, int count, LocalDateTime createdAt) {
+        List<ClaimCandidate> candidates = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            candidates.add(new TestCandidate(ids.incrementAndGet(), userId, createdAt, tier));
+        }
+        return candidates;
+    }
+
+    private long countFor(List<ClaimCandidate> candidates, List<Long> selected, Long userId) {
+        return candidates.stream()
+                .filter(candidate -> candidate.getUserId().equals(userId))
+                .filter(candidate -> selected.contains(candidate.getId()))
+                .count();
+    }
+
+    private record TestCandidate(Long id, Long userId, LocalDateTime createdAt, String tier) implements ClaimCandidate {
+
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public Long getUserId() {
+            return userId;
+        }
+
+        @Override
+        public LocalDateTime getCreatedAt() {
+            return createdAt;
+        }
+
+        @Override
+        public String getTier() {
+            return tier;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.geeknarrator.urlscanner.worker;
+
+import com.geeknarrator.urlscanner.integration.BaseIntegrationTest;
+import com.geeknarrator.urlscanner.repository.WorkerNodeRepository;
+import com.geeknarrator.urlscanner.repository.WorkerPartitionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PartitionOwnershipServiceIntegrationTest extends BaseIntegrationTest {
+
+    @Autowired
+    private WorkerPartitionRepository workerPartitionRepository;
+
+    @Autowired
+    private WorkerNodeRepository workerNodeRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        workerPartitionRepository.deleteAll();
+        workerNodeRepository.deleteAll();
+    }
+
+    @Test
+    void heartbeat_SingleNodeOwnsEveryPartition() {
+        // Given
+        PartitionOwnershipService node = node("node-a", 60000);
+
+        // When
+        boolean took = heartbeat(node);
+
+        // Then
+        assertThat(took).isTrue();
+        assertThat(node.getOwnedPartitions()).containsExactlyInAnyOrder(0, 1, 2, 3, 4, 5, 6, 7);
+    }
+
+    @Test
+    void heartbeat_JoiningNodeGetsItsShareAfterTheOwnerSheds() {
+        // Given - node A owns everything
+        PartitionOwnershipService nodeA = node("node-a", 60000);
+        PartitionOwnershipService nodeB = node("node-b", 60000);
+        heartbeat(nodeA);
+
+        // When - B registers, A sheds its surplus, B picks it up
+        heartbeat(nodeB);
+        heartbeat(nodeA);
+        heartbeat(nodeB);
+
+        // Then
+        assertThat(nodeA.getOwnedPartitions()).hasSize(4);
+        assertThat(nodeB.getOwnedPartitions()).hasSize(4);
+        Set<Integer> union = new HashSet<>(nodeA.getOwnedPartitions());
+        union.addAll(nodeB.getOwnedPartitions());
+        assertThat(union).hasSize(8);
+    }
+
+    @Test
+    void leave_LetsTheRemainingNodeTakeOver() {
+        // Given
+        PartitionOwnershipService nodeA = node("node-a", 60000);
+        PartitionOwnershipService nodeB = node("node-b", 60000);
+        heartbeat(nodeA);
+        heartbeat(nodeB);
+        heartbeat(nodeA);
+        heartbeat(nodeB);
+
+        // When
+        transactionTemplate.executeWithoutResult(status -> nodeB.leave());
+        heartbeat(nodeA);
+
+        // Then
+        assertThat(nodeA.getOwnedPartitions()).hasSize(8);
+        assertThat(nodeB.getOwnedPartitions()).isEmpty();
+    }
+
+    @Test
+    void heartbeat_TakesOverPartitionsOfADeadNodeOnceTheirLeaseExpires() throws InterruptedException {
+        // Given - B dies while owning half of the partitions
+        PartitionOwnershipService nodeA = node("node-a", 300);
+        PartitionOwnershipService nodeB = node("node-b", 300);
+        heartbeat(nodeA);
+        heartbeat(nodeB);
+        heartbeat(nodeA);
+        heartbeat(nodeB);
+        assertThat(nodeB.getOwnedPartitions()).hasSize(4);
+
+        // When
+        Thread.sleep(400);
+        heartbeat(nodeA);
+
+        // Then
+        assertThat(nodeA.getOwnedPartitions()).hasSize(8);
+    }
+
+    @Test
+    void restrict_SplitsOwnedPartitionsBetweenLanes() {
+        // Given
+        PartitionOwnershipService node = node("node-a", 60000);
+        heartbeat(node);
+
+        // When
+        Optional<ClaimPartition> lane0 = node.restrict(ClaimPartition.lane(0, 3));
+        Optional<ClaimPartition> lane1 = node.restrict(ClaimPartition.lane(1, 3));
+
+        // Then
+        assertThat(lane0).contains(new ClaimPartition(8, List.of(0, 3, 6)));
+        assertThat(lane1).contains(new ClaimPartition(8, List.of(1, 4, 7)));
+    }
+
+    private PartitionOwnershipService node(String nodeId, long leaseDurationMs) {
+        ScanClaimService scanClaimService = mock(ScanClaimService.class);
+        when(scanClaimService.getLeaseOwner()).thenReturn(nodeId);
+        return new PartitionOwnershipService(workerPartitionRepository, workerNodeRepository, scanClaimService,
+                new SimpleMeterRegistry(), true, 8, leaseDurationMs);
+    }
+
+    private boolean heartbeat(PartitionOwnershipService node) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> node.heartbeat()));
+    }
+}
@@ -0,0 +1,128 @@
+package com.geeknarrator.urlscanner.worker;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ScanNotificationListenerTest {
+
+    @Mock
+    private WorkerScheduler workerScheduler;
+
+    @Mock
+    private ScanNotificationListener.ListenConnectionFactory connectionFactory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ScanNotificationListener listener;
+
+    @BeforeEach
+    void setUp() {
+        listener = new ScanNotificationListener(connectionFactory, workerScheduler, meterRegistry);
+        ReflectionTestUtils.setField(listener, "pollTimeoutMs", 10);
+        ReflectionTestUtils.setField(listener, "reconnectDelayMs", 10L);
+        lenient().when(workerScheduler.requestSubmissionRun()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.stop();
+    }
+
+    @Test
+    void start_InstallsTriggerListensAndRequestsARunForEachNotification() throws Exception {
+        // Given - one notification arrives after the listener has caught up
+        Statement statement = mock(Statement.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        Connection connection = connection(statement, pgConnection);
+        PGNotification notification = mock(PGNotification.class);
+        when(pgConnection.getNotifications(anyInt()))
+                .thenReturn(new PGNotification[]{notification})
+                .thenAnswer(invocation -> idle());
+        when(connectionFactory.open()).thenReturn(connection);
+
+        // When
+        listener.start();
+
+        // Then - one run to catch up after connecting, one for the notification
+        verify(workerScheduler, timeout(5000).times(2)).requestSubmissionRun();
+        verify(statement).execute(argThat((String sql) -> sql.contains("CREATE OR REPLACE TRIGGER url_scans_notify_submitted")));
+        verify(statement).execute("LISTEN " + ScanNotificationListener.CHANNEL);
+        assertThat(meterRegistry.get("worker.notify.wakeups").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void start_ReconnectsAfterTheConnectionIsLost() throws Exception {
+        // Given - the first connection drops while waiting for notifications
+        Statement firstStatement = mock(Statement.class);
+        PGConnection dropped = mock(PGConnection.class);
+        when(dropped.getNotifications(anyInt())).thenThrow(new SQLException("An I/O error occurred while sending to the backend."));
+        Statement secondStatement = mock(Statement.class);
+        PGConnection healthy = mock(PGConnection.class);
+        when(healthy.getNotifications(anyInt())).thenAnswer(invocation -> idle());
+        Connection first = connection(firstStatement, dropped);
+        Connection second = connection(secondStatement, healthy);
+        when(connectionFactory.open()).thenReturn(first).thenReturn(second);
+
+        // When
+        listener.start();
+
+        // Then - it listens again, catches up on what it may have missed, and installs the trigger only once
+        verify(healthy, timeout(5000).atLeastOnce()).getNotifications(anyInt());
+        verify(secondStatement).execute("LISTEN " + ScanNotificationListener.CHANNEL);
+        verify(workerScheduler, times(2)).requestSubmissionRun();
+        verify(connectionFactory, times(2)).open();
+        verify(firstStatement).execute(argThat((String sql) -> sql.contains("CREATE OR REPLACE TRIGGER")));
+        verify(secondStatement, never()).execute(argThat((String sql) -> sql.contains("CREATE OR REPLACE TRIGGER")));
+    }
+
+    @Test
+    void start_KeepsRetryingWhileTheDatabaseIsUnreachable() throws Exception {
+        // Given
+        Statement statement = mock(Statement.class);
+        PGConnection pgConnection = mock(PGConnection.class);
+        when(pgConnection.getNotifications(anyInt())).thenAnswer(invocation -> idle());
+        Connection connection = connection(statement, pgConnection);
+        when(connectionFactory.open())
+                .thenThrow(new SQLException("Connection refused"))
+                .thenThrow(new SQLException("Connection refused"))
+                .thenReturn(connection);
+
+        // When
+        listener.start();
+
+        // Then
+        verify(pgConnection, timeout(5000).atLeastOnce()).getNotifications(anyInt());
+        verify(statement).execute("LISTEN " + ScanNotificationListener.CHANNEL);
+        verify(connectionFactory, times(3)).open();
+    }
+
+    private static Connection connection(Statement statement, PGConnection pgConnection) throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        return connection;
+    }
+
+    // Stands in for getNotifications(timeout) returning nothing once the timeout has passed.
+    private static PGNotification[] idle() throws InterruptedException {
+        Thread.sleep(10);
+        return null;
+    }
+}
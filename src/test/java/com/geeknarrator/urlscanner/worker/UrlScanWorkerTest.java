@@ -0,0 +1,452 @@
+package com.geeknarrator.urlscanner.worker;
+
+import com.geeknarrator.urlscanner.entity.ScanResult;
+import com.geeknarrator.urlscanner.entity.ScanSummary;
+import com.geeknarrator.urlscanner.entity.UrlScan;
+import com.geeknarrator.urlscanner.service.FetchedResult;
+import com.geeknarrator.urlscanner.service.SubmissionResult;
+import com.geeknarrator.urlscanner.service.UrlScanEndpoint;
+import com.geeknarrator.urlscanner.service.UrlScanIoClient;
+import com.geeknarrator.urlscanner.service.circuitbreaker.UrlScanCircuitBreakers;
+import com.geeknarrator.urlscanner.service.ratelimit.UrlScanRateLimiter;
+import com.geeknarrator.urlscanner.service.storage.ResultCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UrlScanWorkerTest {
+
+    @Mock
+    private ScanClaimService scanClaimService;
+
+    @Mock
+    private UrlScanIoClient urlScanIoClient;
+
+    @Mock
+    private UrlScanRateLimiter rateLimiter;
+
+    @Mock
+    private UrlScanCircuitBreakers circuitBreakers;
+
+    private UrlScanWorker urlScanWorker;
+
+    @BeforeEach
+    void setUp() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        urlScanWorker = new UrlScanWorker(scanClaimService, urlScanIoClient, meterRegistry, rateLimiter, circuitBreakers);
+        lenient().when(circuitBreakers.acquirePermits(any(), anyInt())).thenAnswer(invocation -> invocation.getArgument(1));
+        lenient().when(rateLimiter.tryAcquire(any(), anyInt())).thenAnswer(invocation -> invocation.getArgument(1));
+        ReflectionTestUtils.setField(urlScanWorker, "submissionBatchSize", 100);
+        ReflectionTestUtils.setField(urlScanWorker, "resultBatchSize", 100);
+        ReflectionTestUtils.setField(urlScanWorker, "submissionConcurrency", 4);
+        ReflectionTestUtils.setField(urlScanWorker, "resultInitialDelayMs", 15000L);
+        ReflectionTestUtils.setField(urlScanWorker, "resultBackoffMultiplier", 2.0);
+        ReflectionTestUtils.setField(urlScanWorker, "resultMaxBackoffMs", 60000L);
+        ReflectionTestUtils.setField(urlScanWorker, "resultMaxAttempts", 10);
+        ReflectionTestUtils.setField(urlScanWorker, "interactiveShare", 0.2);
+        ReflectionTestUtils.setField(urlScanWorker, "submissionMaxAttempts", 3);
+        ReflectionTestUtils.setField(urlScanWorker, "submissionRetryInitialDelayMs", 5000L);
+        urlScanWorker.startSubmissionExecutor();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        urlScanWorker.stopSubmissionExecutor();
+    }
+
+    @Test
+    void processSubmittedScans_SubmitsBatchConcurrently() {
+        // Given - four scans whose submissions only complete once all four are in flight
+        List<UrlScan> scans = List.of(
+                createUrlScan(1L, "https://a.com"),
+                createUrlScan(2L, "https://b.com"),
+                createUrlScan(3L, "https://c.com"),
+                createUrlScan(4L, "https://d.com")
+        );
+        CountDownLatch allInFlight = new CountDownLatch(scans.size());
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all())).thenReturn(scans);
+        when(urlScanIoClient.submitScan(any())).thenAnswer(invocation -> {
+            allInFlight.countDown();
+            allInFlight.await(5, TimeUnit.SECONDS);
+            return SubmissionResult.submitted("uuid-" + invocation.getArgument(0));
+        });
+
+        // When
+        urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then
+        assertThat(allInFlight.getCount()).isZero();
+        assertThat(scans).allMatch(scan -> scan.getStatus() == UrlScan.ScanStatus.PROCESSING);
+        assertThat(scans).allMatch(scan -> scan.getExternalScanId().equals("uuid-" + scan.getUrl()));
+    }
+
+    @Test
+    void processSubmittedScans_AppliesOutcomePerScan() {
+        // Given
+        UrlScan submitted = createUrlScan(1L, "https://ok.com");
+        UrlScan rejected = createUrlScan(2L, "https://rejected.com");
+        UrlScan broken = createUrlScan(3L, "https://broken.com");
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all())).thenReturn(List.of(submitted, rejected, broken));
+        when(urlScanIoClient.submitScan("https://ok.com")).thenReturn(SubmissionResult.submitted("uuid-ok"));
+        when(urlScanIoClient.submitScan("https://rejected.com")).thenReturn(SubmissionResult.rejected("status 400"));
+        when(urlScanIoClient.submitScan("https://broken.com")).thenThrow(new IllegalStateException("boom"));
+
+        // When
+        urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then
+        assertThat(submitted.getStatus()).isEqualTo(UrlScan.ScanStatus.PROCESSING);
+        assertThat(submitted.getExternalScanId()).isEqualTo("uuid-ok");
+        assertThat(submitted.getNextCheckAt()).isAfter(LocalDateTime.now().plusSeconds(10));
+        assertThat(rejected.getStatus()).isEqualTo(UrlScan.ScanStatus.FAILED);
+        assertThat(broken.getStatus()).isEqualTo(UrlScan.ScanStatus.FAILED);
+        assertThat(broken.getFailureReason()).contains("boom");
+        verify(scanClaimService).complete(List.of(submitted, rejected, broken));
+    }
+
+    @Test
+    void processSubmittedScans_RequeuesRetryableFailuresWithoutWaiting() {
+        // Given - urlscan.io asks for 30s, which is longer than the first backoff step
+        UrlScan throttled = createUrlScan(1L, "https://throttled.com");
+        UrlScan flaky = createUrlScan(2L, "https://flaky.com");
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all())).thenReturn(List.of(throttled, flaky));
+        when(urlScanIoClient.submitScan("https://throttled.com"))
+                .thenReturn(SubmissionResult.retryable("Rate limited by urlscan.io", Duration.ofSeconds(30)));
+        when(urlScanIoClient.submitScan("https://flaky.com")).thenReturn(SubmissionResult.retryable("urlscan.io returned 503", null));
+
+        // When
+        LocalDateTime before = LocalDateTime.now();
+        Optional<Duration> followUp = urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then - both stay queued with a retry time, and a run is requested for the earliest one
+        assertThat(throttled.getStatus()).isEqualTo(UrlScan.ScanStatus.SUBMITTED);
+        assertThat(throttled.getSubmitAttempts()).isEqualTo(1);
+        assertThat(throttled.getNextCheckAt()).isAfterOrEqualTo(before.plusSeconds(30));
+        assertThat(flaky.getStatus()).isEqualTo(UrlScan.ScanStatus.SUBMITTED);
+        assertThat(flaky.getNextCheckAt()).isBetween(before.plusSeconds(5), LocalDateTime.now().plusSeconds(5));
+        verify(scanClaimService).complete(List.of(throttled, flaky));
+        assertThat(followUp).hasValueSatisfying(delay -> assertThat(delay).isBetween(Duration.ofSeconds(4), Duration.ofSeconds(5)));
+    }
+
+    @Test
+    void processSubmittedScans_FailsScanOnceRetriesAreExhausted() {
+        // Given - the third and last attempt
+        UrlScan scan = createUrlScan(1L, "https://down.com");
+        scan.setSubmitAttempts(2);
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all())).thenReturn(List.of(scan));
+        when(urlScanIoClient.submitScan("https://down.com")).thenReturn(SubmissionResult.retryable("urlscan.io returned 503", null));
+
+        // When
+        Optional<Duration> followUp = urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then
+        assertThat(scan.getStatus()).isEqualTo(UrlScan.ScanStatus.FAILED);
+        assertThat(scan.getFailureReason()).contains("after 3 attempts");
+        assertThat(followUp).isEmpty();
+    }
+
+    @Test
+    void processSubmittedScans_DoesNotCountSubmissionsSkippedWhileCircuitIsOpen() {
+        // Given - the last attempt, but the breaker opened after the batch was claimed
+        UrlScan scan = createUrlScan(1L, "https://example.com");
+        scan.setSubmitAttempts(2);
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all())).thenReturn(List.of(scan));
+        when(urlScanIoClient.submitScan("https://example.com"))
+                .thenReturn(SubmissionResult.deferred("Circuit breaker for urlscan.io submissions is open", Duration.ofSeconds(20)));
+
+        // When
+        LocalDateTime before = LocalDateTime.now();
+        Optional<Duration> followUp = urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then - the scan waits for the breaker without using up its last attempt
+        assertThat(scan.getStatus()).isEqualTo(UrlScan.ScanStatus.SUBMITTED);
+        assertThat(scan.getSubmitAttempts()).isEqualTo(2);
+        assertThat(scan.getNextCheckAt()).isBetween(before.plusSeconds(20), LocalDateTime.now().plusSeconds(20));
+        assertThat(followUp).hasValueSatisfying(delay -> assertThat(delay).isPositive());
+    }
+
+    @Test
+    void processSubmittedScans_SubmitsEachUrlOnceAndAttachesDuplicatesToIt() {
+        // Given - three scans of the same page, spelled differently
+        UrlScan first = createUrlScan(1L, "https://Example.com");
+        UrlScan second = createUrlScan(2L, "https://example.com:443/");
+        UrlScan third = createUrlScan(3L, "https://example.com/#top");
+        UrlScan other = createUrlScan(4L, "https://other.com");
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all()))
+                .thenReturn(List.of(first, second, third, other));
+        when(urlScanIoClient.submitScan("https://Example.com")).thenReturn(SubmissionResult.submitted("uuid-example"));
+        when(urlScanIoClient.submitScan("https://other.com")).thenReturn(SubmissionResult.submitted("uuid-other"));
+
+        // When
+        urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then - one call per URL, the duplicates follow the first scan and their permits go back
+        verify(urlScanIoClient, times(2)).submitScan(any());
+        assertThat(List.of(second, third)).allSatisfy(scan -> {
+            assertThat(scan.getStatus()).isEqualTo(UrlScan.ScanStatus.PROCESSING);
+            assertThat(scan.getExternalScanId()).isEqualTo("uuid-example");
+            assertThat(scan.getLeaderScanId()).isEqualTo(1L);
+            assertThat(scan.getNextCheckAt()).isEqualTo(first.getNextCheckAt());
+        });
+        assertThat(first.getLeaderScanId()).isNull();
+        verify(rateLimiter).release(UrlScanEndpoint.SUBMIT, 2);
+        verify(circuitBreakers).release(UrlScanEndpoint.SUBMIT, 2);
+        verify(scanClaimService).complete(List.of(first, second, third, other));
+    }
+
+    @Test
+    void processSubmittedScans_FollowsScanAlreadyWaitingForItsResult() {
+        // Given
+        UrlScan inFlight = createUrlScan(7L, "https://example.com");
+        inFlight.setStatus(UrlScan.ScanStatus.PROCESSING);
+        inFlight.setExternalScanId("uuid-earlier");
+        inFlight.setNextCheckAt(LocalDateTime.now().plusSeconds(5));
+        UrlScan scan = createUrlScan(1L, "https://example.com");
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all())).thenReturn(List.of(scan));
+        when(scanClaimService.findInFlightLeaders(List.of(scan))).thenReturn(Map.of(inFlight.getUrlHash(), inFlight));
+
+        // When
+        urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then
+        verifyNoInteractions(urlScanIoClient);
+        assertThat(scan.getStatus()).isEqualTo(UrlScan.ScanStatus.PROCESSING);
+        assertThat(scan.getExternalScanId()).isEqualTo("uuid-earlier");
+        assertThat(scan.getLeaderScanId()).isEqualTo(7L);
+        assertThat(scan.getNextCheckAt()).isEqualTo(inFlight.getNextCheckAt());
+    }
+
+    @Test
+    void processSubmittedScans_DuplicatesShareTheOutcomeOfAFailedSubmission() {
+        // Given
+        UrlScan first = createUrlScan(1L, "https://example.com");
+        UrlScan second = createUrlScan(2L, "https://example.com");
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all())).thenReturn(List.of(first, second));
+        when(urlScanIoClient.submitScan("https://example.com")).thenReturn(SubmissionResult.retryable("status 503", null));
+
+        // When
+        Optional<Duration> followUp = urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then - both are re-queued for a retry, neither follows the other
+        assertThat(List.of(first, second)).allSatisfy(scan -> {
+            assertThat(scan.getStatus()).isEqualTo(UrlScan.ScanStatus.SUBMITTED);
+            assertThat(scan.getSubmitAttempts()).isEqualTo(1);
+            assertThat(scan.getLeaderScanId()).isNull();
+        });
+        assertThat(followUp).isPresent();
+    }
+
+    @Test
+    void processSubmittedScans_ClaimsNoMoreThanRateLimitAllows() {
+        // Given - three permits left, but only two scans waiting
+        List<UrlScan> scans = List.of(createUrlScan(1L, "https://a.com"), createUrlScan(2L, "https://b.com"));
+        when(rateLimiter.tryAcquire(UrlScanEndpoint.SUBMIT, 100)).thenReturn(3);
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 3, ClaimPartition.all())).thenReturn(scans);
+        when(urlScanIoClient.submitScan(any())).thenReturn(SubmissionResult.submitted("uuid"));
+
+        // When
+        Optional<Duration> followUp = urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then - the unused permit goes back and there is no backlog to come back for
+        verify(rateLimiter).release(UrlScanEndpoint.SUBMIT, 1);
+        assertThat(followUp).isEmpty();
+    }
+
+    @Test
+    void processSubmittedScans_RequestsFollowUpWhenRateLimited() {
+        // Given
+        when(rateLimiter.tryAcquire(UrlScanEndpoint.SUBMIT, 100)).thenReturn(0);
+        when(rateLimiter.refillTime(UrlScanEndpoint.SUBMIT, 100)).thenReturn(Duration.ofSeconds(10));
+
+        // When
+        Optional<Duration> followUp = urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then - nothing is claimed and a run is requested once the bucket has refilled
+        verify(scanClaimService, never()).claim(any(), any(), anyInt(), any());
+        assertThat(followUp).contains(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void processSubmittedScans_ClaimsInteractiveBeforeBulk() {
+        // Given - interactive scans take four of the ten permits, bulk gets the rest
+        List<UrlScan> interactive = List.of(createUrlScan(1L, "https://a.com"), createUrlScan(2L, "https://b.com"),
+                createUrlScan(3L, "https://c.com"), createUrlScan(4L, "https://d.com"));
+        List<UrlScan> bulk = List.of(createUrlScan(5L, "https://e.com"));
+        when(rateLimiter.tryAcquire(UrlScanEndpoint.SUBMIT, 100)).thenReturn(10);
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 10, ClaimPartition.all())).thenReturn(interactive);
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.BULK, 6, ClaimPartition.all())).thenReturn(bulk);
+        when(urlScanIoClient.submitScan(any())).thenReturn(SubmissionResult.submitted("uuid"));
+
+        // When
+        urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then
+        verify(scanClaimService).complete(List.of(interactive.get(0), interactive.get(1), interactive.get(2), interactive.get(3), bulk.get(0)));
+        verify(rateLimiter).release(UrlScanEndpoint.SUBMIT, 5);
+    }
+
+    @Test
+    void processSubmittedScans_BulkLeavesTheInteractiveReserveInTheBucket() {
+        // Given - a bucket of ten with three permits reserved for interactive scans, and a large bulk backlog
+        when(rateLimiter.reservation(UrlScanEndpoint.SUBMIT, 0.2)).thenReturn(3);
+        when(rateLimiter.tryAcquire(UrlScanEndpoint.SUBMIT, 103)).thenReturn(10);
+        when(rateLimiter.refillTime(UrlScanEndpoint.SUBMIT, 100)).thenReturn(Duration.ofSeconds(10));
+        List<UrlScan> bulk = List.of(createUrlScan(1L, "https://a.com"), createUrlScan(2L, "https://b.com"),
+                createUrlScan(3L, "https://c.com"), createUrlScan(4L, "https://d.com"), createUrlScan(5L, "https://e.com"),
+                createUrlScan(6L, "https://f.com"), createUrlScan(7L, "https://g.com"));
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 10, ClaimPartition.all())).thenReturn(List.of());
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.BULK, 7, ClaimPartition.all())).thenReturn(bulk);
+        when(urlScanIoClient.submitScan(any())).thenReturn(SubmissionResult.submitted("uuid"));
+
+        // When
+        Optional<Duration> followUp = urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then - the reserve goes back to the bucket and the rest of the backlog is picked up after a refill
+        verify(rateLimiter).release(UrlScanEndpoint.SUBMIT, 3);
+        assertThat(followUp).contains(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void checkProcessingScans_ClaimsNothingWhileCircuitIsOpen() {
+        // Given
+        when(circuitBreakers.acquirePermits(UrlScanEndpoint.RESULT, 100)).thenReturn(0);
+        when(circuitBreakers.remainingOpenTime(UrlScanEndpoint.RESULT)).thenReturn(Duration.ofSeconds(20));
+
+        // When
+        Optional<Duration> followUp = urlScanWorker.checkProcessingScans(ClaimPartition.all());
+
+        // Then - no work is claimed or rate-limit budget spent, and a run is requested for when probing starts
+        verify(scanClaimService, never()).claim(any(), any(), anyInt(), any());
+        verify(rateLimiter, never()).tryAcquire(any(), anyInt());
+        assertThat(followUp).contains(Duration.ofSeconds(20));
+    }
+
+    @Test
+    void processSubmittedScans_ClaimsOnlyProbeScansWhileCircuitIsHalfOpen() {
+        // Given - three probes allowed, one scan waiting
+        List<UrlScan> scans = List.of(createUrlScan(1L, "https://a.com"));
+        when(circuitBreakers.acquirePermits(UrlScanEndpoint.SUBMIT, 100)).thenReturn(3);
+        when(scanClaimService.claim(UrlScan.ScanStatus.SUBMITTED, UrlScan.Priority.INTERACTIVE, 3, ClaimPartition.all())).thenReturn(scans);
+        when(urlScanIoClient.submitScan(any())).thenReturn(SubmissionResult.submitted("uuid"));
+
+        // When
+        urlScanWorker.processSubmittedScans(ClaimPartition.all());
+
+        // Then - the unused probes are handed back
+        verify(circuitBreakers).release(UrlScanEndpoint.SUBMIT, 2);
+    }
+
+    @Test
+    void checkProcessingScans_WritesBackPendingAndFinishedScans() {
+        // Given
+        UrlScan finished = createUrlScan(1L, "https://done.com");
+        finished.setStatus(UrlScan.ScanStatus.PROCESSING);
+        finished.setExternalScanId("uuid-done");
+        UrlScan pending = createUrlScan(2L, "https://pending.com");
+        pending.setStatus(UrlScan.ScanStatus.PROCESSING);
+        pending.setExternalScanId("uuid-pending");
+        when(scanClaimService.claim(UrlScan.ScanStatus.PROCESSING, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all())).thenReturn(List.of(finished, pending));
+        ScanSummary summary = new ScanSummary();
+        summary.setMalicious(true);
+        when(urlScanIoClient.fetchScanResult("uuid-done")).thenReturn(Optional.of(new FetchedResult(new ScanResult("hash-done", ResultCodec.encode("{}")), summary)));
+        when(urlScanIoClient.fetchScanResult("uuid-pending")).thenReturn(Optional.empty());
+
+        // When
+        urlScanWorker.checkProcessingScans(ClaimPartition.all());
+
+        // Then
+        assertThat(finished.getStatus()).isEqualTo(UrlScan.ScanStatus.DONE);
+        assertThat(finished.getResult()).isEqualTo("{}");
+        assertThat(finished.getSummary().getMalicious()).isTrue();
+        assertThat(pending.getStatus()).isEqualTo(UrlScan.ScanStatus.PROCESSING);
+        assertThat(pending.getCheckAttempts()).isEqualTo(1);
+        assertThat(pending.getNextCheckAt()).isAfter(LocalDateTime.now());
+        verify(scanClaimService).complete(List.of(finished, pending));
+    }
+
+    @Test
+    void checkProcessingScans_BacksOffExponentiallyUpToCap() {
+        // Given - a scan that has already been checked three times without a result
+        UrlScan pending = createUrlScan(1L, "https://slow.com");
+        pending.setStatus(UrlScan.ScanStatus.PROCESSING);
+        pending.setExternalScanId("uuid-slow");
+        pending.setCheckAttempts(3);
+        when(scanClaimService.claim(UrlScan.ScanStatus.PROCESSING, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all())).thenReturn(List.of(pending));
+        when(urlScanIoClient.fetchScanResult("uuid-slow")).thenReturn(Optional.empty());
+
+        // When
+        LocalDateTime before = LocalDateTime.now();
+        urlScanWorker.checkProcessingScans(ClaimPartition.all());
+
+        // Then - 15s * 2^3 = 120s, capped at 60s
+        assertThat(pending.getCheckAttempts()).isEqualTo(4);
+        assertThat(pending.getNextCheckAt()).isBetween(before.plusSeconds(60), LocalDateTime.now().plusSeconds(60));
+    }
+
+    @Test
+    void checkProcessingScans_FailsScanOnceChecksAreExhausted() {
+        // Given - a scan whose result has been missing for all but the last allowed check
+        UrlScan pending = createUrlScan(1L, "https://gone.com");
+        pending.setStatus(UrlScan.ScanStatus.PROCESSING);
+        pending.setExternalScanId("uuid-gone");
+        pending.setCheckAttempts(9);
+        when(scanClaimService.claim(UrlScan.ScanStatus.PROCESSING, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all())).thenReturn(List.of(pending));
+        when(urlScanIoClient.fetchScanResult("uuid-gone")).thenReturn(Optional.empty());
+
+        // When
+        urlScanWorker.checkProcessingScans(ClaimPartition.all());
+
+        // Then
+        assertThat(pending.getStatus()).isEqualTo(UrlScan.ScanStatus.FAILED);
+        assertThat(pending.getFailureReason()).contains("10 checks");
+        verify(scanClaimService).complete(List.of(pending));
+    }
+
+    @Test
+    void checkProcessingScans_DoesNotCountChecksSkippedWhileCircuitIsOpen() {
+        // Given - the breaker opened after the batch was claimed
+        UrlScan pending = createUrlScan(1L, "https://slow.com");
+        pending.setStatus(UrlScan.ScanStatus.PROCESSING);
+        pending.setExternalScanId("uuid-slow");
+        pending.setCheckAttempts(9);
+        when(scanClaimService.claim(UrlScan.ScanStatus.PROCESSING, UrlScan.Priority.INTERACTIVE, 100, ClaimPartition.all())).thenReturn(List.of(pending));
+        when(circuitBreakers.isOpen(UrlScanEndpoint.RESULT)).thenReturn(true);
+        when(circuitBreakers.remainingOpenTime(UrlScanEndpoint.RESULT)).thenReturn(Duration.ofSeconds(20));
+
+        // When
+        LocalDateTime before = LocalDateTime.now();
+        urlScanWorker.checkProcessingScans(ClaimPartition.all());
+
+        // Then - the scan waits for the breaker without using up its last check
+        verify(urlScanIoClient, never()).fetchScanResult(any());
+        assertThat(pending.getStatus()).isEqualTo(UrlScan.ScanStatus.PROCESSING);
+        assertThat(pending.getCheckAttempts()).isEqualTo(9);
+        assertThat(pending.getNextCheckAt()).isBetween(before.plusSeconds(20), LocalDateTime.now().plusSeconds(20));
+    }
+
+    private UrlScan createUrlScan(Long id, String url) {
+        UrlScan scan = new UrlScan(url, 1L);
+        scan.setId(id);
+        return scan;
+    }
+}
@@ -0,0 +1,164 @@
+package com.geeknarrator.urlscanner.worker;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WorkerJobTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private WorkerJob job;
+
+    @AfterEach
+    void tearDown() {
+        if (job != null) {
+            job.stop();
+        }
+    }
+
+    @Test
+    void start_RunsEveryLaneOverItsOwnPartition() throws InterruptedException {
+        // Given
+        Set<ClaimPartition> seen = ConcurrentHashMap.newKeySet();
+        CountDownLatch allLanesRan = new CountDownLatch(3);
+        job = new WorkerJob("test", 3, 3, Duration.ofHours(1), partition -> {
+            if (seen.add(partition)) {
+                allLanesRan.countDown();
+            }
+            return Optional.empty();
+        }, meterRegistry);
+
+        // When
+        job.start();
+
+        // Then
+        assertThat(allLanesRan.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(seen).containsExactlyInAnyOrder(
+                ClaimPartition.lane(0, 3), ClaimPartition.lane(1, 3), ClaimPartition.lane(2, 3));
+        // A run is timed once its task returns, just after the latch was counted down.
+        Timer runTimer = meterRegistry.get("worker.job.duration").tag("job", "test").timer();
+        while (runTimer.count() < 3) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void requestRun_CoalescesRequestsWhileARunIsPending() throws InterruptedException {
+        // Given - the job is not started, so only requested runs execute
+        AtomicInteger runs = new AtomicInteger();
+        job = new WorkerJob("test", 1, 1, Duration.ofHours(1), partition -> {
+            runs.incrementAndGet();
+            return Optional.empty();
+        }, meterRegistry);
+
+        // When
+        boolean first = job.requestRun(Duration.ofMillis(200));
+        boolean second = job.requestRun(Duration.ofMillis(200));
+        Thread.sleep(500);
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void requestRun_SoonerRequestReplacesAPendingLaterRun() throws InterruptedException {
+        // Given - a run is pending far in the future
+        CountDownLatch ran = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        job = new WorkerJob("test", 1, 1, Duration.ofHours(1), partition -> {
+            runs.incrementAndGet();
+            ran.countDown();
+            return Optional.empty();
+        }, meterRegistry);
+        job.requestRun(Duration.ofHours(1));
+
+        // When
+        boolean accepted = job.requestRun(Duration.ZERO);
+
+        // Then
+        assertThat(accepted).isTrue();
+        assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(job.requestRun(Duration.ofHours(1))).isTrue();
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void run_FollowsUpWhenTheBodyAsksForIt() throws InterruptedException {
+        // Given - the first run asks to run again shortly
+        CountDownLatch twoRuns = new CountDownLatch(2);
+        job = new WorkerJob("test", 1, 1, Duration.ofHours(1), partition -> {
+            twoRuns.countDown();
+            return twoRuns.getCount() > 0 ? Optional.of(Duration.ofMillis(10)) : Optional.empty();
+        }, meterRegistry);
+
+        // When
+        job.requestRun(Duration.ZERO);
+
+        // Then
+        assertThat(twoRuns.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void run_KeepsSchedulingAfterAFailedRun() throws InterruptedException {
+        // Given
+        CountDownLatch twoRuns = new CountDownLatch(2);
+        job = new WorkerJob("test", 1, 1, Duration.ofHours(1), partition -> {
+            twoRuns.countDown();
+            throw new IllegalStateException("boom");
+        }, meterRegistry);
+
+        // When
+        job.requestRun(Duration.ZERO);
+        Thread.sleep(100);
+        job.requestRun(Duration.ZERO);
+
+        // Then
+        assertThat(twoRuns.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void run_NeverRunsALaneTwiceAtOnceAndCatchesUpAfterwards() throws InterruptedException {
+        // Given - more threads than lanes, and a first run that blocks until released
+        CountDownLatch firstRunStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstRun = new CountDownLatch(1);
+        CountDownLatch twoRuns = new CountDownLatch(2);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        job = new WorkerJob("test", 4, 1, Duration.ofHours(1), partition -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            firstRunStarted.countDown();
+            try {
+                releaseFirstRun.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+            twoRuns.countDown();
+            return Optional.empty();
+        }, meterRegistry);
+        job.requestRun(Duration.ZERO);
+        assertThat(firstRunStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When - an early run comes due while the lane is still busy
+        job.requestRun(Duration.ZERO);
+        Thread.sleep(100);
+        releaseFirstRun.countDown();
+
+        // Then
+        assertThat(twoRuns.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxActive).hasValue(1);
+    }
+}